@@ -22,12 +22,11 @@ import com.android.ddmlib.InstallException;
 import com.jayway.maven.plugins.android.common.AetherHelper;
 import com.jayway.maven.plugins.android.common.AndroidExtension;
 import com.jayway.maven.plugins.android.common.DeviceHelper;
+import com.jayway.maven.plugins.android.common.DirectorySynchronizer;
+import com.jayway.maven.plugins.android.common.ManifestMetadata;
 import com.jayway.maven.plugins.android.config.ConfigPojo;
 import com.jayway.maven.plugins.android.configuration.Ndk;
 import com.jayway.maven.plugins.android.configuration.Sdk;
-import org.apache.commons.jxpath.JXPathContext;
-import org.apache.commons.jxpath.JXPathNotFoundException;
-import org.apache.commons.jxpath.xml.DocumentContainer;
 import org.apache.commons.lang.StringUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.execution.MavenSession;
@@ -42,8 +41,7 @@ import org.sonatype.aether.RepositorySystemSession;
 import org.sonatype.aether.repository.RemoteRepository;
 
 import java.io.File;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashSet;
@@ -451,6 +449,11 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
      */
     private static boolean adbInitialized = false;
 
+    /**
+     * Key of the project context value telling which state of the combined resources was merged in this build.
+     */
+    private static final String RESOURCES_MERGE_STATE = AbstractAndroidMojo.class.getName() + ".resourcesMergeState";
+
     /**
      * Which dependency scopes should not be included when unpacking dependencies into the apk.
      */
@@ -905,32 +908,14 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
      */
     protected String extractPackageNameFromApk( File apkFile ) throws MojoExecutionException
     {
-        CommandExecutor executor = CommandExecutor.Factory.createDefaultCommmandExecutor();
-        executor.setLogger( this.getLog() );
-        List<String> commands = new ArrayList<String>();
-        commands.add( "dump" );
-        commands.add( "xmltree" );
-        commands.add( apkFile.getAbsolutePath() );
-        commands.add( "AndroidManifest.xml" );
-        getLog().info( getAndroidSdk().getPathForTool( "aapt" ) + " " + commands.toString() );
         try
         {
-            executor.executeCommand( getAndroidSdk().getPathForTool( "aapt" ), commands, false );
-            final String xmlTree = executor.getStandardOut();
-            return extractPackageNameFromAndroidManifestXmlTree( xmlTree );
+            return ManifestMetadata.getFromApk( apkFile ).getPackageName();
         }
-        catch ( ExecutionException e )
+        catch ( IOException e )
         {
             throw new MojoExecutionException(
-                    "Error while trying to figure out package name from inside apk file " + apkFile );
-        }
-        finally
-        {
-            String errout = executor.getStandardError();
-            if ( ( errout != null ) && ( errout.trim().length() > 0 ) )
-            {
-                getLog().error( errout );
-            }
+                    "Error while trying to figure out package name from inside apk file " + apkFile, e );
         }
     }
 
@@ -962,21 +947,7 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
      */
     protected String extractPackageNameFromAndroidManifest( File androidManifestFile ) throws MojoExecutionException
     {
-        final URL xmlURL;
-        try
-        {
-            xmlURL = androidManifestFile.toURI().toURL();
-        }
-        catch ( MalformedURLException e )
-        {
-            throw new MojoExecutionException(
-                    "Error while trying to figure out package name from inside AndroidManifest.xml file "
-                            + androidManifestFile, e );
-        }
-        final DocumentContainer documentContainer = new DocumentContainer( xmlURL );
-        final Object packageName = JXPathContext.newContext( documentContainer )
-                .getValue( "manifest/@package", String.class );
-        return ( String ) packageName;
+        return getManifestMetadata( androidManifestFile ).getPackageName();
     }
 
     /**
@@ -989,29 +960,25 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
     protected String extractInstrumentationRunnerFromAndroidManifest( File androidManifestFile )
             throws MojoExecutionException
     {
-        final URL xmlURL;
-        try
-        {
-            xmlURL = androidManifestFile.toURI().toURL();
-        }
-        catch ( MalformedURLException e )
-        {
-            throw new MojoExecutionException(
-                    "Error while trying to figure out instrumentation runner from inside AndroidManifest.xml file "
-                            + androidManifestFile, e );
-        }
-        final DocumentContainer documentContainer = new DocumentContainer( xmlURL );
-        final Object instrumentationRunner;
+        return getManifestMetadata( androidManifestFile ).getInstrumentationRunner();
+    }
+
+    /**
+     * @param androidManifestFile the AndroidManifest.xml file to inspect.
+     * @return the values of the file, parsed once per build.
+     * @throws MojoExecutionException if the file cannot be read.
+     */
+    protected ManifestMetadata getManifestMetadata( File androidManifestFile ) throws MojoExecutionException
+    {
         try
         {
-            instrumentationRunner = JXPathContext.newContext( documentContainer )
-                    .getValue( "manifest//instrumentation/@android:name", String.class );
+            return ManifestMetadata.get( androidManifestFile );
         }
-        catch ( JXPathNotFoundException e )
+        catch ( IOException e )
         {
-            return null;
+            throw new MojoExecutionException( "Error while reading AndroidManifest.xml file " + androidManifestFile,
+                    e );
         }
-        return ( String ) instrumentationRunner;
     }
 
     /**
@@ -1168,6 +1135,46 @@ public abstract class AbstractAndroidMojo extends AbstractMojo
         return androidHome;
     }
 
+    /**
+     * Merges the resources of the dependencies and the local resources into {@link #combinedRes}, local resources
+     * taking precedence. Only files that changed since the last merge are copied, and files that are gone are
+     * deleted. The merge runs once per build of a project: later mojos find it done in the project context.
+     *
+     * @throws MojoExecutionException if the resources cannot be merged.
+     */
+    protected void mergeResources() throws MojoExecutionException
+    {
+        if ( ! extractedDependenciesRes.exists() && ! combinedRes.exists() )
+        {
+            return;
+        }
+        final File stateFile = new File( combinedRes.getParentFile(), "combined-resources.state" );
+        if ( getResourcesMergeState( stateFile ).equals( project.getContextValue( RESOURCES_MERGE_STATE ) ) )
+        {
+            getLog().debug( "Resources already merged into " + combinedRes );
+            return;
+        }
+        final DirectorySynchronizer resources = new DirectorySynchronizer( combinedRes, stateFile, getLog() );
+        resources.addSource( extractedDependenciesRes );
+        resources.addSource( resourceDirectory );
+        try
+        {
+            final int changes = resources.synchronize();
+            getLog().info( changes == 0 ? "Combined resource directory is up to date."
+                    : "Updated " + changes + " files of the combined resource directory." );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not merge the resources into " + combinedRes, e );
+        }
+        project.setContextValue( RESOURCES_MERGE_STATE, getResourcesMergeState( stateFile ) );
+    }
+
+    private String getResourcesMergeState( File stateFile )
+    {
+        return combinedRes.getAbsolutePath() + "|" + stateFile.length() + "|" + stateFile.lastModified();
+    }
+
     /**
      *
      * @param apkLibraryArtifact
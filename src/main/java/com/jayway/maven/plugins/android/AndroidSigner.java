@@ -34,9 +34,20 @@ public class AndroidSigner
     ;
 
     private final Debug debug;
+    private final boolean releaseKeyStoreConfigured;
 
     public AndroidSigner( String debug )
     {
+        this( debug, false );
+    }
+
+    /**
+     * @param debug                     how to sign with the debug keystore.
+     * @param releaseKeyStoreConfigured whether a release keystore is configured.
+     */
+    public AndroidSigner( String debug, boolean releaseKeyStoreConfigured )
+    {
+        this.releaseKeyStoreConfigured = releaseKeyStoreConfigured;
         if ( debug == null )
         {
             throw new IllegalArgumentException( "android.sign.debug must be 'true', 'false', 'both' or 'auto'." );
@@ -54,6 +65,7 @@ public class AndroidSigner
     public AndroidSigner( Debug debug )
     {
         this.debug = debug;
+        this.releaseKeyStoreConfigured = false;
     }
 
     public boolean isSignWithDebugKeyStore()
@@ -64,7 +76,7 @@ public class AndroidSigner
         }
         if ( debug == Debug.BOTH )
         {
-            return true;
+            return ! releaseKeyStoreConfigured;
         }
         if ( debug == Debug.FALSE )
         {
@@ -72,12 +84,19 @@ public class AndroidSigner
         }
         if ( debug == Debug.AUTO )
         {
-            //TODO: This is where to add logic for skipping debug sign if there are other keystores configured.
-            return true;
+            return ! releaseKeyStoreConfigured;
         }
         throw new IllegalStateException( "Could not determine whether to sign with debug keystore." );
     }
 
+    /**
+     * @return <code>true</code> if a release keystore is configured and debug signing is not forced.
+     */
+    public boolean isSignWithReleaseKeyStore()
+    {
+        return releaseKeyStoreConfigured && debug != Debug.TRUE;
+    }
+
     public boolean shouldCreateBothSignedAndUnsignedApk()
     {
         return debug == Debug.BOTH;
@@ -0,0 +1,242 @@
+package com.jayway.maven.plugins.android.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the elements of a binary XML file compiled by aapt, like the <code>AndroidManifest.xml</code> of an apk, in
+ * the manner of a StAX reader. Only elements and their attributes are read; text, comments and namespace scopes are
+ * skipped.
+ * <p/>
+ * The file is a sequence of chunks, each starting with its type, header size and total size: a string pool that all
+ * names and string values refer to by index, a resource map, and one chunk per start and end of an element.
+ */
+public final class BinaryXmlReader
+{
+    private static final int XML_TYPE = 0x0003;
+    private static final int STRING_POOL_TYPE = 0x0001;
+    private static final int START_ELEMENT_TYPE = 0x0102;
+    private static final int END_ELEMENT_TYPE = 0x0103;
+    private static final int UTF8_FLAG = 1 << 8;
+    private static final int NO_INDEX = 0xFFFFFFFF;
+
+    private static final int TYPE_STRING = 0x03;
+    private static final int TYPE_INT_HEX = 0x11;
+    private static final int TYPE_INT_BOOLEAN = 0x12;
+
+    // offsets in a chunk header
+    private static final int HEADER_SIZE_OFFSET = 2;
+    private static final int SIZE_OFFSET = 4;
+    private static final int MIN_CHUNK_SIZE = 8;
+
+    // offsets in a string pool chunk
+    private static final int STRING_COUNT_OFFSET = 8;
+    private static final int FLAGS_OFFSET = 16;
+    private static final int STRINGS_START_OFFSET = 20;
+    private static final int STRING_OFFSET_SIZE = 4;
+
+    // offsets in a start element chunk, after the chunk header, line number and comment
+    private static final int ELEMENT_OFFSET = 16;
+    private static final int NAME_OFFSET = 4;
+    private static final int ATTRIBUTE_START_OFFSET = 8;
+    private static final int ATTRIBUTE_SIZE_OFFSET = 10;
+    private static final int ATTRIBUTE_COUNT_OFFSET = 12;
+
+    // offsets in an attribute
+    private static final int ATTRIBUTE_NAME_OFFSET = 4;
+    private static final int ATTRIBUTE_VALUE_OFFSET = 8;
+    private static final int ATTRIBUTE_TYPE_OFFSET = 15;
+    private static final int ATTRIBUTE_DATA_OFFSET = 16;
+
+    private static final int UNSIGNED_SHORT = 0xFFFF;
+    private static final int UNSIGNED_BYTE = 0xFF;
+    private static final int HIGH_BIT_SHORT = 0x8000;
+    private static final int HIGH_BIT_BYTE = 0x80;
+    private static final int LOW_BITS_BYTE = 0x7F;
+    private static final int LOW_BITS_SHORT = 0x7FFF;
+    private static final int BYTE_BITS = 8;
+    private static final int SHORT_BITS = 16;
+
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+    private static final Charset UTF16 = Charset.forName( "UTF-16LE" );
+
+    private final ByteBuffer buffer;
+    private String[] strings = new String[ 0 ];
+    private int position;
+    private int depth;
+    private String name;
+    private int attributeStart;
+    private int attributeSize;
+    private int attributeCount;
+
+    /**
+     * @param data the binary XML file.
+     * @throws IOException if the data is not a binary XML file.
+     */
+    public BinaryXmlReader( byte[] data ) throws IOException
+    {
+        buffer = ByteBuffer.wrap( data ).order( ByteOrder.LITTLE_ENDIAN );
+        if ( data.length < MIN_CHUNK_SIZE || getUnsignedShort( 0 ) != XML_TYPE )
+        {
+            throw new IOException( "Not a binary XML file" );
+        }
+        position = getUnsignedShort( HEADER_SIZE_OFFSET );
+    }
+
+    /**
+     * Moves to the next start element.
+     *
+     * @return <code>false</code> at the end of the file.
+     * @throws IOException if the file is truncated or malformed.
+     */
+    public boolean next() throws IOException
+    {
+        while ( position + MIN_CHUNK_SIZE <= buffer.limit() )
+        {
+            final int chunk = position;
+            final int type = getUnsignedShort( chunk );
+            final int headerSize = getUnsignedShort( chunk + HEADER_SIZE_OFFSET );
+            final int size = buffer.getInt( chunk + SIZE_OFFSET );
+            if ( size < MIN_CHUNK_SIZE || chunk + size > buffer.limit() )
+            {
+                throw new IOException( "Malformed binary XML chunk at " + chunk );
+            }
+            position = chunk + size;
+            if ( type == STRING_POOL_TYPE )
+            {
+                readStrings( chunk, headerSize );
+            }
+            else if ( type == END_ELEMENT_TYPE )
+            {
+                depth--;
+            }
+            else if ( type == START_ELEMENT_TYPE )
+            {
+                depth++;
+                final int element = chunk + ELEMENT_OFFSET;
+                name = getString( buffer.getInt( element + NAME_OFFSET ) );
+                attributeStart = element + getUnsignedShort( element + ATTRIBUTE_START_OFFSET );
+                attributeSize = getUnsignedShort( element + ATTRIBUTE_SIZE_OFFSET );
+                attributeCount = getUnsignedShort( element + ATTRIBUTE_COUNT_OFFSET );
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the local name of the current element.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return the depth of the current element, 1 for the root element.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @param namespace the namespace of the attribute, <code>null</code> for none.
+     * @param localName the local name of the attribute.
+     * @return the value of the attribute of the current element, or <code>null</code> if it has none. Booleans are
+     *         returned as <code>true</code> or <code>false</code>, other values in decimal unless aapt kept them in
+     *         hex.
+     */
+    public String getAttributeValue( String namespace, String localName )
+    {
+        for ( int i = 0; i < attributeCount; i++ )
+        {
+            final int attribute = attributeStart + i * attributeSize;
+            final String attributeNamespace = getString( buffer.getInt( attribute ) );
+            if ( localName.equals( getString( buffer.getInt( attribute + ATTRIBUTE_NAME_OFFSET ) ) )
+                    && ( namespace == null ? attributeNamespace == null : namespace.equals( attributeNamespace ) ) )
+            {
+                return getValue( attribute );
+            }
+        }
+        return null;
+    }
+
+    private String getValue( int attribute )
+    {
+        final int rawValue = buffer.getInt( attribute + ATTRIBUTE_VALUE_OFFSET );
+        if ( rawValue != NO_INDEX )
+        {
+            return getString( rawValue );
+        }
+        final int type = buffer.get( attribute + ATTRIBUTE_TYPE_OFFSET ) & UNSIGNED_BYTE;
+        final int data = buffer.getInt( attribute + ATTRIBUTE_DATA_OFFSET );
+        switch ( type )
+        {
+            case TYPE_STRING:
+                return getString( data );
+            case TYPE_INT_BOOLEAN:
+                return String.valueOf( data != 0 );
+            case TYPE_INT_HEX:
+                return "0x" + Integer.toHexString( data );
+            default:
+                return String.valueOf( data );
+        }
+    }
+
+    private String getString( int index )
+    {
+        return index >= 0 && index < strings.length ? strings[ index ] : null;
+    }
+
+    private void readStrings( int chunk, int headerSize )
+    {
+        final int count = buffer.getInt( chunk + STRING_COUNT_OFFSET );
+        final int flags = buffer.getInt( chunk + FLAGS_OFFSET );
+        final int stringsStart = chunk + buffer.getInt( chunk + STRINGS_START_OFFSET );
+        final boolean utf8 = ( flags & UTF8_FLAG ) != 0;
+        strings = new String[ count ];
+        for ( int i = 0; i < count; i++ )
+        {
+            final int offset = stringsStart + buffer.getInt( chunk + headerSize + i * STRING_OFFSET_SIZE );
+            strings[ i ] = utf8 ? readUtf8( offset ) : readUtf16( offset );
+        }
+    }
+
+    private String readUtf8( int offset )
+    {
+        // the length in characters, then the length in bytes, each one or two bytes
+        int start = offset + ( ( buffer.get( offset ) & HIGH_BIT_BYTE ) != 0 ? 2 : 1 );
+        int length = buffer.get( start ) & UNSIGNED_BYTE;
+        if ( ( length & HIGH_BIT_BYTE ) != 0 )
+        {
+            length = ( ( length & LOW_BITS_BYTE ) << BYTE_BITS ) | ( buffer.get( start + 1 ) & UNSIGNED_BYTE );
+            start += 2;
+        }
+        else
+        {
+            start += 1;
+        }
+        return new String( buffer.array(), start, length, UTF8 );
+    }
+
+    private String readUtf16( int offset )
+    {
+        // the length in UTF-16 units, one or two units
+        int length = getUnsignedShort( offset );
+        int start = offset + 2;
+        if ( ( length & HIGH_BIT_SHORT ) != 0 )
+        {
+            length = ( ( length & LOW_BITS_SHORT ) << SHORT_BITS ) | getUnsignedShort( start );
+            start += 2;
+        }
+        return new String( buffer.array(), start, length * 2, UTF16 );
+    }
+
+    private int getUnsignedShort( int offset )
+    {
+        return buffer.getShort( offset ) & UNSIGNED_SHORT;
+    }
+}
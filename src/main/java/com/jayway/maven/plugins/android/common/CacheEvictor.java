@@ -0,0 +1,129 @@
+package com.jayway.maven.plugins.android.common;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a content addressed cache shared by several builds within a maximum size. The entries of such caches never
+ * need to be invalidated, only evicted: a build touches the entries it uses, and the least recently used entries
+ * are deleted first. An entry is a file or a folder, and may sit in a key prefix folder.
+ * <p/>
+ * The caches write entries to a temporary <code>*.tmp</code> file or folder that is renamed when complete. Temporary
+ * files old enough to have been abandoned by a build that died are deleted as well.
+ */
+public final class CacheEvictor
+{
+    /**
+     * Suffix of the files and folders of entries being written.
+     */
+    public static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Temporary files older than this were left behind by a build that died, and are deleted during eviction.
+     */
+    private static final long STALE_TEMP_AGE = TimeUnit.HOURS.toMillis( 1 );
+
+    private CacheEvictor()
+    {
+    }
+
+    /**
+     * Marks a cache entry as recently used.
+     *
+     * @param entry the file or folder of the entry.
+     */
+    public static void touch( File entry )
+    {
+        entry.setLastModified( System.currentTimeMillis() );
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits in its maximum size again, along with stale
+     * temporary files. Entries another build is deleting or writing meanwhile are skipped, failing to delete is
+     * ignored.
+     *
+     * @param directory   the cache directory.
+     * @param prefixDepth the number of key prefix folders above the entries, 0 when entries are directly in the
+     *                    cache directory.
+     * @param maxSize     the size in bytes above which entries are evicted.
+     * @param log         where to report evicted entries.
+     */
+    public static void evict( File directory, int prefixDepth, long maxSize, Log log )
+    {
+        final List< File > entries = new ArrayList< File >();
+        collect( directory, prefixDepth, System.currentTimeMillis(), entries );
+
+        long totalSize = 0;
+        for ( File entry : entries )
+        {
+            totalSize += sizeOf( entry );
+        }
+        if ( totalSize <= maxSize )
+        {
+            return;
+        }
+
+        Collections.sort( entries, new Comparator< File >()
+        {
+            @Override
+            public int compare( File a, File b )
+            {
+                final long aModified = a.lastModified();
+                final long bModified = b.lastModified();
+                return aModified < bModified ? -1 : ( aModified == bModified ? 0 : 1 );
+            }
+        } );
+        for ( File entry : entries )
+        {
+            if ( totalSize <= maxSize )
+            {
+                break;
+            }
+            final long size = sizeOf( entry );
+            if ( FileUtils.deleteQuietly( entry ) )
+            {
+                log.debug( "Evicted " + entry + " from the cache" );
+                totalSize -= size;
+            }
+        }
+    }
+
+    private static long sizeOf( File entry )
+    {
+        return entry.isDirectory() ? FileUtils.sizeOfDirectory( entry ) : entry.length();
+    }
+
+    private static void collect( File directory, int prefixDepth, long now, List< File > entries )
+    {
+        final File[] files = directory.listFiles();
+        if ( files == null )
+        {
+            return;
+        }
+        for ( File file : files )
+        {
+            if ( file.getName().endsWith( TEMP_SUFFIX ) )
+            {
+                if ( now - file.lastModified() > STALE_TEMP_AGE )
+                {
+                    FileUtils.deleteQuietly( file );
+                }
+            }
+            else if ( prefixDepth > 0 )
+            {
+                collect( file, prefixDepth - 1, now, entries );
+            }
+            else
+            {
+                entries.add( file );
+            }
+        }
+    }
+}
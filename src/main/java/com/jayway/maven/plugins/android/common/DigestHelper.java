@@ -0,0 +1,174 @@
+package com.jayway.maven.plugins.android.common;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Helper class to compute content hashes of files and strings, used to key caches by content rather than by file
+ * name or timestamp.
+ */
+public class DigestHelper
+{
+
+    private static final String ALGORITHM = "SHA-256";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * File hashes of this JVM, keyed by path, size and modification time. Shared between all modules of a reactor
+     * build, so a dependency jar is hashed at most once per build.
+     */
+    private static final Map<String, String> FILE_HASHES = new ConcurrentHashMap<String, String>();
+
+    private DigestHelper()
+    {
+    }
+
+    /**
+     * Computes the SHA-256 of the content of a file. The result is memoized for as long as the file keeps its size
+     * and modification time.
+     *
+     * @param file the file to hash.
+     * @return the hash as lower case hex string.
+     * @throws IOException if the file cannot be read.
+     */
+    public static String sha256( File file ) throws IOException
+    {
+        final String key = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+        String hash = FILE_HASHES.get( key );
+        if ( hash == null )
+        {
+            final InputStream in = new FileInputStream( file );
+            try
+            {
+                hash = sha256( in );
+            }
+            finally
+            {
+                IOUtils.closeQuietly( in );
+            }
+            FILE_HASHES.put( key, hash );
+        }
+        return hash;
+    }
+
+    /**
+     * Computes the SHA-256 of everything remaining in a stream. The stream is not closed.
+     *
+     * @param in the stream to hash.
+     * @return the hash as lower case hex string.
+     * @throws IOException if the stream cannot be read.
+     */
+    public static String sha256( InputStream in ) throws IOException
+    {
+        final MessageDigest digest = newDigest();
+        final byte[] buffer = new byte[ 64 * 1024 ];
+        int n;
+        while ( ( n = in.read( buffer ) ) != -1 )
+        {
+            digest.update( buffer, 0, n );
+        }
+        return toHex( digest.digest() );
+    }
+
+    /**
+     * Computes the SHA-256 of a number of strings, e.g. to combine several hashes and settings into one cache key.
+     *
+     * @param values the strings to hash, in order.
+     * @return the hash as lower case hex string.
+     */
+    public static String sha256( String... values )
+    {
+        final MessageDigest digest = newDigest();
+        try
+        {
+            for ( String value : values )
+            {
+                digest.update( String.valueOf( value ).getBytes( "UTF-8" ) );
+                // separate the values so that ("ab", "c") and ("a", "bc") give different hashes
+                digest.update( ( byte ) 0 );
+            }
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( "UTF-8 is not supported", e );
+        }
+        return toHex( digest.digest() );
+    }
+
+    /**
+     * Computes the SHA-256 of the path, size and modification time of files and of all files in folders, together
+     * with a number of strings. Does not read the files, so it can tell cheaply on every build whether the inputs of
+     * a tool changed since it last ran.
+     *
+     * @param files  the files and folders, missing ones included as such.
+     * @param values the strings to hash as well, e.g. the options of the tool.
+     * @return the hash as lower case hex string.
+     */
+    public static String fingerprint( Collection<File> files, String... values )
+    {
+        final List<String> state = new ArrayList<String>( Arrays.asList( values ) );
+        for ( File file : files )
+        {
+            addState( state, file );
+        }
+        return sha256( state.toArray( new String[ state.size() ] ) );
+    }
+
+    private static void addState( List<String> state, File file )
+    {
+        final File[] children = file.listFiles();
+        if ( children == null )
+        {
+            state.add( file.getAbsolutePath() + "|" + file.exists() + "|" + file.length() + "|"
+                    + file.lastModified() );
+            return;
+        }
+        state.add( file.getAbsolutePath() + "/" );
+        Arrays.sort( children );
+        for ( File child : children )
+        {
+            addState( state, child );
+        }
+    }
+
+    /**
+     * @param bytes the bytes to convert.
+     * @return the bytes as lower case hex string.
+     */
+    public static String toHex( byte[] bytes )
+    {
+        final char[] chars = new char[ bytes.length * 2 ];
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            chars[ i * 2 ] = HEX[ ( bytes[ i ] >> 4 ) & 0x0f ];
+            chars[ i * 2 + 1 ] = HEX[ bytes[ i ] & 0x0f ];
+        }
+        return new String( chars );
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance( ALGORITHM );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( ALGORITHM + " is not supported by this JVM", e );
+        }
+    }
+}
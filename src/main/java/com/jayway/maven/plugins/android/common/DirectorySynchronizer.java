@@ -0,0 +1,427 @@
+package com.jayway.maven.plugins.android.common;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.AbstractScanner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Keeps a directory in sync with the overlay of several source directories, where files of later directories
+ * replace files at the same path in earlier ones. This is how the assets of dependencies, apklibs and the project
+ * are combined, as aapt only takes one assets directory.
+ * <p/>
+ * A state file records the source, size, modification time and content hash of every synchronized file, so that a
+ * build only copies the files that changed and deletes the ones that are gone. Files are hard linked instead of
+ * copied when the JVM and the file system support it. Files matching the default excludes of
+ * {@link AbstractScanner#DEFAULTEXCLUDES}, e.g. source control files, are left out.
+ * <p/>
+ * A {@link Transformer} can process some files instead of copying them, e.g. to crunch images. Updates run on a pool
+ * of threads.
+ */
+public class DirectorySynchronizer
+{
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String SEPARATOR = "|";
+    private static final int STATE_FIELDS = 5;
+    private static final int HASH_FIELD = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final PathMatcher DEFAULT_EXCLUDES = new PathMatcher( AbstractScanner.DEFAULTEXCLUDES );
+
+    private static final Method CREATE_LINK;
+    private static final Method TO_PATH;
+
+    static
+    {
+        Method createLink = null;
+        Method toPath = null;
+        try
+        {
+            // java.nio.file is only available from Java 7 on
+            final Class< ? > pathClass = Class.forName( "java.nio.file.Path" );
+            createLink = Class.forName( "java.nio.file.Files" ).getMethod( "createLink", pathClass, pathClass );
+            toPath = File.class.getMethod( "toPath" );
+        }
+        catch ( ClassNotFoundException e )
+        {
+            createLink = null;
+        }
+        catch ( NoSuchMethodException e )
+        {
+            createLink = null;
+        }
+        CREATE_LINK = createLink;
+        TO_PATH = toPath;
+    }
+
+    private final File target;
+    private final File stateFile;
+    private final Log log;
+    private final List< File > sources = new ArrayList< File >();
+    private volatile boolean hardLinks = CREATE_LINK != null;
+    private Transformer transformer;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Creates target files from source files in another way than copying them.
+     */
+    public interface Transformer
+    {
+        /**
+         * @param path the path of a file relative to the directories.
+         * @return <code>true</code> if the file is transformed rather than copied.
+         */
+        boolean accepts( String path );
+
+        /**
+         * Creates a target file. Called concurrently for different files.
+         *
+         * @param source the source file.
+         * @param target the target file to create, does not exist.
+         * @return the content hash of the source file, see {@link DigestHelper#sha256(File)}.
+         * @throws IOException if the file cannot be transformed.
+         */
+        String transform( File source, File target ) throws IOException;
+    }
+
+    /**
+     * @param target    the directory to synchronize, created if needed.
+     * @param stateFile the file recording the state of the last synchronization.
+     * @param log       the log of the calling mojo.
+     */
+    public DirectorySynchronizer( File target, File stateFile, Log log )
+    {
+        this.target = target;
+        this.stateFile = stateFile;
+        this.log = log;
+    }
+
+    /**
+     * @param hardLinks whether files may be hard linked instead of copied. The source files must not be modified in
+     *                  place by anything else than the user then, which holds for extracted dependencies and project
+     *                  files.
+     */
+    public void setHardLinks( boolean hardLinks )
+    {
+        this.hardLinks = hardLinks && CREATE_LINK != null;
+    }
+
+    /**
+     * @param transformer creates the files it accepts instead of copying them, <code>null</code> to copy all files.
+     */
+    public void setTransformer( Transformer transformer )
+    {
+        this.transformer = transformer;
+    }
+
+    /**
+     * @param threads the number of files updated concurrently, 0 for one per processor.
+     */
+    public void setThreads( int threads )
+    {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Adds a source directory. Its files take precedence over the files of the directories added before.
+     *
+     * @param source the directory, ignored if it does not exist.
+     */
+    public void addSource( File source )
+    {
+        if ( source.isDirectory() )
+        {
+            sources.add( source );
+        }
+    }
+
+    /**
+     * Brings the target directory up to date with the sources.
+     *
+     * @return the number of files copied or deleted.
+     * @throws IOException if a file cannot be read or written.
+     */
+    public int synchronize() throws IOException
+    {
+        final Map< String, File > view = new TreeMap< String, File >();
+        for ( File source : sources )
+        {
+            collect( source, "", view );
+        }
+
+        final Properties previous = StateFileHelper.load( stateFile );
+        final Properties state = new Properties();
+        final Map< String, Future< String > > updates = new TreeMap< String, Future< String > >();
+        final ExecutorService updaters = Executors.newFixedThreadPool( threads );
+        try
+        {
+            for ( Map.Entry< String, File > entry : view.entrySet() )
+            {
+                final String path = entry.getKey();
+                final File source = entry.getValue();
+                final File file = new File( target, path );
+                final String hash = getUpToDateHash( previous.getProperty( path ), source, file );
+                if ( hash != null )
+                {
+                    state.setProperty( path, toState( source, hash, file ) );
+                }
+                else
+                {
+                    updates.put( path, updaters.submit( new Callable< String >()
+                    {
+                        @Override
+                        public String call() throws IOException
+                        {
+                            return update( path, source, file );
+                        }
+                    } ) );
+                }
+            }
+            for ( Map.Entry< String, Future< String > > update : updates.entrySet() )
+            {
+                final String path = update.getKey();
+                final String hash = getResult( update.getValue() );
+                state.setProperty( path, toState( view.get( path ), hash, new File( target, path ) ) );
+            }
+        }
+        finally
+        {
+            updaters.shutdownNow();
+            // keep what was done so far, so that a failing file does not cause a full update next time
+            StateFileHelper.save( stateFile, state );
+        }
+        final int changes = updates.size() + deleteRemoved( target, "", view );
+
+        if ( changes > 0 )
+        {
+            log.debug( "Synchronized " + changes + " files of " + target );
+        }
+        return changes;
+    }
+
+    private void collect( File folder, String path, Map< String, File > view )
+    {
+        final File[] files = folder.listFiles();
+        if ( files == null )
+        {
+            return;
+        }
+        Arrays.sort( files );
+        for ( File file : files )
+        {
+            final String filePath = path + file.getName();
+            if ( DEFAULT_EXCLUDES.matches( filePath ) )
+            {
+                log.debug( "Excluding " + filePath + " from " + folder );
+                continue;
+            }
+            if ( file.isDirectory() )
+            {
+                collect( file, filePath + "/", view );
+            }
+            else
+            {
+                view.put( filePath, file );
+            }
+        }
+    }
+
+    /**
+     * @return the recorded hash if the target file is still a copy of the source, <code>null</code> if it must be
+     *         updated.
+     */
+    private String getUpToDateHash( String recorded, File source, File file ) throws IOException
+    {
+        if ( recorded == null || ! file.isFile() )
+        {
+            return null;
+        }
+        final String[] fields = recorded.split( "\\" + SEPARATOR, STATE_FIELDS );
+        if ( fields.length != STATE_FIELDS || ! fields[ STATE_FIELDS - 1 ].equals( String.valueOf( file.length() ) ) )
+        {
+            return null;
+        }
+        final String hash = fields[ HASH_FIELD ];
+        if ( fields[ 0 ].equals( source.getAbsolutePath() ) && fields[ 1 ].equals( String.valueOf( source.length() ) )
+                && fields[ 2 ].equals( String.valueOf( source.lastModified() ) ) )
+        {
+            return hash;
+        }
+        // touched or extracted again, but possibly with the same content
+        if ( hash.length() > 0 && hash.equals( DigestHelper.sha256( source ) ) )
+        {
+            return hash;
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the target file by a link to, a copy of, or a transformation of the source file.
+     *
+     * @return the content hash if the file was read, an empty string if it was linked.
+     */
+    private String update( String path, File source, File file ) throws IOException
+    {
+        final File parent = file.getParentFile();
+        // another thread may be creating the same folder
+        if ( ! parent.mkdirs() && ! parent.isDirectory() )
+        {
+            throw new IOException( "Could not create " + parent );
+        }
+        // never write through an existing link, that would change the source of the previous build
+        if ( file.exists() && ! file.delete() )
+        {
+            throw new IOException( "Could not delete " + file );
+        }
+        if ( transformer != null && transformer.accepts( path ) )
+        {
+            return transformer.transform( source, file );
+        }
+        if ( hardLinks && link( source, file ) )
+        {
+            return "";
+        }
+        return copy( source, file );
+    }
+
+    private boolean link( File source, File file )
+    {
+        try
+        {
+            CREATE_LINK.invoke( null, TO_PATH.invoke( file ), TO_PATH.invoke( source ) );
+            return true;
+        }
+        catch ( InvocationTargetException e )
+        {
+            // e.g. another file system, copy from now on
+            log.debug( "Could not link " + file + " to " + source + ", copying instead", e.getCause() );
+            hardLinks = false;
+            return false;
+        }
+        catch ( IllegalAccessException e )
+        {
+            hardLinks = false;
+            return false;
+        }
+    }
+
+    private static String copy( File source, File file ) throws IOException
+    {
+        final MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance( DIGEST_ALGORITHM );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( DIGEST_ALGORITHM + " is not supported by this JVM", e );
+        }
+        final InputStream in = new DigestInputStream( new FileInputStream( source ), digest );
+        OutputStream out = null;
+        try
+        {
+            out = new FileOutputStream( file );
+            final byte[] buffer = new byte[ BUFFER_SIZE ];
+            int n;
+            while ( ( n = in.read( buffer ) ) != -1 )
+            {
+                out.write( buffer, 0, n );
+            }
+            out.close();
+        }
+        finally
+        {
+            IOUtils.closeQuietly( out );
+            IOUtils.closeQuietly( in );
+        }
+        file.setLastModified( source.lastModified() );
+        return DigestHelper.toHex( digest.digest() );
+    }
+
+    /**
+     * Deletes the files and folders of the target that are not part of the view anymore.
+     *
+     * @return the number of deleted files.
+     */
+    private int deleteRemoved( File folder, String path, Map< String, File > view ) throws IOException
+    {
+        final File[] files = folder.listFiles();
+        if ( files == null )
+        {
+            return 0;
+        }
+        int deleted = 0;
+        for ( File file : files )
+        {
+            final String filePath = path + file.getName();
+            if ( file.isDirectory() )
+            {
+                deleted += deleteRemoved( file, filePath + "/", view );
+                final String[] remaining = file.list();
+                if ( remaining != null && remaining.length == 0 && ! file.delete() )
+                {
+                    throw new IOException( "Could not delete " + file );
+                }
+            }
+            else if ( ! view.containsKey( filePath ) )
+            {
+                if ( ! file.delete() )
+                {
+                    throw new IOException( "Could not delete " + file );
+                }
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    private static String toState( File source, String hash, File file )
+    {
+        return source.getAbsolutePath() + SEPARATOR + source.length() + SEPARATOR + source.lastModified()
+                + SEPARATOR + hash + SEPARATOR + file.length();
+    }
+
+    private static String getResult( Future< String > update ) throws IOException
+    {
+        try
+        {
+            return update.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while synchronizing files" );
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof IOException )
+            {
+                throw ( IOException ) e.getCause();
+            }
+            throw new IllegalStateException( "Could not synchronize a file", e.getCause() );
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.jayway.maven.plugins.android.common;
+
+import org.apache.commons.io.IOUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The values of an <code>AndroidManifest.xml</code> file the build needs, read in a single streaming pass, either
+ * from the text manifest of a project or from the binary manifest of an apk.
+ * <p/>
+ * The metadata of a file is memoized for this JVM, keyed by path, size and modification time, so that the manifests
+ * of the project and its apklibs are parsed once per build however many mojos and modules query them.
+ */
+public final class ManifestMetadata
+{
+    /**
+     * The namespace of the <code>android:</code> attributes.
+     */
+    public static final String ANDROID_NAMESPACE = "http://schemas.android.com/apk/res/android";
+
+    private static final String MANIFEST_ENTRY = "AndroidManifest.xml";
+
+    private static final Map<String, ManifestMetadata> METADATA = new ConcurrentHashMap<String, ManifestMetadata>();
+
+    private String packageName;
+    private String versionCode;
+    private String versionName;
+    private String minSdkVersion;
+    private String targetSdkVersion;
+    private String debuggable;
+    private String instrumentationRunner;
+    private String instrumentationTargetPackage;
+
+    /**
+     * The attributes of the current element of a reader.
+     */
+    private interface Attributes
+    {
+        String get( String namespace, String name );
+    }
+
+    private ManifestMetadata()
+    {
+    }
+
+    /**
+     * @param manifestFile an <code>AndroidManifest.xml</code> file.
+     * @return the metadata of the file.
+     * @throws IOException if the file cannot be read or parsed.
+     */
+    public static ManifestMetadata get( File manifestFile ) throws IOException
+    {
+        final String key = manifestFile.getAbsolutePath() + "|" + manifestFile.length() + "|"
+                + manifestFile.lastModified();
+        ManifestMetadata metadata = METADATA.get( key );
+        if ( metadata == null )
+        {
+            metadata = parse( manifestFile );
+            METADATA.put( key, metadata );
+        }
+        return metadata;
+    }
+
+    /**
+     * @param apkFile an apk file.
+     * @return the metadata of the binary manifest of the apk.
+     * @throws IOException if the apk cannot be read or has no manifest.
+     */
+    public static ManifestMetadata getFromApk( File apkFile ) throws IOException
+    {
+        final String key = apkFile.getAbsolutePath() + "!" + MANIFEST_ENTRY + "|" + apkFile.length() + "|"
+                + apkFile.lastModified();
+        ManifestMetadata metadata = METADATA.get( key );
+        if ( metadata == null )
+        {
+            metadata = parseBinary( readManifestEntry( apkFile ) );
+            METADATA.put( key, metadata );
+        }
+        return metadata;
+    }
+
+    private static byte[] readManifestEntry( File apkFile ) throws IOException
+    {
+        final ZipFile apk = new ZipFile( apkFile );
+        try
+        {
+            final ZipEntry entry = apk.getEntry( MANIFEST_ENTRY );
+            if ( entry == null )
+            {
+                throw new IOException( apkFile + " has no " + MANIFEST_ENTRY );
+            }
+            final InputStream in = apk.getInputStream( entry );
+            try
+            {
+                return IOUtils.toByteArray( in );
+            }
+            finally
+            {
+                IOUtils.closeQuietly( in );
+            }
+        }
+        finally
+        {
+            apk.close();
+        }
+    }
+
+    private static ManifestMetadata parseBinary( byte[] manifest ) throws IOException
+    {
+        final ManifestMetadata metadata = new ManifestMetadata();
+        final BinaryXmlReader reader = new BinaryXmlReader( manifest );
+        final Attributes attributes = new Attributes()
+        {
+            @Override
+            public String get( String namespace, String name )
+            {
+                return reader.getAttributeValue( namespace, name );
+            }
+        };
+        while ( reader.next() )
+        {
+            metadata.read( reader.getName(), reader.getDepth(), attributes );
+        }
+        return metadata;
+    }
+
+    private static ManifestMetadata parse( File manifestFile ) throws IOException
+    {
+        final ManifestMetadata metadata = new ManifestMetadata();
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty( XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE );
+        factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+        factory.setProperty( XMLInputFactory.SUPPORT_DTD, Boolean.FALSE );
+        final InputStream in = new FileInputStream( manifestFile );
+        try
+        {
+            final XMLStreamReader reader = factory.createXMLStreamReader( in );
+            final Attributes attributes = new Attributes()
+            {
+                @Override
+                public String get( String namespace, String name )
+                {
+                    return reader.getAttributeValue( namespace, name );
+                }
+            };
+            int depth = 0;
+            while ( reader.hasNext() )
+            {
+                final int event = reader.next();
+                if ( event == XMLStreamConstants.END_ELEMENT )
+                {
+                    depth--;
+                }
+                else if ( event == XMLStreamConstants.START_ELEMENT )
+                {
+                    depth++;
+                    metadata.read( reader.getLocalName(), depth, attributes );
+                }
+            }
+            reader.close();
+        }
+        catch ( XMLStreamException e )
+        {
+            throw new IOException( "Could not parse " + manifestFile + ": " + e.getMessage() );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( in );
+        }
+        return metadata;
+    }
+
+    private void read( String element, int depth, Attributes attributes )
+    {
+        if ( depth == 1 && "manifest".equals( element ) )
+        {
+            packageName = attributes.get( null, "package" );
+            versionCode = attributes.get( ANDROID_NAMESPACE, "versionCode" );
+            versionName = attributes.get( ANDROID_NAMESPACE, "versionName" );
+        }
+        else if ( depth == 2 && "uses-sdk".equals( element ) )
+        {
+            minSdkVersion = attributes.get( ANDROID_NAMESPACE, "minSdkVersion" );
+            targetSdkVersion = attributes.get( ANDROID_NAMESPACE, "targetSdkVersion" );
+        }
+        else if ( depth == 2 && "application".equals( element ) )
+        {
+            debuggable = attributes.get( ANDROID_NAMESPACE, "debuggable" );
+        }
+        else if ( "instrumentation".equals( element ) && instrumentationRunner == null )
+        {
+            instrumentationRunner = attributes.get( ANDROID_NAMESPACE, "name" );
+            instrumentationTargetPackage = attributes.get( ANDROID_NAMESPACE, "targetPackage" );
+        }
+    }
+
+    /**
+     * @return the <code>package</code> of the manifest, or <code>null</code>.
+     */
+    public String getPackageName()
+    {
+        return packageName;
+    }
+
+    /**
+     * @return the <code>android:versionCode</code> of the manifest, or <code>null</code>.
+     */
+    public String getVersionCode()
+    {
+        return versionCode;
+    }
+
+    /**
+     * @return the <code>android:versionName</code> of the manifest, or <code>null</code>.
+     */
+    public String getVersionName()
+    {
+        return versionName;
+    }
+
+    /**
+     * @return the <code>android:minSdkVersion</code> of <code>uses-sdk</code>, or <code>null</code>.
+     */
+    public String getMinSdkVersion()
+    {
+        return minSdkVersion;
+    }
+
+    /**
+     * @return the <code>android:targetSdkVersion</code> of <code>uses-sdk</code>, or <code>null</code>.
+     */
+    public String getTargetSdkVersion()
+    {
+        return targetSdkVersion;
+    }
+
+    /**
+     * @return the <code>android:debuggable</code> of <code>application</code>, or <code>null</code>.
+     */
+    public String getDebuggable()
+    {
+        return debuggable;
+    }
+
+    /**
+     * @return the <code>android:name</code> of the first <code>instrumentation</code>, or <code>null</code>.
+     */
+    public String getInstrumentationRunner()
+    {
+        return instrumentationRunner;
+    }
+
+    /**
+     * @return the <code>android:targetPackage</code> of the first <code>instrumentation</code>, or <code>null</code>.
+     */
+    public String getInstrumentationTargetPackage()
+    {
+        return instrumentationTargetPackage;
+    }
+}
@@ -17,24 +17,24 @@ import org.sonatype.aether.collection.CollectRequest;
 import org.sonatype.aether.graph.Dependency;
 import org.sonatype.aether.graph.DependencyFilter;
 import org.sonatype.aether.graph.DependencyNode;
-import org.sonatype.aether.graph.Exclusion;
 import org.sonatype.aether.repository.RemoteRepository;
+import org.sonatype.aether.resolution.ArtifactResult;
 import org.sonatype.aether.resolution.DependencyRequest;
 import org.sonatype.aether.util.filter.AndDependencyFilter;
-import org.sonatype.aether.util.filter.ExclusionsDependencyFilter;
 import org.sonatype.aether.util.filter.ScopeDependencyFilter;
-import org.sonatype.aether.util.graph.PreorderNodeListGenerator;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -49,6 +49,15 @@ public class NativeHelper
 
     public static final int NDK_REQUIRED_VERSION = 7;
 
+    private static final Set<String> NATIVE_EXTENSIONS = new HashSet<String>( Arrays.asList( "so", "a" ) );
+
+    /**
+     * Transitive native libraries by project, for each repository session. Both the ndk-build and the apk goal need
+     * them, resolving the dependency graph once per build is enough.
+     */
+    private static final Map<RepositorySystemSession, Map<String, Set<Artifact>>> TRANSIENT_NATIVE_ARTIFACTS =
+            new WeakHashMap<RepositorySystemSession, Map<String, Set<Artifact>>>();
+
     private MavenProject project;
     private RepositorySystemSession repoSession;
     private RepositorySystem repoSystem;
@@ -202,81 +211,94 @@ public class NativeHelper
     private Set<Artifact> processTransientDependencies( List<org.apache.maven.model.Dependency> dependencies,
                                                         boolean sharedLibraries ) throws MojoExecutionException
     {
-
-        Set<Artifact> transientArtifacts = new LinkedHashSet<Artifact>();
-        for ( org.apache.maven.model.Dependency dependency : dependencies )
+        final String projectKey = project.getId();
+        Set<Artifact> nativeArtifacts;
+        synchronized ( TRANSIENT_NATIVE_ARTIFACTS )
         {
-            if ( ! "provided".equals( dependency.getScope() ) && ! dependency.isOptional() )
+            Map<String, Set<Artifact>> sessionArtifacts = TRANSIENT_NATIVE_ARTIFACTS.get( repoSession );
+            if ( sessionArtifacts == null )
+            {
+                sessionArtifacts = new HashMap<String, Set<Artifact>>();
+                TRANSIENT_NATIVE_ARTIFACTS.put( repoSession, sessionArtifacts );
+            }
+            nativeArtifacts = sessionArtifacts.get( projectKey );
+            if ( nativeArtifacts == null )
+            {
+                nativeArtifacts = collectTransientNativeArtifacts( dependencies );
+                sessionArtifacts.put( projectKey, nativeArtifacts );
+            }
+            else
             {
-                transientArtifacts.addAll(
-                        processTransientDependencies( toDependency( dependency, repoSession.getArtifactTypeRegistry() ),
-                                sharedLibraries ) );
+                log.debug( "Reusing the native dependencies resolved earlier in this session for " + projectKey );
             }
         }
 
+        final Set<Artifact> transientArtifacts = new LinkedHashSet<Artifact>();
+        for ( Artifact artifact : nativeArtifacts )
+        {
+            if ( isNativeLibrary( sharedLibraries, artifact.getType() ) )
+            {
+                transientArtifacts.add( artifact );
+            }
+        }
         return transientArtifacts;
-
     }
 
-    private Set<Artifact> processTransientDependencies( Dependency dependency, boolean sharedLibraries )
+    /**
+     * Collects the dependency graph of all direct dependencies in one request and resolves only the shared and
+     * static native libraries in it, skipping provided and optional dependencies.
+     */
+    private Set<Artifact> collectTransientNativeArtifacts( List<org.apache.maven.model.Dependency> dependencies )
             throws MojoExecutionException
     {
-        try
+        final Set<Artifact> artifacts = new LinkedHashSet<Artifact>();
+        final CollectRequest collectRequest = new CollectRequest();
+        for ( org.apache.maven.model.Dependency dependency : dependencies )
         {
-            final Set<Artifact> artifacts = new LinkedHashSet<Artifact>();
-
-            final CollectRequest collectRequest = new CollectRequest();
-
-            collectRequest.setRoot( dependency );
-            collectRequest.setRepositories( projectRepos );
-            final DependencyNode node = repoSystem.collectDependencies( repoSession, collectRequest ).getRoot();
-
-            Collection<String> exclusionPatterns = new ArrayList<String>();
-            if ( dependency.getExclusions() != null && ! dependency.getExclusions().isEmpty() )
+            if ( ! "provided".equals( dependency.getScope() ) && ! dependency.isOptional() )
             {
-                for ( Exclusion exclusion : dependency.getExclusions() )
-                {
-                    exclusionPatterns.add( exclusion.getGroupId() + ":" + exclusion.getArtifactId() );
-                }
+                // Exclusions declared on the dependency are applied while collecting its subgraph
+                collectRequest.addDependency( toDependency( dependency, repoSession.getArtifactTypeRegistry() ) );
             }
+        }
+        if ( collectRequest.getDependencies().isEmpty() )
+        {
+            return artifacts;
+        }
+        collectRequest.setRepositories( projectRepos );
 
-            final DependencyRequest dependencyRequest = new DependencyRequest( node,
-                    new AndDependencyFilter( new ExclusionsDependencyFilter( exclusionPatterns ),
-                            new AndDependencyFilter( new ScopeDependencyFilter( Arrays.asList( "compile", "runtime" ),
-                                    Arrays.asList( "test" ) ),
-                                    // Also exclude any optional dependencies
-                                    new DependencyFilter()
-                                    {
-                                        @Override
-                                        public boolean accept( DependencyNode dependencyNode,
-                                                               List<DependencyNode> dependencyNodes )
-                                        {
-                                            return ! dependencyNode.getDependency().isOptional();
-                                        }
-                                    } ) ) );
-
-
-            repoSystem.resolveDependencies( repoSession, dependencyRequest );
-
-            PreorderNodeListGenerator nlg = new PreorderNodeListGenerator();
-            node.accept( nlg );
+        try
+        {
+            final DependencyNode node = repoSystem.collectDependencies( repoSession, collectRequest ).getRoot();
 
-            final List<Dependency> dependencies = nlg.getDependencies( false );
+            final DependencyFilter nativeFilter = new AndDependencyFilter(
+                    new ScopeDependencyFilter( Arrays.asList( "compile", "runtime" ), Arrays.asList( "test" ) ),
+                    new DependencyFilter()
+                    {
+                        @Override
+                        public boolean accept( DependencyNode dependencyNode, List<DependencyNode> parents )
+                        {
+                            // Exclude optional dependencies and anything that is not a native library
+                            final Dependency dependency = dependencyNode.getDependency();
+                            return dependency != null && ! dependency.isOptional()
+                                    && NATIVE_EXTENSIONS.contains( dependency.getArtifact().getExtension() );
+                        }
+                    } );
 
-            for ( Dependency dep : dependencies )
+            final DependencyRequest dependencyRequest = new DependencyRequest( node, nativeFilter );
+            for ( ArtifactResult result : repoSystem.resolveDependencies( repoSession, dependencyRequest )
+                    .getArtifactResults() )
             {
-                final org.sonatype.aether.artifact.Artifact depAetherArtifact = dep.getArtifact();
-                if ( isNativeLibrary( sharedLibraries, depAetherArtifact.getExtension() ) )
-                {
-                    final Artifact mavenArtifact = artifactFactory
-                            .createDependencyArtifact( depAetherArtifact.getGroupId(),
-                                    depAetherArtifact.getArtifactId(),
-                                    VersionRange.createFromVersion( depAetherArtifact.getVersion() ),
-                                    depAetherArtifact.getExtension(), depAetherArtifact.getClassifier(),
-                                    dep.getScope() );
-                    mavenArtifact.setFile( depAetherArtifact.getFile() );
-                    artifacts.add( mavenArtifact );
-                }
+                final DependencyNode resolvedNode = result.getRequest().getDependencyNode();
+                final org.sonatype.aether.artifact.Artifact depAetherArtifact = result.getArtifact();
+                final Artifact mavenArtifact = artifactFactory
+                        .createDependencyArtifact( depAetherArtifact.getGroupId(),
+                                depAetherArtifact.getArtifactId(),
+                                VersionRange.createFromVersion( depAetherArtifact.getVersion() ),
+                                depAetherArtifact.getExtension(), depAetherArtifact.getClassifier(),
+                                resolvedNode.getDependency().getScope() );
+                mavenArtifact.setFile( depAetherArtifact.getFile() );
+                artifacts.add( mavenArtifact );
             }
 
             return artifacts;
@@ -0,0 +1,97 @@
+package com.jayway.maven.plugins.android.common;
+
+import java.util.regex.Pattern;
+
+/**
+ * Matches paths against a set of Ant style patterns, like {@link org.codehaus.plexus.util.SelectorUtils#matchPath}
+ * does for a single pattern: <code>?</code> matches one character, <code>*</code> any characters within a folder
+ * and <code>**</code> any number of folders.
+ * <p/>
+ * All patterns are compiled once into a single regular expression, so matching the entries of large archives does
+ * not parse the patterns again for every entry.
+ */
+public final class PathMatcher
+{
+    private static final String SEPARATOR = "/";
+    private static final String ANY_FOLDERS = "**";
+
+    private final Pattern pattern;
+
+    /**
+     * @param patterns the patterns, <code>null</code> or empty to match nothing.
+     */
+    public PathMatcher( String[] patterns )
+    {
+        this( "", patterns );
+    }
+
+    /**
+     * @param prefix   a path prepended to every pattern, e.g. <code>META-INF/</code>.
+     * @param patterns the patterns, <code>null</code> or empty to match nothing.
+     */
+    public PathMatcher( String prefix, String[] patterns )
+    {
+        if ( patterns == null || patterns.length == 0 )
+        {
+            this.pattern = null;
+            return;
+        }
+        final StringBuilder regex = new StringBuilder();
+        for ( String path : patterns )
+        {
+            if ( regex.length() > 0 )
+            {
+                regex.append( '|' );
+            }
+            regex.append( "(?:" );
+            appendRegex( regex, ( prefix + path ).replace( '\\', '/' ) );
+            regex.append( ')' );
+        }
+        this.pattern = Pattern.compile( regex.toString() );
+    }
+
+    /**
+     * @param path a path using <code>/</code> as separator.
+     * @return <code>true</code> if the path matches one of the patterns.
+     */
+    public boolean matches( String path )
+    {
+        return pattern != null && pattern.matcher( path ).matches();
+    }
+
+    private static void appendRegex( StringBuilder regex, String path )
+    {
+        final String[] segments = path.split( SEPARATOR, -1 );
+        for ( int i = 0; i < segments.length; i++ )
+        {
+            final String segment = segments[ i ];
+            final boolean last = i == segments.length - 1;
+            if ( ANY_FOLDERS.equals( segment ) )
+            {
+                // any number of folders, including none
+                regex.append( last ? ".*" : "(?:[^/]*/)*" );
+                continue;
+            }
+            for ( int j = 0; j < segment.length(); j++ )
+            {
+                final char c = segment.charAt( j );
+                if ( c == '*' )
+                {
+                    regex.append( "[^/]*" );
+                }
+                else if ( c == '?' )
+                {
+                    regex.append( "[^/]" );
+                }
+                else
+                {
+                    regex.append( Pattern.quote( String.valueOf( c ) ) );
+                }
+            }
+            if ( ! last )
+            {
+                regex.append( SEPARATOR );
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.jayway.maven.plugins.android.common;
+
+/**
+ * An entry of a {@link RawZipFile}, as described by the central directory of the zip file.
+ */
+public class RawZipEntry
+{
+    /**
+     * Compression method of entries stored without compression.
+     */
+    public static final int STORED = 0;
+
+    /**
+     * Compression method of deflated entries.
+     */
+    public static final int DEFLATED = 8;
+
+    /**
+     * General purpose flag telling that the name is UTF-8 encoded.
+     */
+    static final int FLAG_UTF8 = 0x0800;
+
+    /**
+     * General purpose flag telling that sizes and crc follow the data instead of being in the local header.
+     */
+    static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+
+    private final String name;
+    private final byte[] rawName;
+    private final int flags;
+    private final int method;
+    private final int dosTime;
+    private long crc;
+    private long compressedSize;
+    private long size;
+    private long externalAttributes;
+    private long localHeaderOffset;
+
+    RawZipEntry( String name, byte[] rawName, int flags, int method, int dosTime )
+    {
+        this.name = name;
+        this.rawName = rawName;
+        this.flags = flags;
+        this.method = method;
+        this.dosTime = dosTime;
+    }
+
+    void setData( long dataCrc, long dataCompressedSize, long dataSize )
+    {
+        this.crc = dataCrc;
+        this.compressedSize = dataCompressedSize;
+        this.size = dataSize;
+    }
+
+    void setLocation( long entryExternalAttributes, long entryLocalHeaderOffset )
+    {
+        this.externalAttributes = entryExternalAttributes;
+        this.localHeaderOffset = entryLocalHeaderOffset;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    byte[] getRawName()
+    {
+        return rawName;
+    }
+
+    int getFlags()
+    {
+        return flags;
+    }
+
+    /**
+     * @return {@link #STORED} or {@link #DEFLATED}.
+     */
+    public int getMethod()
+    {
+        return method;
+    }
+
+    /**
+     * @return the modification time in MS-DOS format, time in the low and date in the high 16 bits.
+     */
+    public int getDosTime()
+    {
+        return dosTime;
+    }
+
+    public long getCrc()
+    {
+        return crc;
+    }
+
+    public long getCompressedSize()
+    {
+        return compressedSize;
+    }
+
+    public long getSize()
+    {
+        return size;
+    }
+
+    long getExternalAttributes()
+    {
+        return externalAttributes;
+    }
+
+    long getLocalHeaderOffset()
+    {
+        return localHeaderOffset;
+    }
+
+    public boolean isDirectory()
+    {
+        return name.endsWith( "/" );
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
@@ -0,0 +1,373 @@
+package com.jayway.maven.plugins.android.common;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Read access to a zip file that exposes the compressed data of its entries, so that they can be copied into another
+ * zip file without inflating and deflating them again. Only the central directory is read up front, which makes
+ * listing the entries of even a large zip file cheap.
+ * <p/>
+ * Reading is thread safe, so several threads may read entries of the same file at once.
+ */
+public class RawZipFile implements Closeable
+{
+    static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    static final int LOCAL_HEADER_SIZE = 30;
+    static final int CENTRAL_HEADER_SIZE = 46;
+    static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final long ZIP64_MARKER = 0xffffffffL;
+    private static final int LOCAL_NAME_LENGTH_OFFSET = 26;
+    private static final int CENTRAL_FLAGS_OFFSET = 8;
+    private static final int CENTRAL_METHOD_OFFSET = 10;
+    private static final int CENTRAL_TIME_OFFSET = 12;
+    private static final int CENTRAL_CRC_OFFSET = 16;
+    private static final int CENTRAL_COMPRESSED_SIZE_OFFSET = 20;
+    private static final int CENTRAL_SIZE_OFFSET = 24;
+    private static final int CENTRAL_NAME_LENGTH_OFFSET = 28;
+    private static final int CENTRAL_EXTRA_LENGTH_OFFSET = 30;
+    private static final int CENTRAL_COMMENT_LENGTH_OFFSET = 32;
+    private static final int CENTRAL_EXTERNAL_ATTRIBUTES_OFFSET = 38;
+    private static final int CENTRAL_LOCAL_HEADER_OFFSET = 42;
+    private static final int EOCD_ENTRY_COUNT_OFFSET = 10;
+    private static final int EOCD_DIRECTORY_SIZE_OFFSET = 12;
+    private static final int EOCD_DIRECTORY_OFFSET_OFFSET = 16;
+    private static final int BYTE_MASK = 0xff;
+    private static final int UNSIGNED_SHORT_MASK = 0xffff;
+    private static final long UNSIGNED_INT_MASK = 0xffffffffL;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final Map< String, RawZipEntry > entries;
+    private final long centralDirectoryOffset;
+
+    /**
+     * Opens a zip file and reads its central directory.
+     *
+     * @param file the zip file.
+     * @throws IOException if the file cannot be read or is no zip file this class understands. Zip64 files and zip
+     *                     files spanning several disks are not supported.
+     */
+    public RawZipFile( File file ) throws IOException
+    {
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile( file, "r" );
+        this.channel = randomAccessFile.getChannel();
+        try
+        {
+            final ByteBuffer endOfCentralDirectory = findEndOfCentralDirectory();
+            final int entryCount = endOfCentralDirectory.getShort( EOCD_ENTRY_COUNT_OFFSET ) & UNSIGNED_SHORT_MASK;
+            final long directorySize = endOfCentralDirectory.getInt( EOCD_DIRECTORY_SIZE_OFFSET ) & UNSIGNED_INT_MASK;
+            centralDirectoryOffset = endOfCentralDirectory.getInt( EOCD_DIRECTORY_OFFSET_OFFSET ) & UNSIGNED_INT_MASK;
+            if ( directorySize == ZIP64_MARKER || centralDirectoryOffset == ZIP64_MARKER )
+            {
+                throw new IOException( "Zip64 is not supported: " + file );
+            }
+            entries = readCentralDirectory( read( centralDirectoryOffset, ( int ) directorySize ), entryCount );
+        }
+        catch ( IOException e )
+        {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * @return the entries in central directory order.
+     */
+    public List< RawZipEntry > getEntries()
+    {
+        return Collections.unmodifiableList( new ArrayList< RawZipEntry >( entries.values() ) );
+    }
+
+    /**
+     * @param name the entry name.
+     * @return the entry, or <code>null</code> if there is no entry of that name.
+     */
+    public RawZipEntry getEntry( String name )
+    {
+        return entries.get( name );
+    }
+
+    /**
+     * @return the offset of the central directory, which is where the data of the last entry ends.
+     */
+    public long getCentralDirectoryOffset()
+    {
+        return centralDirectoryOffset;
+    }
+
+    /**
+     * Finds where the data of an entry starts by reading its local header.
+     *
+     * @param entry an entry of this file.
+     * @return the file offset of the first data byte.
+     * @throws IOException if the local header cannot be read.
+     */
+    public long getDataOffset( RawZipEntry entry ) throws IOException
+    {
+        final ByteBuffer header = read( entry.getLocalHeaderOffset(), LOCAL_HEADER_SIZE );
+        if ( header.getInt( 0 ) != LOCAL_HEADER_SIGNATURE )
+        {
+            throw new IOException( "Bad local header for " + entry.getName() + " in " + file );
+        }
+        final int nameLength = header.getShort( LOCAL_NAME_LENGTH_OFFSET ) & UNSIGNED_SHORT_MASK;
+        final int extraLength = header.getShort( LOCAL_NAME_LENGTH_OFFSET + 2 ) & UNSIGNED_SHORT_MASK;
+        return entry.getLocalHeaderOffset() + LOCAL_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    /**
+     * @param entry an entry of this file.
+     * @return the data of the entry as stored in the file, i.e. compressed for deflated entries.
+     * @throws IOException if the local header cannot be read.
+     */
+    public InputStream getRawInputStream( RawZipEntry entry ) throws IOException
+    {
+        return new ChannelInputStream( getDataOffset( entry ), entry.getCompressedSize() );
+    }
+
+    /**
+     * @param entry an entry of this file.
+     * @return the uncompressed data of the entry.
+     * @throws IOException if the local header cannot be read or the compression method is not supported.
+     */
+    public InputStream getInputStream( final RawZipEntry entry ) throws IOException
+    {
+        final InputStream raw = getRawInputStream( entry );
+        if ( entry.getMethod() == RawZipEntry.STORED )
+        {
+            return raw;
+        }
+        if ( entry.getMethod() == RawZipEntry.DEFLATED )
+        {
+            final Inflater inflater = new Inflater( true );
+            return new InflaterInputStream( raw, inflater, BUFFER_SIZE )
+            {
+                private boolean eofSeen;
+
+                @Override
+                protected void fill() throws IOException
+                {
+                    // nowrap inflation needs one extra dummy byte after the compressed data
+                    if ( eofSeen )
+                    {
+                        throw new EOFException( "Unexpected end of " + entry.getName() + " in " + file );
+                    }
+                    len = in.read( buf, 0, buf.length );
+                    if ( len == -1 )
+                    {
+                        buf[ 0 ] = 0;
+                        len = 1;
+                        eofSeen = true;
+                    }
+                    inf.setInput( buf, 0, len );
+                }
+
+                @Override
+                public void close() throws IOException
+                {
+                    super.close();
+                    inflater.end();
+                }
+            };
+        }
+        throw new IOException( "Unsupported compression method " + entry.getMethod() + " for " + entry.getName() );
+    }
+
+    /**
+     * Reads part of the file.
+     *
+     * @param position the file offset to start at.
+     * @param length   the number of bytes to read.
+     * @return a little endian buffer holding exactly the requested bytes.
+     * @throws IOException if the file ends before.
+     */
+    ByteBuffer read( long position, int length ) throws IOException
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate( length ).order( ByteOrder.LITTLE_ENDIAN );
+        long offset = position;
+        while ( buffer.hasRemaining() )
+        {
+            final int n = channel.read( buffer, offset );
+            if ( n < 0 )
+            {
+                throw new EOFException( "Unexpected end of " + file );
+            }
+            offset += n;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        randomAccessFile.close();
+    }
+
+    private ByteBuffer findEndOfCentralDirectory() throws IOException
+    {
+        final long fileSize = channel.size();
+        if ( fileSize < END_OF_CENTRAL_DIRECTORY_SIZE )
+        {
+            throw new IOException( "Not a zip file: " + file );
+        }
+        final int tailSize = ( int ) Math.min( fileSize, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE );
+        final ByteBuffer tail = read( fileSize - tailSize, tailSize );
+        for ( int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i-- )
+        {
+            if ( tail.getInt( i ) == END_OF_CENTRAL_DIRECTORY_SIGNATURE )
+            {
+                tail.position( i );
+                return tail.slice().order( ByteOrder.LITTLE_ENDIAN );
+            }
+        }
+        throw new IOException( "Not a zip file, no end of central directory found: " + file );
+    }
+
+    private Map< String, RawZipEntry > readCentralDirectory( ByteBuffer directory, int entryCount )
+            throws IOException
+    {
+        final Map< String, RawZipEntry > result = new LinkedHashMap< String, RawZipEntry >( entryCount * 2 );
+        int position = 0;
+        for ( int i = 0; i < entryCount; i++ )
+        {
+            if ( position + CENTRAL_HEADER_SIZE > directory.limit() )
+            {
+                throw new IOException( "Truncated central directory in " + file );
+            }
+            if ( directory.getInt( position ) != CENTRAL_HEADER_SIGNATURE )
+            {
+                throw new IOException( "Bad central directory in " + file );
+            }
+            final int flags = directory.getShort( position + CENTRAL_FLAGS_OFFSET ) & UNSIGNED_SHORT_MASK;
+            final int method = directory.getShort( position + CENTRAL_METHOD_OFFSET ) & UNSIGNED_SHORT_MASK;
+            final int dosTime = directory.getInt( position + CENTRAL_TIME_OFFSET );
+            final long crc = directory.getInt( position + CENTRAL_CRC_OFFSET ) & UNSIGNED_INT_MASK;
+            final long compressedSize =
+                    directory.getInt( position + CENTRAL_COMPRESSED_SIZE_OFFSET ) & UNSIGNED_INT_MASK;
+            final long size = directory.getInt( position + CENTRAL_SIZE_OFFSET ) & UNSIGNED_INT_MASK;
+            final int nameLength = directory.getShort( position + CENTRAL_NAME_LENGTH_OFFSET ) & UNSIGNED_SHORT_MASK;
+            final int extraLength =
+                    directory.getShort( position + CENTRAL_EXTRA_LENGTH_OFFSET ) & UNSIGNED_SHORT_MASK;
+            final int commentLength =
+                    directory.getShort( position + CENTRAL_COMMENT_LENGTH_OFFSET ) & UNSIGNED_SHORT_MASK;
+            final long externalAttributes =
+                    directory.getInt( position + CENTRAL_EXTERNAL_ATTRIBUTES_OFFSET ) & UNSIGNED_INT_MASK;
+            final long localHeaderOffset =
+                    directory.getInt( position + CENTRAL_LOCAL_HEADER_OFFSET ) & UNSIGNED_INT_MASK;
+            if ( compressedSize == ZIP64_MARKER || size == ZIP64_MARKER || localHeaderOffset == ZIP64_MARKER )
+            {
+                throw new IOException( "Zip64 is not supported: " + file );
+            }
+
+            final byte[] rawName = new byte[ nameLength ];
+            directory.position( position + CENTRAL_HEADER_SIZE );
+            directory.get( rawName );
+            final String name = decodeName( rawName );
+            if ( !result.containsKey( name ) )
+            {
+                final RawZipEntry entry = new RawZipEntry( name, rawName, flags, method, dosTime );
+                entry.setData( crc, compressedSize, size );
+                entry.setLocation( externalAttributes, localHeaderOffset );
+                result.put( name, entry );
+            }
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return result;
+    }
+
+    private static String decodeName( byte[] rawName )
+    {
+        try
+        {
+            // the same as java.util.zip, which decodes all names as UTF-8
+            return new String( rawName, "UTF-8" );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( "UTF-8 is not supported", e );
+        }
+    }
+
+    /**
+     * Reads a range of the file through positional reads, so that streams on the same file do not interfere.
+     */
+    private final class ChannelInputStream extends InputStream
+    {
+        private long position;
+        private long remaining;
+
+        private ChannelInputStream( long position, long length )
+        {
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            final byte[] single = new byte[ 1 ];
+            return read( single, 0, 1 ) == -1 ? -1 : single[ 0 ] & BYTE_MASK;
+        }
+
+        @Override
+        public int read( byte[] b, int off, int len ) throws IOException
+        {
+            if ( remaining <= 0 )
+            {
+                return -1;
+            }
+            final int toRead = ( int ) Math.min( len, remaining );
+            final int n = channel.read( ByteBuffer.wrap( b, off, toRead ), position );
+            if ( n < 0 )
+            {
+                throw new EOFException( "Unexpected end of " + file );
+            }
+            position += n;
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public long skip( long n )
+        {
+            final long skipped = Math.max( 0, Math.min( n, remaining ) );
+            position += skipped;
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available()
+        {
+            return ( int ) Math.min( Integer.MAX_VALUE, remaining );
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.jayway.maven.plugins.android.common;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a zip file entry by entry. Entries of another zip file can be copied as they are stored there, without
+ * inflating and deflating them again. Stored entries can be aligned, so that their data starts at a file offset that
+ * is a multiple of a given alignment, the same way <code>zipalign</code> does it: by padding the extra field of the
+ * local header with zeros.
+ * <p/>
+ * Local headers always carry the crc and sizes, data descriptors are never written.
+ */
+public class RawZipWriter implements Closeable
+{
+    private static final int VERSION_STORED = 10;
+    private static final int VERSION_DEFLATED = 20;
+    private static final int ASCII_LIMIT = 0x80;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int DOS_EPOCH_YEAR = 1980;
+    private static final int DOS_YEAR_SHIFT = 25;
+    private static final int DOS_MONTH_SHIFT = 21;
+    private static final int DOS_DAY_SHIFT = 16;
+    private static final int DOS_HOUR_SHIFT = 11;
+    private static final int DOS_MINUTE_SHIFT = 5;
+
+    private final File file;
+    private final OutputStream out;
+    private final List< byte[] > centralDirectory = new ArrayList< byte[] >();
+    private final Set< String > names = new HashSet< String >();
+    private long position;
+    private boolean closed;
+
+    /**
+     * @param file the zip file to create. An existing file is overwritten.
+     * @throws IOException if the file cannot be created.
+     */
+    public RawZipWriter( File file ) throws IOException
+    {
+        this.file = file;
+        this.out = new BufferedOutputStream( new FileOutputStream( file ), BUFFER_SIZE );
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * @param name an entry name.
+     * @return <code>true</code> if an entry of this name was already written.
+     */
+    public boolean contains( String name )
+    {
+        return names.contains( name );
+    }
+
+    /**
+     * @return the number of bytes written so far, which is where the next local header starts.
+     */
+    public long getPosition()
+    {
+        return position;
+    }
+
+    /**
+     * Copies an entry of another zip file under its own name.
+     *
+     * @param source the zip file containing the entry.
+     * @param entry  the entry to copy.
+     * @throws IOException if the entry cannot be read or written.
+     */
+    public void copy( RawZipFile source, RawZipEntry entry ) throws IOException
+    {
+        copy( source, entry, entry.getName(), 0 );
+    }
+
+    /**
+     * Copies an entry of another zip file, without recompressing it.
+     *
+     * @param source    the zip file containing the entry.
+     * @param entry     the entry to copy.
+     * @param name      the name of the copy.
+     * @param alignment the alignment of the data if the entry is stored, 0 for none.
+     * @throws IOException if the entry cannot be read or written.
+     */
+    public void copy( RawZipFile source, RawZipEntry entry, String name, int alignment ) throws IOException
+    {
+        final byte[] rawName = name.equals( entry.getName() ) ? entry.getRawName() : encode( name );
+        final int flags = entry.getFlags() & ~RawZipEntry.FLAG_DATA_DESCRIPTOR;
+        final RawZipEntry copy = new RawZipEntry( name, rawName, flags, entry.getMethod(), entry.getDosTime() );
+        copy.setData( entry.getCrc(), entry.getCompressedSize(), entry.getSize() );
+        copy.setLocation( entry.getExternalAttributes(), position );
+        writeHeader( copy, entry.getMethod() == RawZipEntry.STORED ? alignment : 0 );
+        final InputStream in = source.getRawInputStream( entry );
+        try
+        {
+            position += IOUtils.copyLarge( in, out );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( in );
+        }
+    }
+
+    /**
+     * Writes an entry without compression.
+     *
+     * @param name      the entry name.
+     * @param data      the entry data.
+     * @param time      the modification time in milliseconds.
+     * @param alignment the alignment of the data, 0 for none.
+     * @throws IOException if the entry cannot be written.
+     */
+    public void writeStored( String name, byte[] data, long time, int alignment ) throws IOException
+    {
+        final CRC32 crc = new CRC32();
+        crc.update( data );
+        final RawZipEntry entry = newEntry( name, RawZipEntry.STORED, time );
+        entry.setData( crc.getValue(), data.length, data.length );
+        writeHeader( entry, alignment );
+        out.write( data );
+        position += data.length;
+    }
+
+    /**
+     * Writes an entry with data that was already deflated, e.g. on another thread.
+     *
+     * @param name       the entry name.
+     * @param compressed the raw deflated data, without zlib header.
+     * @param crc        the crc of the uncompressed data.
+     * @param size       the size of the uncompressed data.
+     * @param time       the modification time in milliseconds.
+     * @throws IOException if the entry cannot be written.
+     */
+    public void writeDeflated( String name, byte[] compressed, long crc, long size, long time ) throws IOException
+    {
+        final RawZipEntry entry = newEntry( name, RawZipEntry.DEFLATED, time );
+        entry.setData( crc, compressed.length, size );
+        writeHeader( entry, 0 );
+        out.write( compressed );
+        position += compressed.length;
+    }
+
+    /**
+     * Deflates and writes an entry.
+     *
+     * @param name the entry name.
+     * @param data the uncompressed entry data.
+     * @param time the modification time in milliseconds.
+     * @throws IOException if the entry cannot be written.
+     */
+    public void writeDeflated( String name, byte[] data, long time ) throws IOException
+    {
+        final CRC32 crc = new CRC32();
+        crc.update( data );
+        writeDeflated( name, deflate( data, Deflater.DEFAULT_COMPRESSION ), crc.getValue(), data.length, time );
+    }
+
+    /**
+     * Deflates data the way zip entries are deflated, without zlib header.
+     *
+     * @param data  the data to deflate.
+     * @param level the compression level.
+     * @return the deflated data.
+     */
+    public static byte[] deflate( byte[] data, int level )
+    {
+        final Deflater deflater = new Deflater( level, true );
+        try
+        {
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream( data.length / 2 + 1 );
+            final DeflaterOutputStream deflaterStream = new DeflaterOutputStream( compressed, deflater );
+            deflaterStream.write( data );
+            deflaterStream.finish();
+            return compressed.toByteArray();
+        }
+        catch ( IOException e )
+        {
+            throw new IllegalStateException( "Deflating into memory failed", e );
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Writes the central directory and closes the file. Closing twice has no effect.
+     *
+     * @throws IOException if the central directory cannot be written.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+        closed = true;
+        try
+        {
+            final long directoryOffset = position;
+            for ( byte[] record : centralDirectory )
+            {
+                out.write( record );
+                position += record.length;
+            }
+            final ByteBuffer end = ByteBuffer.allocate( RawZipFile.END_OF_CENTRAL_DIRECTORY_SIZE )
+                    .order( ByteOrder.LITTLE_ENDIAN );
+            end.putInt( RawZipFile.END_OF_CENTRAL_DIRECTORY_SIGNATURE );
+            end.putShort( ( short ) 0 );
+            end.putShort( ( short ) 0 );
+            end.putShort( ( short ) centralDirectory.size() );
+            end.putShort( ( short ) centralDirectory.size() );
+            end.putInt( ( int ) ( position - directoryOffset ) );
+            end.putInt( ( int ) directoryOffset );
+            end.putShort( ( short ) 0 );
+            out.write( end.array() );
+            out.close();
+        }
+        finally
+        {
+            IOUtils.closeQuietly( out );
+        }
+    }
+
+    private RawZipEntry newEntry( String name, int method, long time )
+    {
+        final RawZipEntry entry = new RawZipEntry( name, encode( name ), nameFlags( name ), method, toDosTime( time ) );
+        entry.setLocation( 0, position );
+        return entry;
+    }
+
+    private void writeHeader( RawZipEntry entry, int alignment ) throws IOException
+    {
+        if ( !names.add( entry.getName() ) )
+        {
+            throw new IOException( "Duplicate zip entry " + entry.getName() + " in " + file );
+        }
+        final byte[] rawName = entry.getRawName();
+        final int method = entry.getMethod();
+        if ( position > Integer.MAX_VALUE * 2L )
+        {
+            throw new IOException( "Zip64 is not supported: " + file );
+        }
+        final int version = method == RawZipEntry.STORED ? VERSION_STORED : VERSION_DEFLATED;
+        int padding = 0;
+        if ( alignment > 0 )
+        {
+            final long dataOffset = position + RawZipFile.LOCAL_HEADER_SIZE + rawName.length;
+            padding = ( int ) ( ( alignment - dataOffset % alignment ) % alignment );
+        }
+
+        final ByteBuffer local = ByteBuffer.allocate( RawZipFile.LOCAL_HEADER_SIZE + rawName.length + padding )
+                .order( ByteOrder.LITTLE_ENDIAN );
+        local.putInt( RawZipFile.LOCAL_HEADER_SIGNATURE );
+        local.putShort( ( short ) version );
+        local.putShort( ( short ) entry.getFlags() );
+        local.putShort( ( short ) method );
+        local.putInt( entry.getDosTime() );
+        local.putInt( ( int ) entry.getCrc() );
+        local.putInt( ( int ) entry.getCompressedSize() );
+        local.putInt( ( int ) entry.getSize() );
+        local.putShort( ( short ) rawName.length );
+        local.putShort( ( short ) padding );
+        local.put( rawName );
+
+        final ByteBuffer central = ByteBuffer.allocate( RawZipFile.CENTRAL_HEADER_SIZE + rawName.length )
+                .order( ByteOrder.LITTLE_ENDIAN );
+        central.putInt( RawZipFile.CENTRAL_HEADER_SIGNATURE );
+        central.putShort( ( short ) version );
+        central.putShort( ( short ) version );
+        central.putShort( ( short ) entry.getFlags() );
+        central.putShort( ( short ) method );
+        central.putInt( entry.getDosTime() );
+        central.putInt( ( int ) entry.getCrc() );
+        central.putInt( ( int ) entry.getCompressedSize() );
+        central.putInt( ( int ) entry.getSize() );
+        central.putShort( ( short ) rawName.length );
+        central.putShort( ( short ) 0 );
+        central.putShort( ( short ) 0 );
+        central.putShort( ( short ) 0 );
+        central.putShort( ( short ) 0 );
+        central.putInt( ( int ) entry.getExternalAttributes() );
+        central.putInt( ( int ) entry.getLocalHeaderOffset() );
+        central.put( rawName );
+        centralDirectory.add( central.array() );
+
+        out.write( local.array() );
+        position += local.capacity();
+    }
+
+    private static int nameFlags( String name )
+    {
+        for ( int i = 0; i < name.length(); i++ )
+        {
+            if ( name.charAt( i ) >= ASCII_LIMIT )
+            {
+                return RawZipEntry.FLAG_UTF8;
+            }
+        }
+        return 0;
+    }
+
+    private static byte[] encode( String name )
+    {
+        try
+        {
+            return name.getBytes( "UTF-8" );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( "UTF-8 is not supported", e );
+        }
+    }
+
+    /**
+     * Converts a time to the MS-DOS format of zip files, in the local time zone like java.util.zip does.
+     *
+     * @param time the time in milliseconds.
+     * @return the MS-DOS time, time in the low and date in the high 16 bits.
+     */
+    static int toDosTime( long time )
+    {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis( time );
+        final int year = calendar.get( Calendar.YEAR );
+        if ( year < DOS_EPOCH_YEAR )
+        {
+            // the earliest time MS-DOS can represent, 1980-01-01 00:00
+            return ( 1 << DOS_MONTH_SHIFT ) | ( 1 << DOS_DAY_SHIFT );
+        }
+        return ( year - DOS_EPOCH_YEAR ) << DOS_YEAR_SHIFT
+                | ( calendar.get( Calendar.MONTH ) + 1 ) << DOS_MONTH_SHIFT
+                | calendar.get( Calendar.DAY_OF_MONTH ) << DOS_DAY_SHIFT
+                | calendar.get( Calendar.HOUR_OF_DAY ) << DOS_HOUR_SHIFT
+                | calendar.get( Calendar.MINUTE ) << DOS_MINUTE_SHIFT
+                | calendar.get( Calendar.SECOND ) >> 1;
+    }
+}
@@ -0,0 +1,51 @@
+package com.jayway.maven.plugins.android.common;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class loaders over the jars of the Android SDK tools, like <code>manifmerger.jar</code>, shared by all modules of
+ * a build. The plugin classes live as long as the Maven session, so every jar is opened and its classes are loaded
+ * once per session rather than once per module.
+ * <p/>
+ * A class loader is keyed by the path, size and modification time of its jar and by its parent, so that an updated
+ * SDK gets a fresh class loader. Only tools that keep no state in static fields can share a class loader this way.
+ */
+public final class SdkClassLoaders
+{
+    private static final Map<String, URLClassLoader> LOADERS = new HashMap<String, URLClassLoader>();
+
+    private SdkClassLoaders()
+    {
+    }
+
+    /**
+     * @param jar    a jar of the SDK.
+     * @param parent the parent class loader, e.g. the class loader of the jars the jar depends on.
+     * @return the class loader of the jar with that parent, created on first use.
+     */
+    public static synchronized URLClassLoader get( File jar, ClassLoader parent )
+    {
+        final String key = jar.getAbsolutePath() + "|" + jar.length() + "|" + jar.lastModified() + "|"
+                + System.identityHashCode( parent );
+        URLClassLoader loader = LOADERS.get( key );
+        if ( loader == null || loader.getParent() != parent )
+        {
+            try
+            {
+                loader = new URLClassLoader( new URL[] { jar.toURI().toURL() }, parent );
+            }
+            catch ( MalformedURLException e )
+            {
+                // This one cannot happen.
+                throw new IllegalArgumentException( "Cannot create a correct URL from file " + jar, e );
+            }
+            LOADERS.put( key, loader );
+        }
+        return loader;
+    }
+}
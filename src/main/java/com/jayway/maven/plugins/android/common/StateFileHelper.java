@@ -0,0 +1,90 @@
+package com.jayway.maven.plugins.android.common;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Helper class to read and write the small property files incremental build steps keep in the build directory to
+ * remember what they did last time.
+ */
+public final class StateFileHelper
+{
+    private StateFileHelper()
+    {
+    }
+
+    /**
+     * Reads a state file. A missing or unreadable state file gives empty state, which makes the caller redo
+     * everything, so it is never an error.
+     *
+     * @param stateFile the state file.
+     * @return the state, never <code>null</code>.
+     */
+    public static Properties load( File stateFile )
+    {
+        final Properties state = new Properties();
+        if ( stateFile.isFile() )
+        {
+            InputStream in = null;
+            try
+            {
+                in = new FileInputStream( stateFile );
+                state.load( in );
+            }
+            catch ( IOException e )
+            {
+                state.clear();
+            }
+            finally
+            {
+                IOUtils.closeQuietly( in );
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Writes a state file. The state is written to a temporary file first and then renamed, so a build that is
+     * interrupted halfway never leaves a truncated state file behind.
+     *
+     * @param stateFile the state file.
+     * @param state     the state to write.
+     * @throws IOException if the state file could not be written.
+     */
+    public static void save( File stateFile, Properties state ) throws IOException
+    {
+        stateFile.getParentFile().mkdirs();
+        final File temp = new File( stateFile.getPath() + ".tmp" );
+        final OutputStream out = new FileOutputStream( temp );
+        try
+        {
+            state.store( out, null );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( out );
+        }
+        if ( !stateFile.delete() && stateFile.exists() || !temp.renameTo( stateFile ) )
+        {
+            temp.delete();
+            throw new IOException( "Could not write " + stateFile );
+        }
+    }
+
+    /**
+     * Deletes a state file, so that the next build starts from scratch.
+     *
+     * @param stateFile the state file.
+     */
+    public static void invalidate( File stateFile )
+    {
+        stateFile.delete();
+    }
+}
@@ -0,0 +1,203 @@
+package com.jayway.maven.plugins.android.common;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.UnArchiver;
+import org.codehaus.plexus.archiver.zip.ZipUnArchiver;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unpacks archives like apklibs once into a cache shared by all modules and builds, keyed by the hash of the archive
+ * content. Modules get a hard linked copy of the unpacked tree, kept up to date by a {@link DirectorySynchronizer},
+ * and a marker file next to it turns unpacking into a no-op while the archives stay the same.
+ * <p/>
+ * Archives are unpacked into a temporary folder of the cache that is renamed when complete, so that concurrent
+ * builds never see a partially unpacked tree. The cache is kept within a maximum size by evicting the least recently
+ * used trees, see {@link #evict()}.
+ */
+public class UnpackCache
+{
+    private static final String MARKER_SUFFIX = ".unpacked";
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final File cacheDirectory;
+    private final long maxSize;
+    private final Log log;
+    private boolean grown;
+
+    /**
+     * @param cacheDirectory the folder of the unpacked archives.
+     * @param maxSize        the size in bytes above which the least recently used trees are evicted.
+     * @param log            the log of the calling mojo.
+     */
+    public UnpackCache( File cacheDirectory, long maxSize, Log log )
+    {
+        this.cacheDirectory = cacheDirectory;
+        this.maxSize = maxSize;
+        this.log = log;
+    }
+
+    /**
+     * Unpacks archives into a folder, files of later archives replacing files of earlier ones at the same path.
+     * Files that are in none of the archives anymore are deleted.
+     *
+     * @param archives the archives, in order.
+     * @param target   the folder to unpack into.
+     * @throws IOException if an archive cannot be unpacked or the folder cannot be updated.
+     */
+    public void unpack( List< File > archives, File target ) throws IOException
+    {
+        final List< String > keys = new ArrayList< String >();
+        for ( File archive : archives )
+        {
+            keys.add( DigestHelper.sha256( archive ) );
+        }
+        final String key = DigestHelper.sha256( keys.toArray( new String[ keys.size() ] ) );
+        final File marker = new File( target.getParentFile(), target.getName() + MARKER_SUFFIX );
+        if ( target.isDirectory() && marker.isFile() && key.equals( FileUtils.readFileToString( marker ) ) )
+        {
+            log.debug( "Already unpacked " + archives + " into " + target );
+            return;
+        }
+        // unpacking again when the synchronization fails
+        marker.delete();
+
+        // another build may evict a tree before it is synchronized, which would empty the target, so unpack again
+        for ( int attempt = 1; ! synchronize( archives, keys, target ); attempt++ )
+        {
+            if ( attempt == MAX_ATTEMPTS )
+            {
+                throw new IOException( "Unpacked archives kept being evicted from " + cacheDirectory
+                        + " while updating " + target );
+            }
+            log.debug( "Unpacked archives were evicted while updating " + target + ", unpacking again" );
+        }
+        FileUtils.writeStringToFile( marker, key );
+    }
+
+    /**
+     * Deletes the least recently used trees until the cache fits in its maximum size again, along with temporary
+     * folders abandoned by builds that did not finish. Modules keep their copies of evicted trees. Does nothing when
+     * this instance did not unpack any archive, since then the cache did not grow.
+     */
+    public void evict()
+    {
+        if ( grown )
+        {
+            CacheEvictor.evict( cacheDirectory, 0, maxSize, log );
+            grown = false;
+        }
+    }
+
+    /**
+     * Synchronizes the target with the unpacked trees of the archives.
+     *
+     * @return <code>false</code> if a tree went missing, in which case the target must be synchronized again.
+     */
+    private boolean synchronize( List< File > archives, List< String > keys, File target ) throws IOException
+    {
+        final DirectorySynchronizer synchronizer = new DirectorySynchronizer( target,
+                new File( target.getParentFile(), target.getName() + ".state" ), log );
+        final List< File > sources = new ArrayList< File >();
+        for ( int i = 0; i < archives.size(); i++ )
+        {
+            final File unpacked = getUnpacked( archives.get( i ), keys.get( i ) );
+            sources.add( unpacked );
+            synchronizer.addSource( unpacked );
+        }
+        if ( ! allDirectories( sources ) )
+        {
+            return false;
+        }
+        try
+        {
+            synchronizer.synchronize();
+        }
+        catch ( IOException e )
+        {
+            if ( allDirectories( sources ) )
+            {
+                throw e;
+            }
+            log.debug( "Could not update " + target, e );
+            return false;
+        }
+        return allDirectories( sources );
+    }
+
+    private static boolean allDirectories( List< File > folders )
+    {
+        for ( File folder : folders )
+        {
+            if ( ! folder.isDirectory() )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the unpacked tree of an archive in the cache, unpacked first if needed.
+     */
+    private File getUnpacked( File archive, String key ) throws IOException
+    {
+        final File unpacked = new File( cacheDirectory, key );
+        if ( unpacked.isDirectory() )
+        {
+            CacheEvictor.touch( unpacked );
+            return unpacked;
+        }
+        if ( ! cacheDirectory.mkdirs() && ! cacheDirectory.isDirectory() )
+        {
+            throw new IOException( "Could not create " + cacheDirectory );
+        }
+        final File temporary = File.createTempFile( key, CacheEvictor.TEMP_SUFFIX, cacheDirectory );
+        try
+        {
+            if ( ! temporary.delete() || ! temporary.mkdir() )
+            {
+                throw new IOException( "Could not create " + temporary );
+            }
+            log.debug( "Unpacking " + archive + " into " + unpacked );
+            final UnArchiver unArchiver = new ZipUnArchiver( archive )
+            {
+                @Override
+                protected Logger getLogger()
+                {
+                    return new ConsoleLogger( Logger.LEVEL_DEBUG, "dependencies-unarchiver" );
+                }
+            };
+            unArchiver.setDestDirectory( temporary );
+            try
+            {
+                unArchiver.extract();
+            }
+            catch ( ArchiverException e )
+            {
+                throw new IOException( "Could not unpack " + archive + ": " + e.getMessage() );
+            }
+            // another build may have unpacked the same archive meanwhile
+            if ( ! temporary.renameTo( unpacked ) && ! unpacked.isDirectory() )
+            {
+                throw new IOException( "Could not move " + temporary + " to " + unpacked );
+            }
+            grown = true;
+        }
+        finally
+        {
+            if ( temporary.exists() )
+            {
+                FileUtils.deleteDirectory( temporary );
+            }
+        }
+        return unpacked;
+    }
+}
@@ -0,0 +1,152 @@
+package com.jayway.maven.plugins.android.common;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Aligns the stored entries of a zip file in Java, like the SDK's <code>zipalign</code> tool: the data of every
+ * entry stored without compression starts at a multiple of the alignment, which lets Android map it directly.
+ * Entries are copied as they are, only the extra field of their local header changes.
+ * <p/>
+ * Stored native libraries can be aligned on memory pages instead, like <code>zipalign -p</code> does, so that the
+ * loader can map them directly from the APK.
+ */
+public final class ZipAligner
+{
+    /**
+     * The alignment Android expects for stored entries.
+     */
+    public static final int DEFAULT_ALIGNMENT = 4;
+
+    /**
+     * The alignment of stored native libraries that are loaded directly from the APK.
+     */
+    public static final int PAGE_ALIGNMENT = 4096;
+
+    private static final String NATIVE_LIBRARIES_FOLDER = "lib/";
+
+    private ZipAligner()
+    {
+        // no instances
+    }
+
+    /**
+     * Writes an aligned copy of a zip file.
+     *
+     * @param in        the zip file to align.
+     * @param out       the aligned zip file to write, must not be the same file as <code>in</code>.
+     * @param alignment the alignment of stored entries.
+     * @throws IOException if a zip file cannot be read or written.
+     */
+    public static void align( File in, File out, int alignment ) throws IOException
+    {
+        align( in, out, alignment, false );
+    }
+
+    /**
+     * Writes an aligned copy of a zip file.
+     *
+     * @param in                       the zip file to align.
+     * @param out                      the aligned zip file to write, must not be the same file as <code>in</code>.
+     * @param alignment                the alignment of stored entries.
+     * @param pageAlignNativeLibraries whether stored native libraries are aligned on {@link #PAGE_ALIGNMENT}.
+     * @throws IOException if a zip file cannot be read or written.
+     */
+    public static void align( File in, File out, int alignment, boolean pageAlignNativeLibraries )
+            throws IOException
+    {
+        final RawZipFile source = new RawZipFile( in );
+        RawZipWriter writer = null;
+        try
+        {
+            writer = new RawZipWriter( out );
+            for ( RawZipEntry entry : source.getEntries() )
+            {
+                writer.copy( source, entry, entry.getName(),
+                        getAlignment( entry, alignment, pageAlignNativeLibraries ) );
+            }
+            writer.close();
+        }
+        finally
+        {
+            IOUtils.closeQuietly( writer );
+            source.close();
+        }
+    }
+
+    /**
+     * Checks the alignment of a zip file, like <code>zipalign -c</code>. Only the central directory and the local
+     * headers are read.
+     *
+     * @param file      the zip file to check.
+     * @param alignment the alignment of stored entries.
+     * @return the names of the stored entries whose data is not aligned, empty if the file is aligned.
+     * @throws IOException if the zip file cannot be read.
+     */
+    public static List< String > getMisalignedEntries( File file, int alignment ) throws IOException
+    {
+        return getMisalignedEntries( file, alignment, false );
+    }
+
+    /**
+     * Checks the alignment of a zip file, like <code>zipalign -c</code>, or <code>zipalign -c -p</code> if native
+     * libraries are page aligned.
+     *
+     * @param file                     the zip file to check.
+     * @param alignment                the alignment of stored entries.
+     * @param pageAlignNativeLibraries whether stored native libraries must be aligned on {@link #PAGE_ALIGNMENT}.
+     * @return the names of the stored entries whose data is not aligned, empty if the file is aligned.
+     * @throws IOException if the zip file cannot be read.
+     */
+    public static List< String > getMisalignedEntries( File file, int alignment, boolean pageAlignNativeLibraries )
+            throws IOException
+    {
+        final List< String > misaligned = new ArrayList< String >();
+        final RawZipFile zip = new RawZipFile( file );
+        try
+        {
+            for ( RawZipEntry entry : zip.getEntries() )
+            {
+                final int entryAlignment = getAlignment( entry, alignment, pageAlignNativeLibraries );
+                if ( entry.getMethod() == RawZipEntry.STORED && zip.getDataOffset( entry ) % entryAlignment != 0 )
+                {
+                    misaligned.add( entry.getName() );
+                }
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+        return misaligned;
+    }
+
+    /**
+     * @param name an entry name.
+     * @return <code>true</code> for native libraries, i.e. <code>.so</code> files below <code>lib/</code>.
+     */
+    public static boolean isNativeLibrary( String name )
+    {
+        return name.startsWith( NATIVE_LIBRARIES_FOLDER ) && name.endsWith( ".so" );
+    }
+
+    private static int getAlignment( RawZipEntry entry, int alignment, boolean pageAlignNativeLibraries )
+    {
+        return pageAlignNativeLibraries && isNativeLibrary( entry.getName() ) ? PAGE_ALIGNMENT : alignment;
+    }
+
+    /**
+     * @param file      the zip file to check.
+     * @param alignment the alignment of stored entries.
+     * @return <code>true</code> if the data of all stored entries is aligned.
+     * @throws IOException if the zip file cannot be read.
+     */
+    public static boolean isAligned( File file, int alignment ) throws IOException
+    {
+        return getMisalignedEntries( file, alignment ).isEmpty();
+    }
+}
@@ -1,5 +1,7 @@
 package com.jayway.maven.plugins.android.configuration;
 
+import java.io.File;
+
 /**
  * Embedded configuration of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo}.
  *
@@ -23,4 +25,64 @@ public class Apk
      * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkNativeToolchain}.
      */
     private String nativeToolchain;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkUseSdkBuilder}.
+     */
+    private Boolean useSdkBuilder;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkCompressDex}.
+     */
+    private Boolean compressDex;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkCompressNativeLibraries}.
+     */
+    private Boolean compressNativeLibraries;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkCompressionThreads}.
+     */
+    private Integer compressionThreads;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkCompressionMemoryLimit}.
+     */
+    private Integer compressionMemoryLimit;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkStoredExtensions}.
+     */
+    private String[] storedExtensions;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkPreCrunch}.
+     */
+    private Boolean preCrunch;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkCrunchCache}.
+     */
+    private File crunchCache;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkCrunchCacheSize}.
+     */
+    private Integer crunchCacheSize;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkPageAlignNativeLibraries}.
+     */
+    private Boolean pageAlignNativeLibraries;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkPageAlignIncludes}.
+     */
+    private String[] pageAlignIncludes;
+
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase09package.ApkMojo#apkPageAlignExcludes}.
+     */
+    private String[] pageAlignExcludes;
 }
@@ -33,6 +33,30 @@ public class Dex
      * Mirror of {@link com.jayway.maven.plugins.android.phase08preparepackage.DexMojo#dexPreDexLibLocation}
      */
     private String preDexLibLocation;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase08preparepackage.DexMojo#dexPreDexCache}
+     */
+    private Boolean preDexCache;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase08preparepackage.DexMojo#dexPreDexCacheLocation}
+     */
+    private String preDexCacheLocation;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase08preparepackage.DexMojo#dexPreDexCacheSize}
+     */
+    private Integer preDexCacheSize;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase08preparepackage.DexMojo#dexInProcess}
+     */
+    private Boolean inProcess;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase08preparepackage.DexMojo#dexIncremental}
+     */
+    private Boolean incremental;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.phase08preparepackage.DexMojo#dexShards}
+     */
+    private Integer shards;
 
     public String[] getJvmArguments()
     {
@@ -63,4 +87,34 @@ public class Dex
     {
       return preDexLibLocation;
     }
+
+    public Boolean isPreDexCache()
+    {
+        return preDexCache;
+    }
+
+    public String getPreDexCacheLocation()
+    {
+        return preDexCacheLocation;
+    }
+
+    public Integer getPreDexCacheSize()
+    {
+        return preDexCacheSize;
+    }
+
+    public Boolean isInProcess()
+    {
+        return inProcess;
+    }
+
+    public Boolean isIncremental()
+    {
+        return incremental;
+    }
+
+    public Integer getShards()
+    {
+        return shards;
+    }
 }
@@ -29,17 +29,63 @@ public class Sign
      * <ul>
      * <li><code>true</code> = sign with the debug keystore.
      * <li><code>false</code> = don't sign with the debug keystore.
-     * <li><code>auto</code> (default) = sign with debug keystore, unless another keystore is defined. (Signing with
-     * other keystores is not yet implemented. See
-     * <a href="http://code.google.com/p/maven-android-plugin/issues/detail?id=2">Issue 2</a>.)
+     * <li><code>auto</code> (default) = sign with debug keystore, unless {@link #keystore} is defined.
      * </ul>
      *
      * @parameter expression="${android.sign.debug}" default-value="auto"
      */
     private String debug;
 
+    /**
+     * The release keystore to sign with, unless <code>debug</code> is <code>true</code>.
+     *
+     * @parameter expression="${android.sign.keystore}"
+     */
+    private String keystore;
+
+    /**
+     * The password of the release keystore.
+     *
+     * @parameter expression="${android.sign.storepass}"
+     */
+    private String storepass;
+
+    /**
+     * The alias of the release key in the keystore.
+     *
+     * @parameter expression="${android.sign.alias}"
+     */
+    private String alias;
+
+    /**
+     * The password of the release key, the keystore password if not set.
+     *
+     * @parameter expression="${android.sign.keypass}"
+     */
+    private String keypass;
+
     public String getDebug()
     {
         return debug;
     }
+
+    public String getKeystore()
+    {
+        return keystore;
+    }
+
+    public String getStorepass()
+    {
+        return storepass;
+    }
+
+    public String getAlias()
+    {
+        return alias;
+    }
+
+    public String getKeypass()
+    {
+        return keypass;
+    }
 }
\ No newline at end of file
@@ -24,6 +24,18 @@ public class Zipalign
      * Mirror of {@link com.jayway.maven.plugins.android.standalonemojos.ZipalignMojo#zipalignOutputApk}
      */
     private String outputApk;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.standalonemojos.ZipalignMojo#zipalignInProcess}
+     */
+    private Boolean inProcess;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.standalonemojos.ZipalignMojo#zipalignVerifyOnly}
+     */
+    private Boolean verifyOnly;
+    /**
+     * Mirror of {@link com.jayway.maven.plugins.android.standalonemojos.ZipalignMojo#zipalignPageAlignNativeLibraries}
+     */
+    private Boolean pageAlignNativeLibraries;
 
 
     public Boolean isSkip()
@@ -45,4 +57,19 @@ public class Zipalign
     {
         return outputApk;
     }
+
+    public Boolean isInProcess()
+    {
+        return inProcess;
+    }
+
+    public Boolean isVerifyOnly()
+    {
+        return verifyOnly;
+    }
+
+    public Boolean isPageAlignNativeLibraries()
+    {
+        return pageAlignNativeLibraries;
+    }
 }
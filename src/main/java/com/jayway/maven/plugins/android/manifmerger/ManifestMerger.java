@@ -1,6 +1,8 @@
 package com.jayway.maven.plugins.android.manifmerger;
 
 import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
@@ -15,10 +17,21 @@ import org.apache.maven.plugin.logging.Log;
  */
 public class ManifestMerger
 {
+    /**
+     * The Manifest Merger instances of this build, keyed by SDK path and major version. Creating one loads the
+     * merger classes, so all modules share it.
+     */
+    private static final Map<String, MergeStrategy> MERGERS = new HashMap<String, MergeStrategy>();
+
     /**
      * The Manifest Merger instance
      */
-    private static MergeStrategy merger;
+    private MergeStrategy merger;
+
+    /**
+     * The logger of the Mojo using this instance
+     */
+    private Log log;
 
     /**
      * Before being able to use the ManifestMerger, an initialization is
@@ -32,14 +45,18 @@ public class ManifestMerger
      */
     public void initialize( Log log, File sdkPath, int sdkMajorVersion ) throws MojoExecutionException
     {
-        if ( merger != null )
+        this.log = log;
+        final String key = sdkPath.getAbsolutePath() + "|" + sdkMajorVersion;
+        synchronized ( MERGERS )
         {
-            // Already initialized
-            return;
+            merger = MERGERS.get( key );
+            if ( merger == null )
+            {
+                merger = MergerInitializerFactory.getInitializer( log, sdkMajorVersion, sdkPath );
+                MERGERS.put( key, merger );
+            }
         }
 
-        merger = MergerInitializerFactory.getInitializer( log, sdkMajorVersion, sdkPath );
-
     }
 
     /**
@@ -62,6 +79,10 @@ public class ManifestMerger
      */
     public boolean process( File mergedFile, File apkManifest, File[] libraryManifests ) throws MojoExecutionException
     {
-        return merger.process( mergedFile, apkManifest, libraryManifests );
+        // the merger instance is shared by the modules of parallel builds
+        synchronized ( merger )
+        {
+            return merger.process( mergedFile, apkManifest, libraryManifests, log );
+        }
     }
 }
@@ -3,6 +3,7 @@ package com.jayway.maven.plugins.android.manifmerger;
 import java.io.File;
 
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
 
 /**
  * MergeStrategy interface
@@ -17,8 +18,10 @@ public interface MergeStrategy
      * @param mergedFile The final merged AndroidManifest file.
      * @param apkManifest The original AndroidManifest file of the APK.
      * @param libraryManifests Array of AndroidManifests for the APKLIBs
+     * @param log The logger of the Mojo merging, strategies are shared by the modules of a build
      * @return
      * @throws MojoExecutionException
      */
-    boolean process( File mergedFile, File apkManifest, File[] libraryManifests ) throws MojoExecutionException;
+    boolean process( File mergedFile, File apkManifest, File[] libraryManifests, Log log )
+            throws MojoExecutionException;
 }
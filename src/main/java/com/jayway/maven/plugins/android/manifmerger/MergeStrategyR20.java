@@ -4,10 +4,9 @@ import java.io.File;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.net.URLClassLoader;
 
+import com.jayway.maven.plugins.android.common.SdkClassLoaders;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 
@@ -18,11 +17,6 @@ import org.apache.maven.plugin.logging.Log;
  */
 public class MergeStrategyR20 implements MergeStrategy
 {
-    /**
-     * The Mojo logger
-     */
-    Log log;
-
     /**
      * The method that does the merging.
      */
@@ -45,18 +39,12 @@ public class MergeStrategyR20 implements MergeStrategy
         Class mergerLogClass = null;
         try
         {
-            mlLoader = new URLClassLoader( new URL[] { mergerLib.toURI().toURL() },
-                    ManifestMerger.class.getClassLoader() );
+            mlLoader = SdkClassLoaders.get( mergerLib, ManifestMerger.class.getClassLoader() );
             manifestMergerClass = mlLoader.loadClass( "com.android.manifmerger.ManifestMerger" );
             log.debug( "ManifestMerger loaded " + manifestMergerClass );
             mergerLogClass = mlLoader.loadClass( "com.android.manifmerger.MergerLog" );
             log.debug( "ManifestMerger loaded " + mergerLogClass );
         }
-        catch ( MalformedURLException e )
-        {
-            // This one cannot happen.
-            throw new RuntimeException( "Cannot create a correct URL from file " + mergerLib.getAbsolutePath() );
-        }
         catch ( ClassNotFoundException e )
         {
             log.error( "Cannot find required class", e );
@@ -67,15 +55,10 @@ public class MergeStrategyR20 implements MergeStrategy
         Class stdSdkLogClass = null;
         try
         {
-            URLClassLoader child = new URLClassLoader( new URL[] { sdkLibs.toURI().toURL() }, mlLoader );
+            URLClassLoader child = SdkClassLoaders.get( sdkLibs, mlLoader );
             stdSdkLogClass = child.loadClass( "com.android.sdklib.StdSdkLog" );
             log.debug( "StdSdkLog loaded " + stdSdkLogClass );
         }
-        catch ( MalformedURLException e )
-        {
-            // This one cannot happen.
-            throw new RuntimeException( "Cannot create a correct URL from file " + sdkLibs.getAbsolutePath() );
-        }
         catch ( ClassNotFoundException e )
         {
             log.error( "Cannot find required class", e );
@@ -116,10 +99,11 @@ public class MergeStrategyR20 implements MergeStrategy
     }
 
     /**
-     * @see {@link MergeStrategy#process(File, File, File[])}
+     * @see {@link MergeStrategy#process(File, File, File[], Log)}
      */
     @Override
-    public boolean process( File mergedFile, File apkManifest, File[] libraryManifests ) throws MojoExecutionException
+    public boolean process( File mergedFile, File apkManifest, File[] libraryManifests, Log log )
+            throws MojoExecutionException
     {
         try
         {
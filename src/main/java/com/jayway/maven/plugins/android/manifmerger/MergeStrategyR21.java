@@ -4,11 +4,10 @@ import java.io.File;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.Map;
 
+import com.jayway.maven.plugins.android.common.SdkClassLoaders;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 
@@ -19,11 +18,6 @@ import org.apache.maven.plugin.logging.Log;
  */
 public class MergeStrategyR21 implements MergeStrategy
 {
-    /**
-     * The Mojo logger
-     */
-    Log log;
-
     /**
      * The method that does the merging.
      */
@@ -46,18 +40,12 @@ public class MergeStrategyR21 implements MergeStrategy
         Class mergerLogClass = null;
         try
         {
-            mlLoader = new URLClassLoader( new URL[] { mergerLib.toURI().toURL() },
-                    ManifestMerger.class.getClassLoader() );
+            mlLoader = SdkClassLoaders.get( mergerLib, ManifestMerger.class.getClassLoader() );
             manifestMergerClass = mlLoader.loadClass( "com.android.manifmerger.ManifestMerger" );
             log.debug( "ManifestMerger loaded " + manifestMergerClass );
             mergerLogClass = mlLoader.loadClass( "com.android.manifmerger.MergerLog" );
             log.debug( "ManifestMerger loaded " + mergerLogClass );
         }
-        catch ( MalformedURLException e )
-        {
-            // This one cannot happen.
-            throw new RuntimeException( "Cannot create a correct URL from file " + mergerLib.getAbsolutePath() );
-        }
         catch ( ClassNotFoundException e )
         {
             log.error( "Cannot find required class", e );
@@ -69,17 +57,12 @@ public class MergeStrategyR21 implements MergeStrategy
         Class logLevel = null;
         try
         {
-            URLClassLoader child = new URLClassLoader( new URL[] { commonLib.toURI().toURL() }, mlLoader );
+            URLClassLoader child = SdkClassLoaders.get( commonLib, mlLoader );
             stdSdkLogClass = child.loadClass( "com.android.utils.StdLogger" );
             log.debug( "StdLogger loaded " + stdSdkLogClass );
             logLevel = child.loadClass( "com.android.utils.StdLogger$Level" );
             log.debug( "Level loaded " + logLevel );
         }
-        catch ( MalformedURLException e )
-        {
-            // This one cannot happen.
-            throw new RuntimeException( "Cannot create a correct URL from file " + commonLib.getAbsolutePath() );
-        }
         catch ( ClassNotFoundException e )
         {
             log.error( "Cannot find required class", e );
@@ -121,10 +104,11 @@ public class MergeStrategyR21 implements MergeStrategy
     }
 
     /**
-     * @see {@link MergeStrategy#process(File, File, File[])}
+     * @see {@link MergeStrategy#process(File, File, File[], Log)}
      */
     @Override
-    public boolean process( File mergedFile, File apkManifest, File[] libraryManifests ) throws MojoExecutionException
+    public boolean process( File mergedFile, File apkManifest, File[] libraryManifests, Log log )
+            throws MojoExecutionException
     {
         try
         {
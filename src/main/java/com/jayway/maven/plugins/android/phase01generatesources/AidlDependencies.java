@@ -0,0 +1,165 @@
+package com.jayway.maven.plugins.android.phase01generatesources;
+
+import com.jayway.maven.plugins.android.common.StateFileHelper;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Records the files every generated aidl class was compiled from: the <code>.aidl</code> file and the
+ * <code>.aidl</code> files it imports from the source folders. A class is up to date while none of them changed
+ * since it was compiled.
+ * <p/>
+ * Imports of the framework are covered by the options, which include the framework aidl file; all classes are
+ * compiled again when the options change.
+ */
+public final class AidlDependencies
+{
+    private static final Pattern IMPORT = Pattern.compile( "^\\s*import\\s+([\\w.]+)\\s*;" );
+    private static final String OPTIONS = "options";
+    private static final String SEPARATOR = File.pathSeparator;
+
+    private final File stateFile;
+    private final Properties state;
+
+    /**
+     * @param stateFile the file recording the dependencies of the last compilation.
+     * @param options   the options of the aidl tool, e.g. its import folders.
+     */
+    public AidlDependencies( File stateFile, String options )
+    {
+        this.stateFile = stateFile;
+        this.state = StateFileHelper.load( stateFile );
+        if ( ! options.equals( state.getProperty( OPTIONS ) ) )
+        {
+            state.clear();
+            state.setProperty( OPTIONS, options );
+        }
+    }
+
+    /**
+     * @param output the class generated from an aidl file, which aidl does not write for parcelable declarations.
+     * @return <code>true</code> if the class was compiled after the last change of the files it depends on.
+     */
+    public synchronized boolean isUpToDate( File output )
+    {
+        final String recorded = state.getProperty( output.getAbsolutePath() );
+        if ( recorded == null )
+        {
+            return false;
+        }
+        // <compile time><separator><whether the class was written>[<separator><dependency>]*
+        final String[] fields = recorded.split( SEPARATOR );
+        final long compiled = Long.parseLong( fields[ 0 ] );
+        if ( Boolean.parseBoolean( fields[ 1 ] ) && ! output.isFile() )
+        {
+            return false;
+        }
+        for ( int i = 2; i < fields.length; i++ )
+        {
+            final File dependency = new File( fields[ i ] );
+            if ( ! dependency.isFile() || dependency.lastModified() >= compiled )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records a compiled class.
+     *
+     * @param output       the generated class.
+     * @param compiled     the time the compilation started.
+     * @param dependencies the aidl file and the files it imports.
+     */
+    public synchronized void record( File output, long compiled, List< File > dependencies )
+    {
+        final StringBuilder recorded = new StringBuilder();
+        recorded.append( compiled ).append( SEPARATOR ).append( output.isFile() );
+        for ( File dependency : dependencies )
+        {
+            recorded.append( SEPARATOR ).append( dependency.getAbsolutePath() );
+        }
+        state.setProperty( output.getAbsolutePath(), recorded.toString() );
+    }
+
+    /**
+     * Forgets the classes of aidl files that do not exist anymore.
+     *
+     * @param outputs the classes of the current aidl files.
+     * @return the forgotten classes, which should be deleted.
+     */
+    public synchronized List< File > retain( Set< File > outputs )
+    {
+        final List< File > stale = new ArrayList< File >();
+        for ( String key : state.stringPropertyNames() )
+        {
+            if ( ! OPTIONS.equals( key ) && ! outputs.contains( new File( key ) ) )
+            {
+                stale.add( new File( key ) );
+                state.remove( key );
+            }
+        }
+        return stale;
+    }
+
+    /**
+     * @throws IOException if the state file cannot be written.
+     */
+    public synchronized void save() throws IOException
+    {
+        StateFileHelper.save( stateFile, state );
+    }
+
+    /**
+     * @param aidlFile          an aidl file.
+     * @param importDirectories the folders aidl looks up imports in.
+     * @return the aidl file and the aidl files it imports from the folders.
+     * @throws IOException if the aidl file cannot be read.
+     */
+    public static List< File > getDependencies( File aidlFile, Collection< File > importDirectories )
+            throws IOException
+    {
+        final List< File > dependencies = new ArrayList< File >();
+        dependencies.add( aidlFile );
+        final BufferedReader reader = new BufferedReader( new FileReader( aidlFile ) );
+        try
+        {
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                final Matcher matcher = IMPORT.matcher( line );
+                if ( ! matcher.find() )
+                {
+                    continue;
+                }
+                final String path = matcher.group( 1 ).replace( '.', File.separatorChar ) + ".aidl";
+                for ( File directory : importDirectories )
+                {
+                    final File imported = new File( directory, path );
+                    if ( imported.isFile() )
+                    {
+                        dependencies.add( imported );
+                        break;
+                    }
+                }
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly( reader );
+        }
+        return dependencies;
+    }
+}
@@ -20,6 +20,9 @@ import com.jayway.maven.plugins.android.AbstractAndroidMojo;
 import com.jayway.maven.plugins.android.CommandExecutor;
 import com.jayway.maven.plugins.android.ExecutionException;
 import com.jayway.maven.plugins.android.common.AetherHelper;
+import com.jayway.maven.plugins.android.common.DigestHelper;
+import com.jayway.maven.plugins.android.common.StateFileHelper;
+import com.jayway.maven.plugins.android.common.UnpackCache;
 import com.jayway.maven.plugins.android.manifmerger.ManifestMerger;
 
 import org.apache.commons.io.FileUtils;
@@ -27,23 +30,24 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.codehaus.plexus.archiver.ArchiverException;
-import org.codehaus.plexus.archiver.UnArchiver;
-import org.codehaus.plexus.archiver.zip.ZipUnArchiver;
-import org.codehaus.plexus.logging.Logger;
-import org.codehaus.plexus.logging.console.ConsoleLogger;
-import org.codehaus.plexus.util.AbstractScanner;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static com.jayway.maven.plugins.android.common.AndroidExtension.APK;
 import static com.jayway.maven.plugins.android.common.AndroidExtension.APKLIB;
@@ -159,6 +163,34 @@ public class GenerateSourcesMojo extends AbstractAndroidMojo
      * default-value="${project.build.directory}/generated-sources/aidl"
      */
     protected File genDirectoryAidl;
+
+    /**
+     * Folder of the unpacked apklib and apksources dependencies, shared by all modules and builds on a machine.
+     * Every archive is unpacked there once, and modules get hard linked copies of the unpacked files where the file
+     * system allows it.
+     *
+     * @parameter expression="${android.unpackCache}" default-value="${user.home}/.android/unpack-cache"
+     */
+    protected File unpackCache;
+
+    /**
+     * Maximum size of the unpack cache in megabytes. The least recently used archives are evicted beyond it.
+     *
+     * @parameter expression="${android.unpackCacheSize}" default-value="1024"
+     */
+    protected int unpackCacheSize;
+
+    /**
+     * Number of aidl files compiled in parallel, 0 for one per processor.
+     *
+     * @parameter expression="${android.aidlThreads}" default-value="0"
+     */
+    protected int aidlThreads;
+
+    /**
+     * The unpack cache of this execution, which knows whether anything was added to it and needs evicting.
+     */
+    private UnpackCache unpackCacheInstance;
     
     public void execute() throws MojoExecutionException, MojoFailureException
     {
@@ -174,6 +206,7 @@ public class GenerateSourcesMojo extends AbstractAndroidMojo
         {
             extractSourceDependencies();
             extractApkLibDependencies();
+            getUnpackCache().evict();
 
             final String[] relativeAidlFileNames1 = findRelativeAidlFileNames( sourceDirectory );
             final String[] relativeAidlFileNames2 = findRelativeAidlFileNames( extractedDependenciesJavaSources );
@@ -220,6 +253,7 @@ public class GenerateSourcesMojo extends AbstractAndroidMojo
 
     protected void extractSourceDependencies() throws MojoExecutionException
     {
+        final List<File> apksourcesFiles = new ArrayList<File>();
         for ( Artifact artifact : getRelevantDependencyArtifacts() )
         {
             String type = artifact.getType();
@@ -248,40 +282,47 @@ public class GenerateSourcesMojo extends AbstractAndroidMojo
                 {
                     apksourcesFile = resolveArtifactToFile( artifact );
                 }
-                getLog().debug( "Extracting " + apksourcesFile + "..." );
-                extractApksources( apksourcesFile );
+                if ( apksourcesFile.isDirectory() )
+                {
+                    getLog().warn( "The apksources artifact points to '" + apksourcesFile
+                            + "' which is a directory; skipping unpacking it." );
+                }
+                else
+                {
+                    apksourcesFiles.add( apksourcesFile );
+                }
             }
         }
+        if ( ! apksourcesFiles.isEmpty() )
+        {
+            getLog().debug( "Extracting " + apksourcesFiles + "..." );
+            unpack( apksourcesFiles, extractedDependenciesDirectory );
+        }
         projectHelper.addResource( project, extractedDependenciesJavaResources.getAbsolutePath(), null, null );
         project.addCompileSourceRoot( extractedDependenciesJavaSources.getAbsolutePath() );
     }
 
-    private void extractApksources( File apksourcesFile ) throws MojoExecutionException
+    private UnpackCache getUnpackCache()
     {
-        if ( apksourcesFile.isDirectory() )
+        if ( unpackCacheInstance == null )
         {
-            getLog().warn( "The apksources artifact points to '" + apksourcesFile
-                    + "' which is a directory; skipping unpacking it." );
-            return;
+            unpackCacheInstance = new UnpackCache( unpackCache, unpackCacheSize * 1024L * 1024L, getLog() );
         }
-        final UnArchiver unArchiver = new ZipUnArchiver( apksourcesFile )
-        {
-            @Override
-            protected Logger getLogger()
-            {
-                return new ConsoleLogger( Logger.LEVEL_DEBUG, "dependencies-unarchiver" );
-            }
-        };
-        extractedDependenciesDirectory.mkdirs();
-        unArchiver.setDestDirectory( extractedDependenciesDirectory );
+        return unpackCacheInstance;
+    }
+
+    /**
+     * Unpacks archives through the unpack cache, later archives taking precedence.
+     */
+    private void unpack( List<File> archives, File target ) throws MojoExecutionException
+    {
         try
         {
-            unArchiver.extract();
+            getUnpackCache().unpack( archives, target );
         }
-        catch ( ArchiverException e )
+        catch ( IOException e )
         {
-            throw new MojoExecutionException( "ArchiverException while extracting " + apksourcesFile.getAbsolutePath()
-                    + ". Message: " + e.getLocalizedMessage(), e );
+            throw new MojoExecutionException( "Could not extract " + archives + " to " + target, e );
         }
     }
 
@@ -328,26 +369,8 @@ public class GenerateSourcesMojo extends AbstractAndroidMojo
             return;
         }
 
-        final UnArchiver unArchiver = new ZipUnArchiver( apkLibFile )
-        {
-            @Override
-            protected Logger getLogger()
-            {
-                return new ConsoleLogger( Logger.LEVEL_DEBUG, "dependencies-unarchiver" );
-            }
-        };
         File apklibDirectory = new File( getLibraryUnpackDirectory( apklibArtifact ) );
-        apklibDirectory.mkdirs();
-        unArchiver.setDestDirectory( apklibDirectory );
-        try
-        {
-            unArchiver.extract();
-        }
-        catch ( ArchiverException e )
-        {
-            throw new MojoExecutionException( "ArchiverException while extracting " + apklibDirectory.getAbsolutePath()
-                    + ". Message: " + e.getLocalizedMessage(), e );
-        }
+        unpack( Collections.singletonList( apkLibFile ), apklibDirectory );
 
         projectHelper.addResource( project, apklibDirectory.getAbsolutePath() + "/src", null,
                 Arrays.asList( "**/*.java", "**/*.aidl" ) );
@@ -364,72 +387,19 @@ public class GenerateSourcesMojo extends AbstractAndroidMojo
 
         File[] overlayDirectories = getResourceOverlayDirectories();
 
-        if ( extractedDependenciesRes.exists() )
-        {
-            try
-            {
-                getLog().info( "Copying dependency resource files to combined resource directory." );
-                if ( ! combinedRes.exists() )
-                {
-                    if ( ! combinedRes.mkdirs() )
-                    {
-                        throw new MojoExecutionException(
-                                "Could not create directory for combined resources at " + combinedRes
-                                        .getAbsolutePath() );
-                    }
-                }
-                org.apache.commons.io.FileUtils.copyDirectory( extractedDependenciesRes, combinedRes );
-            }
-            catch ( IOException e )
-            {
-                throw new MojoExecutionException( "", e );
-            }
-        }
-        if ( resourceDirectory.exists() && combinedRes.exists() )
-        {
-            try
-            {
-                getLog().info( "Copying local resource files to combined resource directory." );
-
-                org.apache.commons.io.FileUtils.copyDirectory( resourceDirectory, combinedRes, new FileFilter()
-                {
-
-                    /**
-                     * Excludes files matching one of the common file to exclude.
-                     * The default excludes pattern are the ones from
-                     * {org.codehaus.plexus.util.AbstractScanner#DEFAULTEXCLUDES}
-                     * @see java.io.FileFilter#accept(java.io.File)
-                     */
-                    public boolean accept( File file )
-                    {
-                        for ( String pattern : AbstractScanner.DEFAULTEXCLUDES )
-                        {
-                            if ( AbstractScanner.match( pattern, file.getAbsolutePath() ) )
-                            {
-                                getLog().debug(
-                                        "Excluding " + file.getName() + " from resource copy : matching " + pattern );
-                                return false;
-                            }
-                        }
-                        return true;
-                    }
-                } );
-            }
-            catch ( IOException e )
-            {
-                throw new MojoExecutionException( "", e );
-            }
-        }
-
+        mergeResources();
 
         CommandExecutor executor = CommandExecutor.Factory.createDefaultCommmandExecutor();
         executor.setLogger( this.getLog() );
 
+        // aapt writes into a folder of its own, so that unchanged R classes keep their time stamps
+        final File aaptDirectory = new File( project.getBuild().getDirectory(), "generated-r" );
+
         List<String> commands = new ArrayList<String>();
         commands.add( "package" );
         commands.add( "-m" );
         commands.add( "-J" );
-        commands.add( genDirectory.getAbsolutePath() );
+        commands.add( aaptDirectory.getAbsolutePath() );
         commands.add( "-M" );
         commands.add( androidManifestFile.getAbsolutePath() );
         if ( StringUtils.isNotBlank( customPackage ) )
@@ -468,19 +438,103 @@ public class GenerateSourcesMojo extends AbstractAndroidMojo
             commands.add( "-G" );
             commands.add( proguardFile.getAbsolutePath() );
         }
-        getLog().info( getAndroidSdk().getPathForTool( "aapt" ) + " " + commands.toString() );
+
+        final String aapt = getAndroidSdk().getPathForTool( "aapt" );
+        final File fingerprintFile = new File( project.getBuild().getDirectory(), "generated-r.fingerprint" );
+        final String fingerprint = getRFingerprint( aapt, commands );
+        if ( isRUpToDate( fingerprintFile, fingerprint, aaptDirectory ) )
+        {
+            getLog().info( "R file is up to date." );
+            project.addCompileSourceRoot( genDirectory.getAbsolutePath() );
+            return;
+        }
+
+        getLog().info( aapt + " " + commands.toString() );
         try
         {
-            executor.executeCommand( getAndroidSdk().getPathForTool( "aapt" ), commands, project.getBasedir(), false );
+            fingerprintFile.delete();
+            FileUtils.deleteDirectory( aaptDirectory );
+            aaptDirectory.mkdirs();
+            executor.executeCommand( aapt, commands, project.getBasedir(), false );
+            copyChangedFiles( aaptDirectory, genDirectory );
+            FileUtils.writeStringToFile( fingerprintFile, fingerprint );
         }
         catch ( ExecutionException e )
         {
             throw new MojoExecutionException( "", e );
         }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not write the R file into " + genDirectory, e );
+        }
 
         project.addCompileSourceRoot( genDirectory.getAbsolutePath() );
     }
 
+    /**
+     * @return the fingerprint of the aapt arguments and of the files and folders they name.
+     */
+    private String getRFingerprint( String aapt, List<String> commands )
+    {
+        final List<File> inputs = new ArrayList<File>();
+        inputs.add( new File( aapt ) );
+        for ( int i = 0; i < commands.size() - 1; i++ )
+        {
+            final String option = commands.get( i );
+            if ( "-M".equals( option ) || "-S".equals( option ) || "-A".equals( option ) || "-I".equals( option ) )
+            {
+                inputs.add( new File( commands.get( i + 1 ) ) );
+            }
+        }
+        return DigestHelper.fingerprint( inputs, commands.toString() );
+    }
+
+    /**
+     * @return <code>true</code> if aapt ran with the same inputs before and its outputs are still in place.
+     */
+    private boolean isRUpToDate( File fingerprintFile, String fingerprint, File aaptDirectory )
+            throws MojoExecutionException
+    {
+        try
+        {
+            if ( !fingerprintFile.isFile() || !fingerprint.equals( FileUtils.readFileToString( fingerprintFile ) )
+                    || ( proguardFile != null && !proguardFile.isFile() ) )
+            {
+                return false;
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not read " + fingerprintFile, e );
+        }
+        for ( String path : findFilesInDirectory( aaptDirectory, "**/*.java" ) )
+        {
+            final File generated = new File( genDirectory, path );
+            if ( !generated.isFile() || generated.length() != new File( aaptDirectory, path ).length() )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the files that are missing or have another content in the target folder, leaving the others untouched.
+     */
+    private void copyChangedFiles( File sourceDirectory, File targetDirectory ) throws IOException
+    {
+        for ( String path : findFilesInDirectory( sourceDirectory, "**/*" ) )
+        {
+            final File source = new File( sourceDirectory, path );
+            final File target = new File( targetDirectory, path );
+            if ( !target.isFile() || !FileUtils.contentEquals( source, target ) )
+            {
+                getLog().debug( "Updating " + target );
+                FileUtils.copyFile( source, target );
+            }
+        }
+    }
+
     private void addResourcesDirectories( List<String> commands, File[] overlayDirectories )
     {
         for ( File resOverlayDir : overlayDirectories )
@@ -549,6 +603,24 @@ public class GenerateSourcesMojo extends AbstractAndroidMojo
         {
             File mergedManifest = new File( androidManifestFile.getParent(), "AndroidManifest-merged.xml" );
 
+            final File stateFile = new File( project.getBuild().getDirectory(), "merged-manifest.state" );
+            final File lastMergedManifest = new File( project.getBuild().getDirectory(),
+                    "AndroidManifest-merged.xml" );
+            final Properties state = StateFileHelper.load( stateFile );
+            final String inputKey = getManifestMergeKey( androidManifestFile, libManifests );
+            if ( inputKey.equals( state.getProperty( "merged" ) ) )
+            {
+                getLog().info( "Manifest is already merged with the manifests of the apklibs." );
+                return;
+            }
+            if ( inputKey.equals( state.getProperty( "input" ) ) && lastMergedManifest.isFile() )
+            {
+                getLog().info( "Manifests are unchanged, using the last merged manifest." );
+                copyFile( lastMergedManifest, androidManifestFile );
+                return;
+            }
+            StateFileHelper.invalidate( stateFile );
+
             ManifestMerger mm = new ManifestMerger( getLog(), getAndroidSdk().getSdkPath(), getAndroidSdk()
                     .getSdkMajorVersion() );
 
@@ -561,6 +633,19 @@ public class GenerateSourcesMojo extends AbstractAndroidMojo
                 androidManifestFile.delete();
                 mergedManifest.renameTo( androidManifestFile );
                 getLog().info( "Done Merging Manifests of APKLIBs" );
+
+                // the merged manifest is the input of the next build, unless something restores the original one
+                copyFile( androidManifestFile, lastMergedManifest );
+                state.setProperty( "input", inputKey );
+                state.setProperty( "merged", getManifestMergeKey( androidManifestFile, libManifests ) );
+                try
+                {
+                    StateFileHelper.save( stateFile, state );
+                }
+                catch ( IOException e )
+                {
+                    getLog().warn( "Could not save " + stateFile + ": " + e.getMessage() );
+                }
             }
             else
             {
@@ -574,23 +659,206 @@ public class GenerateSourcesMojo extends AbstractAndroidMojo
         }
     }
 
+    /**
+     * @return the key of the content of the manifests to merge and of the SDK merging them.
+     */
+    private String getManifestMergeKey( File manifest, List<File> libraryManifests ) throws MojoExecutionException
+    {
+        final List<String> values = new ArrayList<String>();
+        values.add( getAndroidSdk().getSdkPath().getAbsolutePath() );
+        values.add( String.valueOf( getAndroidSdk().getSdkMajorVersion() ) );
+        try
+        {
+            values.add( DigestHelper.sha256( manifest ) );
+            for ( File libraryManifest : libraryManifests )
+            {
+                values.add( DigestHelper.sha256( libraryManifest ) );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not read the manifests to merge", e );
+        }
+        return DigestHelper.sha256( values.toArray( new String[ values.size() ] ) );
+    }
+
+    private void copyFile( File source, File target ) throws MojoExecutionException
+    {
+        try
+        {
+            FileUtils.copyFile( source, target );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not copy " + source + " to " + target, e );
+        }
+    }
+
     private void generateApklibR() throws MojoExecutionException
     {
         getLog().debug( "Generating R file for projects dependent on apklibs" );
 
         genDirectory.mkdirs();
 
+        final List<Artifact> apklibs = new ArrayList<Artifact>();
         for ( Artifact artifact : getAllRelevantDependencyArtifacts() )
         {
             if ( artifact.getType().equals( APKLIB ) )
             {
-                generateRForApkLibDependency( artifact );
+                apklibs.add( artifact );
+            }
+        }
+
+        if ( !apklibs.isEmpty() )
+        {
+            try
+            {
+                generateRForApkLibDependencies( apklibs );
+            }
+            catch ( ExecutionException e )
+            {
+                getLog().warn( "Could not write the resource symbols, running aapt for every apklib: "
+                        + e.getMessage() );
+                for ( Artifact artifact : apklibs )
+                {
+                    generateRForApkLibDependency( artifact );
+                }
             }
         }
 
         project.addCompileSourceRoot( genDirectory.getAbsolutePath() );
     }
 
+    /**
+     * Compiles the resources once into a symbol table and writes the R class of every apklib from it, with the
+     * symbols the apklib and the apklibs it depends on declare.
+     *
+     * @throws ExecutionException if aapt cannot write the symbol table, e.g. because it is too old.
+     */
+    private void generateRForApkLibDependencies( List<Artifact> apklibs )
+            throws ExecutionException, MojoExecutionException
+    {
+        final File symbolsDirectory = new File( project.getBuild().getDirectory(), "apklib-symbols" );
+        final File symbolFile = new File( symbolsDirectory, "R.txt" );
+        final List<String> commands = getApklibRCommands( null, symbolsDirectory );
+        commands.add( "--output-text-symbols" );
+        commands.add( symbolsDirectory.getAbsolutePath() );
+        final String aapt = getAndroidSdk().getPathForTool( "aapt" );
+        final File fingerprintFile = new File( project.getBuild().getDirectory(), "apklib-symbols.fingerprint" );
+        final String fingerprint = getRFingerprint( aapt, commands );
+        try
+        {
+            if ( symbolFile.isFile() && fingerprintFile.isFile()
+                    && fingerprint.equals( FileUtils.readFileToString( fingerprintFile ) ) )
+            {
+                getLog().info( "Resource symbols are up to date." );
+            }
+            else
+            {
+                fingerprintFile.delete();
+                FileUtils.deleteDirectory( symbolsDirectory );
+                symbolsDirectory.mkdirs();
+
+                CommandExecutor executor = CommandExecutor.Factory.createDefaultCommmandExecutor();
+                executor.setLogger( this.getLog() );
+                getLog().info( aapt + " " + commands.toString() );
+                executor.executeCommand( aapt, commands, project.getBasedir(), false );
+
+                if ( !symbolFile.isFile() )
+                {
+                    throw new ExecutionException( "aapt did not write " + symbolFile );
+                }
+                FileUtils.writeStringToFile( fingerprintFile, fingerprint );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not update the resource symbols in " + symbolsDirectory, e );
+        }
+        final String projectPackage = StringUtils.isNotBlank( customPackage ) ? customPackage
+                : extractPackageNameFromAndroidManifest( androidManifestFile );
+        try
+        {
+            final SymbolTable symbols = SymbolTable.load( symbolFile );
+            final Map<Artifact, Set<String>> declaredSymbols = new HashMap<Artifact, Set<String>>();
+            final Map<Artifact, String> packageNames = new HashMap<Artifact, String>();
+            for ( Artifact artifact : apklibs )
+            {
+                declaredSymbols.put( artifact, getDeclaredSymbols( artifact ) );
+                packageNames.put( artifact, extractPackageNameFromAndroidManifest(
+                        new File( getLibraryUnpackDirectory( artifact ), "AndroidManifest.xml" ) ) );
+            }
+            final Map<String, Set<String>> includedSymbols = getIncludedSymbolsByPackage( apklibs, packageNames,
+                    declaredSymbols, projectPackage );
+            for ( Map.Entry<String, Set<String>> entry : includedSymbols.entrySet() )
+            {
+                getLog().debug( "Writing R file for apklib package: " + entry.getKey() );
+                symbols.writeRClass( entry.getKey(), entry.getValue(), genDirectory );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not write the R files of the apklibs", e );
+        }
+    }
+
+    /**
+     * Collects the symbols of the R class of every apklib package: the symbols declared by the apklibs of the package
+     * and by the apklibs they depend on. Apklibs sharing a package get a single R class with the symbols of all of
+     * them, instead of overwriting each other's. The package of the project is left out, its R class already has
+     * every symbol.
+     *
+     * @param apklibs         the apklib dependencies.
+     * @param packageNames    the package of every apklib.
+     * @param declaredSymbols the <code>type/name</code> of the symbols every apklib declares.
+     * @param projectPackage  the package of the project.
+     * @return the symbols to write by package, in a stable order.
+     */
+    static Map<String, Set<String>> getIncludedSymbolsByPackage( List<Artifact> apklibs,
+            Map<Artifact, String> packageNames, Map<Artifact, Set<String>> declaredSymbols, String projectPackage )
+    {
+        final Map<String, Set<String>> includedSymbols = new TreeMap<String, Set<String>>();
+        for ( Artifact artifact : apklibs )
+        {
+            final String packageName = packageNames.get( artifact );
+            if ( packageName.equals( projectPackage ) )
+            {
+                continue;
+            }
+            Set<String> included = includedSymbols.get( packageName );
+            if ( included == null )
+            {
+                included = new HashSet<String>();
+                includedSymbols.put( packageName, included );
+            }
+            included.addAll( declaredSymbols.get( artifact ) );
+            for ( Artifact dependency : apklibs )
+            {
+                final List<String> trail = dependency.getDependencyTrail();
+                if ( trail != null && trail.contains( artifact.getId() ) )
+                {
+                    included.addAll( declaredSymbols.get( dependency ) );
+                }
+            }
+        }
+        return includedSymbols;
+    }
+
+    /**
+     * @return the symbols declared by the resources of an apklib and by the symbol file it may contain.
+     */
+    private Set<String> getDeclaredSymbols( Artifact apklibArtifact ) throws IOException
+    {
+        final String unpackDir = getLibraryUnpackDirectory( apklibArtifact );
+        final Set<String> declared = SymbolTable.getDeclaredSymbols( new File( unpackDir, "res" ) );
+        final File symbolFile = new File( unpackDir, "R.txt" );
+        if ( symbolFile.isFile() )
+        {
+            declared.addAll( SymbolTable.getSymbols( symbolFile ) );
+        }
+        return declared;
+    }
+
     private void generateRForApkLibDependency( Artifact apklibArtifact ) throws MojoExecutionException
     {
         final String unpackDir = getLibraryUnpackDirectory( apklibArtifact );
@@ -599,14 +867,39 @@ public class GenerateSourcesMojo extends AbstractAndroidMojo
         CommandExecutor executor = CommandExecutor.Factory.createDefaultCommmandExecutor();
         executor.setLogger( this.getLog() );
 
+        List<String> commands = getApklibRCommands(
+                extractPackageNameFromAndroidManifest( new File( unpackDir + "/" + "AndroidManifest.xml" ) ),
+                genDirectory );
+        getLog().info( getAndroidSdk().getPathForTool( "aapt" ) + " " + commands.toString() );
+        try
+        {
+            executor.executeCommand( getAndroidSdk().getPathForTool( "aapt" ), commands, project.getBasedir(), false );
+        }
+        catch ( ExecutionException e )
+        {
+            throw new MojoExecutionException( "", e );
+        }
+    }
+
+    /**
+     * @param packageName     the package of the R class, <code>null</code> for the package of the manifest.
+     * @param outputDirectory the folder to write the R class into.
+     * @return the aapt arguments compiling the resources of the project and all apklibs.
+     */
+    private List<String> getApklibRCommands( String packageName, File outputDirectory )
+            throws MojoExecutionException
+    {
         List<String> commands = new ArrayList<String>();
         commands.add( "package" );
         commands.add( "--non-constant-id" );
         commands.add( "-m" );
         commands.add( "-J" );
-        commands.add( genDirectory.getAbsolutePath() );
-        commands.add( "--custom-package" );
-        commands.add( extractPackageNameFromAndroidManifest( new File( unpackDir + "/" + "AndroidManifest.xml" ) ) );
+        commands.add( outputDirectory.getAbsolutePath() );
+        if ( packageName != null )
+        {
+            commands.add( "--custom-package" );
+            commands.add( packageName );
+        }
         commands.add( "-M" );
         commands.add( androidManifestFile.getAbsolutePath() );
         if ( resourceDirectory.exists() )
@@ -651,15 +944,7 @@ public class GenerateSourcesMojo extends AbstractAndroidMojo
             commands.add( "-c" );
             commands.add( configurations );
         }
-        getLog().info( getAndroidSdk().getPathForTool( "aapt" ) + " " + commands.toString() );
-        try
-        {
-            executor.executeCommand( getAndroidSdk().getPathForTool( "aapt" ), commands, project.getBasedir(), false );
-        }
-        catch ( ExecutionException e )
-        {
-            throw new MojoExecutionException( "", e );
-        }
+        return commands;
     }
 
     private void generateBuildConfig() throws MojoExecutionException
@@ -720,42 +1005,103 @@ public class GenerateSourcesMojo extends AbstractAndroidMojo
             throws MojoExecutionException
     {
         List<String> protoCommands = new ArrayList<String>();
-        protoCommands.add( "-p" + getAndroidSdk().getPathForFrameworkAidl() );
+        final File frameworkAidl = new File( getAndroidSdk().getPathForFrameworkAidl() );
+        protoCommands.add( "-p" + frameworkAidl );
 
         genDirectoryAidl.mkdirs();
         project.addCompileSourceRoot( genDirectoryAidl.getPath() );
-        Set<File> sourceDirs = files.keySet();
+        final Set<File> sourceDirs = files.keySet();
         for ( File sourceDir : sourceDirs )
         {
             protoCommands.add( "-I" + sourceDir );
         }
-        for ( File sourceDir : sourceDirs )
+
+        final String aidl = getAndroidSdk().getPathForTool( "aidl" );
+        final File aidlFile = new File( aidl );
+        final AidlDependencies dependencies = new AidlDependencies(
+                new File( project.getBuild().getDirectory(), "aidl-dependencies" ),
+                protoCommands + "|" + aidlFile.length() + "|" + aidlFile.lastModified() + "|"
+                + frameworkAidl.lastModified() );
+
+        final Map<File, Future<Void>> futures = new LinkedHashMap<File, Future<Void>>();
+        final Set<File> outputs = new HashSet<File>();
+        final ExecutorService pool = Executors.newFixedThreadPool(
+                aidlThreads > 0 ? aidlThreads : Runtime.getRuntime().availableProcessors() );
+        try
         {
-            for ( String relativeAidlFileName : files.get( sourceDir ) )
+            for ( File sourceDir : sourceDirs )
             {
-                File targetDirectory = new File( genDirectoryAidl, new File( relativeAidlFileName ).getParent() );
-                targetDirectory.mkdirs();
+                for ( String relativeAidlFileName : files.get( sourceDir ) )
+                {
+                    final File targetDirectory = new File( genDirectoryAidl,
+                            new File( relativeAidlFileName ).getParent() );
+
+                    final String shortAidlFileName = new File( relativeAidlFileName ).getName();
+                    final String shortJavaFileName = shortAidlFileName.substring( 0,
+                            shortAidlFileName.lastIndexOf( "." ) ) + ".java";
+                    final File aidlFileInSourceDirectory = new File( sourceDir, relativeAidlFileName );
+                    final File javaFile = new File( targetDirectory, shortJavaFileName );
+                    outputs.add( javaFile.getAbsoluteFile() );
+                    if ( dependencies.isUpToDate( javaFile ) )
+                    {
+                        getLog().debug( "Up to date: " + javaFile );
+                        continue;
+                    }
 
-                final String shortAidlFileName = new File( relativeAidlFileName ).getName();
-                final String shortJavaFileName = shortAidlFileName.substring( 0, shortAidlFileName.lastIndexOf( "." ) )
-                                                 + ".java";
-                final File aidlFileInSourceDirectory = new File( sourceDir, relativeAidlFileName );
+                    final List<String> commands = new ArrayList<String>( protoCommands );
+                    commands.add( aidlFileInSourceDirectory.getAbsolutePath() );
+                    commands.add( javaFile.getAbsolutePath() );
+                    futures.put( aidlFileInSourceDirectory, pool.submit( new Callable<Void>()
+                    {
+                        @Override
+                        public Void call() throws ExecutionException, IOException
+                        {
+                            final long compiled = System.currentTimeMillis();
+                            targetDirectory.mkdirs();
+                            CommandExecutor executor = CommandExecutor.Factory.createDefaultCommmandExecutor();
+                            executor.setLogger( getLog() );
+                            executor.executeCommand( aidl, commands, project.getBasedir(), false );
+                            dependencies.record( javaFile, compiled,
+                                    AidlDependencies.getDependencies( aidlFileInSourceDirectory, sourceDirs ) );
+                            return null;
+                        }
+                    } ) );
+                }
+            }
 
-                List<String> commands = new ArrayList<String>( protoCommands );
-                commands.add( aidlFileInSourceDirectory.getAbsolutePath() );
-                commands.add( new File( targetDirectory, shortJavaFileName ).getAbsolutePath() );
+            getLog().debug( "Compiling " + futures.size() + " of " + outputs.size() + " aidl files" );
+            for ( Map.Entry<File, Future<Void>> entry : futures.entrySet() )
+            {
                 try
                 {
-                    CommandExecutor executor = CommandExecutor.Factory.createDefaultCommmandExecutor();
-                    executor.setLogger( this.getLog() );
-
-                    executor.executeCommand( getAndroidSdk().getPathForTool( "aidl" ), commands, project.getBasedir(),
-                            false );
+                    entry.getValue().get();
                 }
-                catch ( ExecutionException e )
+                catch ( java.util.concurrent.ExecutionException e )
                 {
-                    throw new MojoExecutionException( "", e );
+                    throw new MojoExecutionException( "Could not compile " + entry.getKey(), e.getCause() );
                 }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException( "Interrupted while compiling aidl files", e );
+                }
+            }
+        }
+        finally
+        {
+            pool.shutdownNow();
+            // the classes compiled before a failure stay up to date
+            for ( File staleFile : dependencies.retain( outputs ) )
+            {
+                staleFile.delete();
+            }
+            try
+            {
+                dependencies.save();
+            }
+            catch ( IOException e )
+            {
+                getLog().warn( "Could not save the aidl dependencies: " + e.getMessage() );
             }
         }
     }
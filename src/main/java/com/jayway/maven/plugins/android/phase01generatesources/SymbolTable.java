@@ -0,0 +1,317 @@
+package com.jayway.maven.plugins.android.phase01generatesources;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The resource symbols written by <code>aapt package --output-text-symbols</code> to <code>R.txt</code>, used to
+ * write the <code>R</code> classes of apklibs without running aapt again for every library.
+ * <p/>
+ * Symbols are identified by <code>type/name</code>, e.g. <code>string/app_name</code>. The symbols a library
+ * declares are found by scanning its resource folder like aapt does: file names for file based resources, the
+ * elements of the <code>values</code> folders and the <code>@+id/</code> references of XML files.
+ */
+public final class SymbolTable
+{
+    private static final String VALUES = "values";
+    private static final String RAW = "raw";
+    private static final String NEW_ID = "@+id/";
+    private static final String NAME = "name";
+    private static final String STYLEABLE = "styleable";
+    private static final int FIELDS = 4;
+
+    /**
+     * The value and the java type of every symbol, sorted by resource type and name.
+     */
+    private final Map< String, Map< String, String[] > > symbols = new TreeMap< String, Map< String, String[] > >();
+
+    private SymbolTable()
+    {
+    }
+
+    /**
+     * @param symbolFile an <code>R.txt</code> file.
+     * @return the symbols of the file.
+     * @throws IOException if the file cannot be read or has an unexpected line.
+     */
+    public static SymbolTable load( File symbolFile ) throws IOException
+    {
+        final SymbolTable table = new SymbolTable();
+        final BufferedReader reader = new BufferedReader( new FileReader( symbolFile ) );
+        try
+        {
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                if ( line.trim().length() == 0 )
+                {
+                    continue;
+                }
+                // <java type> <resource type> <name> <value>, where the value of an int[] contains spaces
+                final String[] fields = line.split( " ", FIELDS );
+                if ( fields.length != FIELDS )
+                {
+                    throw new IOException( "Unexpected line in " + symbolFile + ": " + line );
+                }
+                Map< String, String[] > type = table.symbols.get( fields[ 1 ] );
+                if ( type == null )
+                {
+                    type = new TreeMap< String, String[] >();
+                    table.symbols.put( fields[ 1 ], type );
+                }
+                type.put( fields[ 2 ], new String[] { fields[ 0 ], fields[ 3 ] } );
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly( reader );
+        }
+        return table;
+    }
+
+    /**
+     * @param symbolFile an <code>R.txt</code> file, like the one some libraries ship.
+     * @return the <code>type/name</code> of every symbol of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public static Set< String > getSymbols( File symbolFile ) throws IOException
+    {
+        final Set< String > names = new HashSet< String >();
+        final SymbolTable table = load( symbolFile );
+        for ( Map.Entry< String, Map< String, String[] > > type : table.symbols.entrySet() )
+        {
+            for ( String name : type.getValue().keySet() )
+            {
+                names.add( type.getKey() + "/" + name );
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @param resourceDirectory a <code>res</code> folder.
+     * @return the <code>type/name</code> of every symbol declared by the resources of the folder.
+     * @throws IOException if a resource cannot be read or parsed.
+     */
+    public static Set< String > getDeclaredSymbols( File resourceDirectory ) throws IOException
+    {
+        final Set< String > names = new HashSet< String >();
+        final File[] folders = resourceDirectory.listFiles();
+        if ( folders == null )
+        {
+            return names;
+        }
+        for ( File folder : folders )
+        {
+            final File[] files = folder.listFiles();
+            if ( files == null )
+            {
+                continue;
+            }
+            final String type = folder.getName().split( "-" )[ 0 ];
+            for ( File file : files )
+            {
+                if ( file.isDirectory() || file.isHidden() )
+                {
+                    continue;
+                }
+                if ( VALUES.equals( type ) )
+                {
+                    scan( file, names, true );
+                    continue;
+                }
+                // like aapt, the name ends at the first dot, e.g. for nine-patches
+                final String name = file.getName().split( "\\." )[ 0 ];
+                names.add( type + "/" + toJavaName( name ) );
+                if ( ! RAW.equals( type ) && file.getName().endsWith( ".xml" ) )
+                {
+                    scan( file, names, false );
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Writes an <code>R</code> class with the values of this table and non final fields, like
+     * <code>aapt --non-constant-id</code> does. An existing class with the same content is left untouched.
+     *
+     * @param packageName the package of the class.
+     * @param included    the <code>type/name</code> of the symbols to write, <code>null</code> to write all.
+     * @param directory   the source folder to write the class into.
+     * @return the written file.
+     * @throws IOException if the class cannot be written.
+     */
+    public File writeRClass( String packageName, Set< String > included, File directory ) throws IOException
+    {
+        final StringBuilder source = new StringBuilder();
+        source.append( "/* AUTO-GENERATED FILE.  DO NOT MODIFY.\n" )
+              .append( " *\n" )
+              .append( " * This class was automatically generated by the\n" )
+              .append( " * android-maven-plugin from the resource data aapt found.\n" )
+              .append( " * It should not be modified by hand.\n" )
+              .append( " */\n\n" )
+              .append( "package " ).append( packageName ).append( ";\n\n" )
+              .append( "public final class R {\n" );
+        for ( Map.Entry< String, Map< String, String[] > > type : symbols.entrySet() )
+        {
+            final StringBuilder fields = new StringBuilder();
+            for ( Map.Entry< String, String[] > symbol : type.getValue().entrySet() )
+            {
+                if ( included != null && ! included.contains( type.getKey() + "/" + symbol.getKey() ) )
+                {
+                    continue;
+                }
+                final String javaType = symbol.getValue()[ 0 ];
+                fields.append( "        public static " )
+                      .append( javaType.endsWith( "[]" ) ? "final " : "" )
+                      .append( javaType ).append( ' ' ).append( symbol.getKey() )
+                      .append( " = " ).append( symbol.getValue()[ 1 ] ).append( ";\n" );
+            }
+            if ( fields.length() > 0 )
+            {
+                source.append( "    public static final class " ).append( type.getKey() ).append( " {\n" )
+                      .append( fields )
+                      .append( "    }\n" );
+            }
+        }
+        source.append( "}\n" );
+
+        final File file = new File( directory, packageName.replace( '.', File.separatorChar ) + File.separator
+                + "R.java" );
+        // an unchanged class keeps its time stamp, so that the compiler does not recompile the classes using it
+        if ( ! file.isFile() || ! source.toString().equals( FileUtils.readFileToString( file, "UTF-8" ) ) )
+        {
+            FileUtils.writeStringToFile( file, source.toString(), "UTF-8" );
+        }
+        return file;
+    }
+
+    /**
+     * Adds the symbols declared by an XML resource: the values of a <code>values</code> file and the new ids.
+     */
+    private static void scan( File file, Set< String > names, boolean values ) throws IOException
+    {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+        factory.setProperty( XMLInputFactory.SUPPORT_DTD, Boolean.FALSE );
+        final InputStream in = new FileInputStream( file );
+        try
+        {
+            final XMLStreamReader reader = factory.createXMLStreamReader( in );
+            int depth = 0;
+            String styleable = null;
+            while ( reader.hasNext() )
+            {
+                final int event = reader.next();
+                if ( event == XMLStreamConstants.END_ELEMENT )
+                {
+                    depth--;
+                    if ( depth == 1 )
+                    {
+                        styleable = null;
+                    }
+                    continue;
+                }
+                if ( event != XMLStreamConstants.START_ELEMENT )
+                {
+                    continue;
+                }
+                depth++;
+                for ( int i = 0; i < reader.getAttributeCount(); i++ )
+                {
+                    final String value = reader.getAttributeValue( i );
+                    if ( value != null && value.startsWith( NEW_ID ) )
+                    {
+                        names.add( "id/" + toJavaName( value.substring( NEW_ID.length() ) ) );
+                    }
+                }
+                if ( values )
+                {
+                    styleable = scanValue( reader, depth, styleable, names );
+                }
+            }
+            reader.close();
+        }
+        catch ( XMLStreamException e )
+        {
+            throw new IOException( "Could not parse " + file + ": " + e.getMessage() );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( in );
+        }
+    }
+
+    /**
+     * Adds the symbol declared by an element of a <code>values</code> file.
+     *
+     * @return the name of the enclosing <code>declare-styleable</code> element, if any.
+     */
+    private static String scanValue( XMLStreamReader reader, int depth, String styleable, Set< String > names )
+    {
+        final String tag = reader.getLocalName();
+        final String name = reader.getAttributeValue( null, NAME );
+        if ( name == null || depth < 2 )
+        {
+            return styleable;
+        }
+        final String javaName = toJavaName( name );
+        if ( depth == 2 )
+        {
+            if ( "declare-styleable".equals( tag ) )
+            {
+                names.add( STYLEABLE + "/" + javaName );
+                return javaName;
+            }
+            names.add( getValueType( tag, reader.getAttributeValue( null, "type" ) ) + "/" + javaName );
+        }
+        else if ( styleable != null && depth == 3 && "attr".equals( tag ) )
+        {
+            names.add( STYLEABLE + "/" + styleable + "_" + javaName );
+            if ( ! name.contains( ":" ) )
+            {
+                names.add( "attr/" + javaName );
+            }
+        }
+        else if ( "enum".equals( tag ) || "flag".equals( tag ) )
+        {
+            // the values of enum and flag attributes are ids
+            names.add( "id/" + javaName );
+        }
+        return styleable;
+    }
+
+    private static String getValueType( String tag, String typeAttribute )
+    {
+        if ( "item".equals( tag ) && typeAttribute != null )
+        {
+            return typeAttribute;
+        }
+        if ( tag.endsWith( "-array" ) )
+        {
+            return "array";
+        }
+        return tag;
+    }
+
+    private static String toJavaName( String name )
+    {
+        return name.replace( '.', '_' ).replace( ':', '_' ).replace( '-', '_' );
+    }
+}
@@ -18,10 +18,21 @@ package com.jayway.maven.plugins.android.phase08preparepackage;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
@@ -36,6 +47,8 @@ import org.codehaus.plexus.archiver.util.DefaultFileSet;
 import com.jayway.maven.plugins.android.AbstractAndroidMojo;
 import com.jayway.maven.plugins.android.CommandExecutor;
 import com.jayway.maven.plugins.android.ExecutionException;
+import com.jayway.maven.plugins.android.common.DigestHelper;
+import com.jayway.maven.plugins.android.common.StateFileHelper;
 import com.jayway.maven.plugins.android.configuration.Dex;
 import com.jayway.maven.plugins.android.phase04processclasses.ProguardMojo;
 
@@ -49,6 +62,10 @@ import com.jayway.maven.plugins.android.phase04processclasses.ProguardMojo;
  */
 public class DexMojo extends AbstractAndroidMojo
 {
+    /**
+     * Key of the merge state in the shard manifest. Package names never contain a slash.
+     */
+    private static final String MERGE_KEY = "/merge";
 
     /**
      * Configuration for the dex command execution. It can be configured in the plugin configuration like so
@@ -64,6 +81,12 @@ public class DexMojo extends AbstractAndroidMojo
      *   &lt;optimize&gt;true|false&lt;/optimize&gt;
      *   &lt;preDex&gt;true|false&lt;/preDex&gt;
      *   &lt;preDexLibLocation&gt;path to predexed libraries, defaults to target/dexedLibs&lt;/preDexLibLocation&gt;
+     *   &lt;preDexCache&gt;true|false&lt;/preDexCache&gt;
+     *   &lt;preDexCacheLocation&gt;shared pre-dex cache, defaults to ~/.m2/android-predex&lt;/preDexCacheLocation&gt;
+     *   &lt;preDexCacheSize&gt;maximum size of the shared pre-dex cache in megabytes&lt;/preDexCacheSize&gt;
+     *   &lt;inProcess&gt;true|false&lt;/inProcess&gt;
+     *   &lt;incremental&gt;true|false&lt;/incremental&gt;
+     *   &lt;shards&gt;number of parallel dx runs for the application classes, 0 for one per core&lt;/shards&gt;
      * &lt;/dex&gt;
      * </pre>
      * <p/>
@@ -116,12 +139,70 @@ public class DexMojo extends AbstractAndroidMojo
      */
     private String dexPreDexLibLocation;
 
+    /**
+     * Decides whether pre-dexed libraries are shared through a content-addressed cache, so that the same library is
+     * only pre-dexed once for all modules, checkouts and builds on this machine.
+     * 
+     * @parameter expression="${android.dex.preDexCache}" default-value="true"
+     */
+    private boolean dexPreDexCache;
+
+    /**
+     * Path to the shared pre-dex cache.
+     * 
+     * @parameter expression="${android.dex.preDexCacheLocation}" default-value=
+     *            "${user.home}${file.separator}.m2${file.separator}android-predex"
+     */
+    private String dexPreDexCacheLocation;
+
+    /**
+     * Maximum size of the shared pre-dex cache in megabytes. The least recently used entries are evicted beyond it.
+     * 
+     * @parameter expression="${android.dex.preDexCacheSize}" default-value="1024"
+     */
+    private int dexPreDexCacheSize;
+
+    /**
+     * Decides whether to run dx inside the Maven JVM instead of forking a JVM for every dx invocation. The dx classes
+     * stay loaded for the whole Maven session, which mostly pays off in multi-module builds. In process, dx runs on
+     * the heap of Maven itself, so the jvm arguments do not apply and <code>MAVEN_OPTS</code> may need a larger
+     * <code>-Xmx</code> instead.
+     * 
+     * @parameter expression="${android.dex.inProcess}" default-value="false"
+     */
+    private boolean dexInProcess;
+
+    /**
+     * Decides whether to dex the classes of the project incrementally. The classes are dexed in one shard per
+     * package, only the shards with changed classes are dexed again, and the shards are merged with the pre-dexed
+     * libraries into the final <code>classes.dex</code>. Libraries are always pre-dexed in this mode. ProGuard output
+     * is always dexed completely.
+     * 
+     * @parameter expression="${android.dex.incremental}" default-value="false"
+     */
+    private boolean dexIncremental;
+
+    /**
+     * Number of shards to split the application classes into for a complete dex. The shards are dexed in parallel and
+     * merged, which is faster than one dx run for large applications on machines with many cores. 1 dexes all classes
+     * in one dx run, 0 uses one shard per core.
+     * 
+     * @parameter expression="${android.dex.shards}" default-value="1"
+     */
+    private int dexShards;
+
     private String[] parsedJvmArguments;
     private boolean parsedCoreLibrary;
     private boolean parsedNoLocals;
     private boolean parsedOptimize;
     private boolean parsedPreDex;
     private String parsedPreDexLibLocation;
+    private boolean parsedPreDexCache;
+    private String parsedPreDexCacheLocation;
+    private int parsedPreDexCacheSize;
+    private boolean parsedInProcess;
+    private boolean parsedIncremental;
+    private int parsedShards;
 
     /**
      * @throws MojoExecutionException
@@ -142,7 +223,19 @@ public class DexMojo extends AbstractAndroidMojo
 
         if ( generateApk )
         {
-            runDex( executor, outputFile, inputFiles );
+            final File classesDirectory = new File( project.getBuild().getOutputDirectory() );
+            if ( parsedIncremental && inputFiles.contains( classesDirectory ) )
+            {
+                runIncrementalDex( executor, outputFile, classesDirectory, inputFiles );
+            }
+            else
+            {
+                if ( parsedIncremental )
+                {
+                    getLog().info( "Dex ing ProGuard output completely, incremental dex ing needs project classes." );
+                }
+                runDex( executor, outputFile, inputFiles );
+            }
         }
 
         if ( attachJar )
@@ -168,7 +261,7 @@ public class DexMojo extends AbstractAndroidMojo
     private Set< File > getDexInputFiles()
     {
 
-        Set< File > inputs = new HashSet< File >();
+        Set< File > inputs = new LinkedHashSet< File >();
 
         // ugly, don't know a better way to get this in mvn
         File proguardJar = new File( project.getBuild().getDirectory(), ProguardMojo.PROGUARD_OBFUSCATED_JAR );
@@ -251,6 +344,54 @@ public class DexMojo extends AbstractAndroidMojo
             {
                 parsedPreDexLibLocation = dex.getPreDexLibLocation();
             }
+            if ( dex.isPreDexCache() == null )
+            {
+                parsedPreDexCache = dexPreDexCache;
+            }
+            else
+            {
+                parsedPreDexCache = dex.isPreDexCache();
+            }
+            if ( dex.getPreDexCacheLocation() == null )
+            {
+                parsedPreDexCacheLocation = dexPreDexCacheLocation;
+            }
+            else
+            {
+                parsedPreDexCacheLocation = dex.getPreDexCacheLocation();
+            }
+            if ( dex.getPreDexCacheSize() == null )
+            {
+                parsedPreDexCacheSize = dexPreDexCacheSize;
+            }
+            else
+            {
+                parsedPreDexCacheSize = dex.getPreDexCacheSize();
+            }
+            if ( dex.isInProcess() == null )
+            {
+                parsedInProcess = dexInProcess;
+            }
+            else
+            {
+                parsedInProcess = dex.isInProcess();
+            }
+            if ( dex.isIncremental() == null )
+            {
+                parsedIncremental = dexIncremental;
+            }
+            else
+            {
+                parsedIncremental = dex.isIncremental();
+            }
+            if ( dex.getShards() == null )
+            {
+                parsedShards = dexShards;
+            }
+            else
+            {
+                parsedShards = dex.getShards();
+            }
         }
         else
         {
@@ -260,57 +401,330 @@ public class DexMojo extends AbstractAndroidMojo
             parsedOptimize = dexOptimize;
             parsedPreDex = dexPreDex;
             parsedPreDexLibLocation = dexPreDexLibLocation;
+            parsedPreDexCache = dexPreDexCache;
+            parsedPreDexCacheLocation = dexPreDexCacheLocation;
+            parsedPreDexCacheSize = dexPreDexCacheSize;
+            parsedInProcess = dexInProcess;
+            parsedIncremental = dexIncremental;
+            parsedShards = dexShards;
         }
     }
 
-    private Set< File > preDex( CommandExecutor executor, Set< File > inputFiles ) throws MojoExecutionException
+    private Set< File > preDex( Set< File > inputFiles ) throws MojoExecutionException
     {
-        Set< File > filtered = new HashSet< File >();
+        Set< File > filtered = new LinkedHashSet< File >();
+        Map< File, File > jarsToPreDex = new LinkedHashMap< File, File >();
+        Map< File, String > cacheKeys = new LinkedHashMap< File, String >();
         getLog().info( "Pre dex-ing libraries for faster dex-ing of the final application." );
 
+        final PreDexCache cache = parsedPreDexCache
+                ? new PreDexCache( new File( parsedPreDexCacheLocation.trim() ), parsedPreDexCacheSize * 1024L * 1024L,
+                        getLog() )
+                : null;
+        final File dxJar = new File( getAndroidSdk().getPathForTool( "dx.jar" ) );
+        final String dexFlags = dexFlags().toString();
+
         for ( File inputFile : inputFiles )
         {
             if ( inputFile.getName().matches( ".*\\.jar$" ) )
             {
-                List< String > commands = dexDefaultCommands();
-
-                File predexJar = predexJarPath( inputFile );
-                commands.add( "--output=" + predexJar.getAbsolutePath() );
-                commands.add( inputFile.getAbsolutePath() );
+                final String key = preDexKey( inputFile, dxJar, dexFlags );
+                File predexJar = predexJarPath( inputFile, key );
                 filtered.add( predexJar );
 
-                if ( !predexJar.isFile() || predexJar.lastModified() < inputFile.lastModified() )
+                if ( predexJar.isFile() )
                 {
-                    getLog().info( "Pre-dex ing jar: " + inputFile.getAbsolutePath() );
+                    getLog().debug( "Pre-dexed jar is up to date: " + predexJar.getName() );
+                }
+                else if ( cache != null && cache.fetch( key, predexJar ) )
+                {
+                    getLog().debug( "Pre-dexed jar taken from cache: " + predexJar.getName() );
+                }
+                else
+                {
+                    jarsToPreDex.put( inputFile, predexJar );
+                    cacheKeys.put( inputFile, key );
+                }
+            }
+            else
+            {
+                filtered.add( inputFile );
+            }
+        }
 
-                    final String javaExecutable = getJavaExecutable().getAbsolutePath();
-                    getLog().info( javaExecutable + " " + commands.toString() );
-                    try
-                    {
-                        executor.executeCommand( javaExecutable, commands, project.getBasedir(), false );
-                    }
-                    catch ( ExecutionException e )
+        dexInParallel( jarsToPreDex, "Pre-dex ing", "jar" );
+
+        if ( cache != null )
+        {
+            for ( Map.Entry< File, String > entry : cacheKeys.entrySet() )
+            {
+                cache.store( entry.getValue(), jarsToPreDex.get( entry.getKey() ) );
+            }
+            cache.evict();
+        }
+
+        return filtered;
+    }
+
+    /**
+     * The key covers everything the dx output depends on, so an existing output is always up to date.
+     *
+     * @param jar      the jar to pre-dex.
+     * @param dxJar    the dx tool.
+     * @param dexFlags the dx options affecting the output.
+     * @return the key of the pre-dexed jar, in the build directory and in the pre-dex cache.
+     * @throws MojoExecutionException if a jar cannot be read.
+     */
+    static String preDexKey( File jar, File dxJar, String dexFlags ) throws MojoExecutionException
+    {
+        return DigestHelper.sha256( hash( jar ), hash( dxJar ), dexFlags );
+    }
+
+    private static String hash( File file ) throws MojoExecutionException
+    {
+        try
+        {
+            return DigestHelper.sha256( file );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not compute the hash of " + file, e );
+        }
+    }
+
+    /**
+     * Dexes the given inputs in a bounded pool of dx processes. All inputs are attempted, and every failure is
+     * reported individually before the build is failed.
+     *
+     * @param jarsToPreDex input jars or class folders mapped to the dexed jar to create, in input order.
+     * @param action       what is done to the inputs, for the log, e.g. <code>Pre-dex ing</code>.
+     * @param kind         what the inputs are, for the log, e.g. <code>jar</code> or <code>shard</code>.
+     * @throws MojoExecutionException if one or more inputs could not be dexed.
+     */
+    private void dexInParallel( Map< File, File > jarsToPreDex, final String action, final String kind )
+            throws MojoExecutionException
+    {
+        if ( jarsToPreDex.isEmpty() )
+        {
+            return;
+        }
+
+        final int workers = getPreDexWorkerCount( jarsToPreDex.size() );
+        getLog().debug( action + " " + jarsToPreDex.size() + " " + kind + "s using " + workers + " parallel dx runs" );
+
+        final Map< File, Future< Void > > futures = new LinkedHashMap< File, Future< Void > >();
+        final ExecutorService pool = Executors.newFixedThreadPool( workers );
+        try
+        {
+            for ( Map.Entry< File, File > entry : jarsToPreDex.entrySet() )
+            {
+                final File inputFile = entry.getKey();
+                final File predexJar = entry.getValue();
+                // dx writes next to the final name, so that an interrupted run never leaves a valid looking jar
+                final File partialJar = new File( predexJar.getPath() + ".part" );
+                final List< String > dxArguments = dexFlags();
+                dxArguments.add( "--output=" + partialJar.getAbsolutePath() );
+                dxArguments.add( inputFile.getAbsolutePath() );
+
+                futures.put( inputFile, pool.submit( new Callable< Void >()
+                {
+                    @Override
+                    public Void call() throws MojoExecutionException
                     {
-                        throw new MojoExecutionException( "", e );
+                        getLog().info( action + " " + kind + ": " + inputFile.getAbsolutePath() );
+                        final long start = System.currentTimeMillis();
+                        CommandExecutor executor = CommandExecutor.Factory.createDefaultCommmandExecutor();
+                        executor.setLogger( getLog() );
+                        runDx( executor, dxArguments );
+                        getLog().info( "Dex ed " + inputFile.getName() + " in "
+                                + ( System.currentTimeMillis() - start ) + " ms" );
+                        if ( !partialJar.renameTo( predexJar ) )
+                        {
+                            partialJar.delete();
+                            throw new MojoExecutionException( "Could not rename " + partialJar + " to " + predexJar );
+                        }
+                        return null;
                     }
+                } ) );
+            }
+
+            final List< File > failedJars = new ArrayList< File >();
+            for ( Map.Entry< File, Future< Void > > entry : futures.entrySet() )
+            {
+                try
+                {
+                    entry.getValue().get();
                 }
+                catch ( java.util.concurrent.ExecutionException e )
+                {
+                    getLog().error( action + " failed for " + kind + ": " + entry.getKey().getAbsolutePath(),
+                            e.getCause() );
+                    failedJars.add( entry.getKey() );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException( "Interrupted while dexing " + kind + "s", e );
+                }
+            }
 
+            if ( !failedJars.isEmpty() )
+            {
+                for ( File failedJar : failedJars )
+                {
+                    // the pre-dexed output of a failed run must never be picked up as up to date
+                    jarsToPreDex.get( failedJar ).delete();
+                }
+                throw new MojoExecutionException( action + " failed for " + failedJars.size() + " " + kind + "(s): "
+                        + failedJars );
             }
-            else
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Sizes the pre-dex worker pool. Every worker is a separate dx JVM using the configured jvm arguments, so the
+     * number of workers is bounded by the available cores as well as by how many of those heaps fit into the
+     * physical memory not already claimed by the Maven JVM itself.
+     *
+     * @param jarCount the number of jars waiting to be pre-dexed.
+     * @return the number of parallel dx processes to use, at least 1.
+     */
+    private int getPreDexWorkerCount( int jarCount )
+    {
+        int workers = Math.min( Runtime.getRuntime().availableProcessors(), jarCount );
+
+        final long heapPerWorker = getMaxHeapFromJvmArguments();
+        if ( parsedInProcess && heapPerWorker > 0 )
+        {
+            // in process, all workers share the heap of the Maven JVM
+            final long workersInBudget = Runtime.getRuntime().maxMemory() / heapPerWorker;
+            workers = ( int ) Math.min( workers, workersInBudget );
+        }
+        final long physicalMemory = getTotalPhysicalMemory();
+        if ( !parsedInProcess && physicalMemory > 0 && heapPerWorker > 0 )
+        {
+            final long budget = physicalMemory - Runtime.getRuntime().maxMemory();
+            final long workersInBudget = budget / heapPerWorker;
+            getLog().debug( "Pre-dex memory budget is " + budget + " bytes, " + heapPerWorker + " bytes per worker" );
+            workers = ( int ) Math.min( workers, workersInBudget );
+        }
+
+        return Math.max( 1, workers );
+    }
+
+    /**
+     * @return the maximum heap the configured dx jvm arguments allow, in bytes, or -1 if no -Xmx is configured.
+     */
+    private long getMaxHeapFromJvmArguments()
+    {
+        long maxHeap = -1;
+        if ( parsedJvmArguments != null )
+        {
+            for ( String jvmArgument : parsedJvmArguments )
             {
-                filtered.add( inputFile );
+                String argument = jvmArgument.trim();
+                if ( argument.startsWith( "-" ) )
+                {
+                    argument = argument.substring( 1 );
+                }
+                if ( argument.startsWith( "Xmx" ) )
+                {
+                    maxHeap = parseMemorySize( argument.substring( 3 ) );
+                }
             }
         }
+        return maxHeap;
+    }
 
-        return filtered;
+    /**
+     * Parses a jvm memory size like <code>512m</code> or <code>2G</code>.
+     *
+     * @param size the memory size as given to the jvm.
+     * @return the size in bytes, or -1 if it could not be parsed.
+     */
+    static long parseMemorySize( String size )
+    {
+        if ( StringUtils.isBlank( size ) )
+        {
+            return -1;
+        }
+        long multiplier = 1;
+        String digits = size.trim();
+        final char unit = Character.toLowerCase( digits.charAt( digits.length() - 1 ) );
+        if ( unit == 'k' || unit == 'm' || unit == 'g' )
+        {
+            multiplier = unit == 'k' ? 1024L : unit == 'm' ? 1024L * 1024 : 1024L * 1024 * 1024;
+            digits = digits.substring( 0, digits.length() - 1 );
+        }
+        try
+        {
+            return Long.parseLong( digits ) * multiplier;
+        }
+        catch ( NumberFormatException e )
+        {
+            return -1;
+        }
     }
 
-    private File predexJarPath( File inputFile )
+    /**
+     * @return the total physical memory of this machine in bytes, or -1 if the running JVM does not expose it.
+     */
+    private long getTotalPhysicalMemory()
+    {
+        try
+        {
+            final Class< ? > osBeanClass = Class.forName( "com.sun.management.OperatingSystemMXBean" );
+            final Object osBean = ManagementFactory.getOperatingSystemMXBean();
+            if ( osBeanClass.isInstance( osBean ) )
+            {
+                final Method method = osBeanClass.getMethod( "getTotalPhysicalMemorySize" );
+                return ( ( Number ) method.invoke( osBean ) ).longValue();
+            }
+        }
+        catch ( Exception e )
+        {
+            getLog().debug( "Could not determine physical memory size", e );
+        }
+        return -1;
+    }
+
+    /**
+     * Names the pre-dexed jar after the input jar and its cache key, so that different jars sharing a name, like the
+     * <code>classes.jar</code> of several libraries, never overwrite each other.
+     */
+    private File predexJarPath( File inputFile, String key )
     {
         final String slash = File.separator;
         final File predexLibsDirectory = new File( parsedPreDexLibLocation.trim() );
         predexLibsDirectory.mkdirs();
-        return new File( predexLibsDirectory.getAbsolutePath() + slash + inputFile.getName() );
+        final String baseName = inputFile.getName().replaceFirst( "\\.jar$", "" );
+        return new File( predexLibsDirectory.getAbsolutePath() + slash + baseName + "-"
+                + key.substring( 0, 16 ) + ".jar" );
+    }
+
+    /**
+     * @return the dx flags that influence the generated dex code, shared by pre-dexing and the final dex run.
+     */
+    private List< String > dexFlags()
+    {
+        List< String > flags = new ArrayList< String >();
+        if ( !parsedOptimize )
+        {
+            flags.add( "--no-optimize" );
+        }
+        if ( parsedCoreLibrary )
+        {
+            flags.add( "--core-library" );
+        }
+        if ( parsedNoLocals )
+        {
+            flags.add( "--no-locals" );
+        }
+        return flags;
     }
 
     private List< String > dexDefaultCommands() throws MojoExecutionException
@@ -344,33 +758,297 @@ public class DexMojo extends AbstractAndroidMojo
     private void runDex( CommandExecutor executor, File outputFile, Set< File > inputFiles )
             throws MojoExecutionException
     {
-        List< String > commands = dexDefaultCommands();
         Set< File > filteredFiles = inputFiles;
 
-        if ( parsedPreDex )
+        final int shardCount = parsedShards > 0 ? parsedShards : Runtime.getRuntime().availableProcessors();
+        if ( shardCount > 1 )
         {
-            filteredFiles = preDex( executor, inputFiles );
+            filteredFiles = dexShards( inputFiles, shardCount );
         }
-        if ( !parsedOptimize )
+        else if ( parsedPreDex )
         {
-            commands.add( "--no-optimize" );
+            filteredFiles = preDex( inputFiles );
         }
-        if ( parsedCoreLibrary )
+        List< String > dxArguments = dexFlags();
+        dxArguments.add( "--output=" + outputFile.getAbsolutePath() );
+
+        for ( File inputFile : filteredFiles )
         {
-            commands.add( "--core-library" );
+            getLog().debug( "Adding dex input: " + inputFile.getAbsolutePath() );
+            dxArguments.add( inputFile.getAbsolutePath() );
         }
-        commands.add( "--output=" + outputFile.getAbsolutePath() );
-        if ( parsedNoLocals )
+
+        runDx( executor, dxArguments );
+    }
+
+    /**
+     * Splits the classes to dex into shards of about the same size and dexes them in parallel. Libraries are pre-dexed
+     * instead when pre-dexing is enabled, as they need not be dexed again.
+     *
+     * @param inputFiles the dex inputs.
+     * @param shardCount the number of shards to create.
+     * @return the dexed shards and pre-dexed libraries, for dx to merge.
+     * @throws MojoExecutionException if dx failed.
+     */
+    private Set< File > dexShards( Set< File > inputFiles, int shardCount ) throws MojoExecutionException
+    {
+        final Set< File > shardInputs = new LinkedHashSet< File >();
+        final Set< File > libraries = new LinkedHashSet< File >();
+        for ( File inputFile : inputFiles )
         {
-            commands.add( "--no-locals" );
+            if ( parsedPreDex && inputFile.isFile() && !inputFile.getName().equals(
+                    ProguardMojo.PROGUARD_OBFUSCATED_JAR ) )
+            {
+                libraries.add( inputFile );
+            }
+            else
+            {
+                shardInputs.add( inputFile );
+            }
+        }
+        final Set< File > dexed = new LinkedHashSet< File >();
+        if ( !libraries.isEmpty() )
+        {
+            dexed.addAll( preDex( libraries ) );
         }
 
-        for ( File inputFile : filteredFiles )
+        final File shardsDirectory = new File( project.getBuild().getDirectory(), "dexParallelShards" );
+        final Map< File, File > shardJars = new LinkedHashMap< File, File >();
+        try
         {
-            getLog().debug( "Adding dex input: " + inputFile.getAbsolutePath() );
-            commands.add( inputFile.getAbsolutePath() );
+            FileUtils.forceMkdir( shardsDirectory );
+            final List< List< DexShards.ClassEntry > > shards =
+                    DexShards.plan( DexShards.collect( shardInputs ), shardCount );
+            for ( int i = 0; i < shards.size(); i++ )
+            {
+                final File shardJar = new File( shardsDirectory, "shard-" + i + ".jar" );
+                final File dexedShardJar = new File( shardsDirectory, "shard-" + i + "-dexed.jar" );
+                dexedShardJar.delete();
+                DexShards.write( shards.get( i ), shardJar );
+                getLog().debug( "Dex shard " + i + " has " + shards.get( i ).size() + " classes" );
+                shardJars.put( shardJar, dexedShardJar );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not split the classes into dex shards", e );
+        }
+
+        getLog().info( "Dex ing application classes in " + shardJars.size() + " parallel shards." );
+        final long start = System.currentTimeMillis();
+        dexInParallel( shardJars, "Dex ing", "shard" );
+        getLog().info( "Dex ed all shards in " + ( System.currentTimeMillis() - start ) + " ms" );
+        for ( Map.Entry< File, File > shardJar : shardJars.entrySet() )
+        {
+            shardJar.getKey().delete();
+            dexed.add( shardJar.getValue() );
+        }
+        return dexed;
+    }
+
+    /**
+     * Dexes the project classes in one shard per package, re-dexing only the packages whose classes changed since the
+     * last build, and merges the shards with the pre-dexed libraries.
+     *
+     * @param executor         the executor to fork dx with.
+     * @param outputFile       the <code>classes.dex</code> to create.
+     * @param classesDirectory the compiled classes of the project.
+     * @param inputFiles       all dex inputs, including the classes directory.
+     * @throws MojoExecutionException if dx failed.
+     */
+    private void runIncrementalDex( CommandExecutor executor, File outputFile, File classesDirectory,
+                                    Set< File > inputFiles ) throws MojoExecutionException
+    {
+        final Set< File > libraries = new LinkedHashSet< File >( inputFiles );
+        libraries.remove( classesDirectory );
+        final Set< File > dexedLibraries = preDex( libraries );
+
+        final File shardsDirectory = new File( project.getBuild().getDirectory(), "dexShards" );
+        final File manifestFile = new File( shardsDirectory, "shards.properties" );
+        final Properties previous = StateFileHelper.load( manifestFile );
+        final Properties current = new Properties();
+        final String dxHash = hash( new File( getAndroidSdk().getPathForTool( "dx.jar" ) ) );
+        final String dexFlags = dexFlags().toString();
+
+        final Set< File > shardJars = new LinkedHashSet< File >();
+        final Map< File, File > dirtyShards = planShards( classesDirectory, shardsDirectory, previous, current,
+                dxHash + dexFlags, shardJars );
+
+        getLog().info( "Dex ing " + dirtyShards.size() + " of " + shardJars.size() + " changed package shards." );
+        dexInParallel( dirtyShards, "Dex ing", "shard" );
+        for ( File stagingDirectory : dirtyShards.keySet() )
+        {
+            FileUtils.deleteQuietly( stagingDirectory );
+        }
+
+        final Set< File > mergeInputs = new LinkedHashSet< File >( shardJars );
+        mergeInputs.addAll( dexedLibraries );
+        // Properties iterate in hash order, so the shard keys are hashed sorted to keep the merge key stable
+        final String mergeKey = DigestHelper.sha256(
+                new TreeMap< Object, Object >( current ).toString(), mergeInputs.toString() );
+        current.setProperty( MERGE_KEY, mergeKey );
+        if ( outputFile.isFile() && mergeKey.equals( previous.getProperty( MERGE_KEY ) ) )
+        {
+            getLog().info( "Dex output is up to date: " + outputFile );
+        }
+        else
+        {
+            // dx merges inputs that are already dexed instead of dexing them again
+            final List< String > dxArguments = dexFlags();
+            dxArguments.add( "--output=" + outputFile.getAbsolutePath() );
+            for ( File mergeInput : mergeInputs )
+            {
+                dxArguments.add( mergeInput.getAbsolutePath() );
+            }
+            runDx( executor, dxArguments );
+        }
+
+        try
+        {
+            StateFileHelper.save( manifestFile, current );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not write " + manifestFile, e );
+        }
+    }
+
+    /**
+     * Works out which package shards need to be dexed again: the shards whose classes, dx version or dx options
+     * changed since the last build, and the shards whose jar is missing. The jars of dirty shards and of packages
+     * that no longer exist are deleted, and the classes of each dirty shard are staged for dx.
+     *
+     * @param classesDirectory the compiled classes of the project.
+     * @param shardsDirectory  the directory of the shard jars.
+     * @param previous         the shard keys of the last build.
+     * @param current          receives the shard keys of this build.
+     * @param dxKey            the dx version and options the shards are dexed with.
+     * @param shardJars        receives the jars of all shards, in a stable order.
+     * @return the staging directory and jar of each dirty shard.
+     * @throws MojoExecutionException if a class file cannot be read or staged.
+     */
+    static Map< File, File > planShards( File classesDirectory, File shardsDirectory, Properties previous,
+                                         Properties current, String dxKey, Set< File > shardJars )
+            throws MojoExecutionException
+    {
+        final Map< File, File > dirtyShards = new LinkedHashMap< File, File >();
+        for ( Map.Entry< String, List< String > > shard : getClassesByPackage( classesDirectory ).entrySet() )
+        {
+            final String shardName = shard.getKey().length() == 0 ? "_default" : shard.getKey();
+            final File shardJar = new File( shardsDirectory, shardName + ".jar" );
+            shardJars.add( shardJar );
+
+            final List< String > keyParts = new ArrayList< String >();
+            keyParts.add( dxKey );
+            for ( String classFile : shard.getValue() )
+            {
+                keyParts.add( classFile );
+                keyParts.add( hash( new File( classesDirectory, classFile ) ) );
+            }
+            final String key = DigestHelper.sha256( keyParts.toArray( new String[ keyParts.size() ] ) );
+            current.setProperty( shardName, key );
+
+            if ( !key.equals( previous.getProperty( shardName ) ) || !shardJar.isFile() )
+            {
+                shardJar.delete();
+                final File stagingDirectory = new File( shardsDirectory, shardName );
+                stageClasses( classesDirectory, shard.getValue(), stagingDirectory );
+                dirtyShards.put( stagingDirectory, shardJar );
+            }
+        }
+        for ( String removedShard : previous.stringPropertyNames() )
+        {
+            if ( !removedShard.equals( MERGE_KEY ) && !current.containsKey( removedShard ) )
+            {
+                new File( shardsDirectory, removedShard + ".jar" ).delete();
+            }
+        }
+        return dirtyShards;
+    }
+
+    /**
+     * @return the relative paths of all class files in the directory, by package name in a stable order.
+     */
+    private static Map< String, List< String > > getClassesByPackage( File classesDirectory )
+    {
+        final Map< String, List< String > > classesByPackage = new TreeMap< String, List< String > >();
+        if ( classesDirectory.isDirectory() )
+        {
+            collectClasses( classesDirectory, "", classesByPackage );
+        }
+        return classesByPackage;
+    }
+
+    private static void collectClasses( File directory, String relativePath,
+                                        Map< String, List< String > > classesByPackage )
+    {
+        final File[] files = directory.listFiles();
+        if ( files == null )
+        {
+            return;
+        }
+        Arrays.sort( files );
+        for ( File file : files )
+        {
+            final String path = relativePath + file.getName();
+            if ( file.isDirectory() )
+            {
+                collectClasses( file, path + "/", classesByPackage );
+            }
+            else if ( file.getName().endsWith( ".class" ) )
+            {
+                final String packageName = relativePath.length() == 0
+                        ? ""
+                        : relativePath.substring( 0, relativePath.length() - 1 ).replace( '/', '.' );
+                List< String > classes = classesByPackage.get( packageName );
+                if ( classes == null )
+                {
+                    classes = new ArrayList< String >();
+                    classesByPackage.put( packageName, classes );
+                }
+                classes.add( path );
+            }
         }
+    }
 
+    /**
+     * Copies the classes of one shard into a directory of their own, keeping the package directories dx expects.
+     */
+    private static void stageClasses( File classesDirectory, List< String > classFiles, File stagingDirectory )
+            throws MojoExecutionException
+    {
+        try
+        {
+            FileUtils.deleteDirectory( stagingDirectory );
+            for ( String classFile : classFiles )
+            {
+                FileUtils.copyFile( new File( classesDirectory, classFile ), new File( stagingDirectory, classFile ) );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not stage classes in " + stagingDirectory, e );
+        }
+    }
+
+    /**
+     * Runs dx with the given arguments, in process or in a forked jvm depending on the configuration.
+     *
+     * @param executor    the executor to fork dx with.
+     * @param dxArguments the arguments following <code>--dex</code> on the dx command line.
+     * @throws MojoExecutionException if dx failed.
+     */
+    private void runDx( CommandExecutor executor, List< String > dxArguments ) throws MojoExecutionException
+    {
+        if ( parsedInProcess )
+        {
+            getLog().info( "dx (in process) " + dxArguments.toString() );
+            InProcessDx.run( new File( getAndroidSdk().getPathForTool( "dx.jar" ) ), dxArguments, getLog() );
+            return;
+        }
+
+        List< String > commands = dexDefaultCommands();
+        commands.addAll( dxArguments );
         final String javaExecutable = getJavaExecutable().getAbsolutePath();
         getLog().info( javaExecutable + " " + commands.toString() );
         try
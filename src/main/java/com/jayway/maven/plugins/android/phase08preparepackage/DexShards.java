@@ -0,0 +1,248 @@
+package com.jayway.maven.plugins.android.phase08preparepackage;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Splits the classes of a number of dex inputs, class directories as well as jars, into shards of about the same
+ * size that can be dexed in parallel and merged afterwards.
+ */
+public final class DexShards
+{
+    private static final String CLASS_SUFFIX = ".class";
+
+    private DexShards()
+    {
+    }
+
+    /**
+     * A class file in a class directory or a jar.
+     */
+    public static final class ClassEntry
+    {
+        private final File source;
+        private final String name;
+        private final long size;
+
+        /**
+         * @param source the class directory or jar containing the class.
+         * @param name   the path of the class file relative to the directory or jar root, using forward slashes.
+         * @param size   the size of the class file.
+         */
+        public ClassEntry( File source, String name, long size )
+        {
+            this.source = source;
+            this.name = name;
+            this.size = size;
+        }
+
+        public File getSource()
+        {
+            return source;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public long getSize()
+        {
+            return size;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+    }
+
+    /**
+     * Lists the class files of the given inputs.
+     *
+     * @param inputs class directories and jars.
+     * @return the class files, in input order.
+     * @throws IOException if a jar could not be read.
+     */
+    public static List< ClassEntry > collect( Iterable< File > inputs ) throws IOException
+    {
+        final List< ClassEntry > entries = new ArrayList< ClassEntry >();
+        for ( File input : inputs )
+        {
+            if ( input.isDirectory() )
+            {
+                collectDirectory( input, input, "", entries );
+            }
+            else if ( input.isFile() )
+            {
+                final ZipFile zip = new ZipFile( input );
+                try
+                {
+                    final Enumeration< ? extends ZipEntry > zipEntries = zip.entries();
+                    while ( zipEntries.hasMoreElements() )
+                    {
+                        final ZipEntry zipEntry = zipEntries.nextElement();
+                        if ( !zipEntry.isDirectory() && zipEntry.getName().endsWith( CLASS_SUFFIX ) )
+                        {
+                            entries.add( new ClassEntry( input, zipEntry.getName(), zipEntry.getSize() ) );
+                        }
+                    }
+                }
+                finally
+                {
+                    zip.close();
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static void collectDirectory( File root, File directory, String relativePath,
+                                          List< ClassEntry > entries )
+    {
+        final File[] files = directory.listFiles();
+        if ( files == null )
+        {
+            return;
+        }
+        Arrays.sort( files );
+        for ( File file : files )
+        {
+            final String path = relativePath + file.getName();
+            if ( file.isDirectory() )
+            {
+                collectDirectory( root, file, path + "/", entries );
+            }
+            else if ( file.getName().endsWith( CLASS_SUFFIX ) )
+            {
+                entries.add( new ClassEntry( root, path, file.length() ) );
+            }
+        }
+    }
+
+    /**
+     * Distributes classes over shards, largest class first into the currently smallest shard. The class file size is
+     * a good enough estimate of the dx effort, and this greedy distribution is never more than a third worse than the
+     * best possible one.
+     *
+     * @param entries    the classes to distribute.
+     * @param shardCount the number of shards wanted.
+     * @return the non-empty shards, at most <code>shardCount</code> of them.
+     */
+    public static List< List< ClassEntry > > plan( List< ClassEntry > entries, int shardCount )
+    {
+        final List< ClassEntry > bySize = new ArrayList< ClassEntry >( entries );
+        Collections.sort( bySize, new Comparator< ClassEntry >()
+        {
+            @Override
+            public int compare( ClassEntry a, ClassEntry b )
+            {
+                if ( a.getSize() != b.getSize() )
+                {
+                    return a.getSize() > b.getSize() ? -1 : 1;
+                }
+                return a.getName().compareTo( b.getName() );
+            }
+        } );
+
+        final int count = Math.max( 1, Math.min( shardCount, bySize.size() ) );
+        final List< List< ClassEntry > > shards = new ArrayList< List< ClassEntry > >( count );
+        final long[] shardSizes = new long[ count ];
+        for ( int i = 0; i < count; i++ )
+        {
+            shards.add( new ArrayList< ClassEntry >() );
+        }
+        for ( ClassEntry entry : bySize )
+        {
+            int smallest = 0;
+            for ( int i = 1; i < count; i++ )
+            {
+                if ( shardSizes[ i ] < shardSizes[ smallest ] )
+                {
+                    smallest = i;
+                }
+            }
+            shards.get( smallest ).add( entry );
+            shardSizes[ smallest ] += entry.getSize();
+        }
+        if ( bySize.isEmpty() )
+        {
+            shards.clear();
+        }
+        return shards;
+    }
+
+    /**
+     * Writes the classes of a shard into a jar for dx. The jar only lives until dx has read it, so it is written
+     * without compression.
+     *
+     * @param shard the classes of the shard.
+     * @param jar   the jar to write.
+     * @throws IOException if a class could not be read or the jar could not be written.
+     */
+    public static void write( List< ClassEntry > shard, File jar ) throws IOException
+    {
+        final Map< File, ZipFile > openJars = new HashMap< File, ZipFile >();
+        final ZipOutputStream out = new ZipOutputStream( new FileOutputStream( jar ) );
+        try
+        {
+            out.setLevel( Deflater.NO_COMPRESSION );
+            for ( ClassEntry entry : shard )
+            {
+                out.putNextEntry( new ZipEntry( entry.getName() ) );
+                final InputStream in = open( entry, openJars );
+                try
+                {
+                    IOUtils.copy( in, out );
+                }
+                finally
+                {
+                    IOUtils.closeQuietly( in );
+                }
+                out.closeEntry();
+            }
+            out.close();
+        }
+        finally
+        {
+            IOUtils.closeQuietly( out );
+            for ( ZipFile zip : openJars.values() )
+            {
+                zip.close();
+            }
+        }
+    }
+
+    private static InputStream open( ClassEntry entry, Map< File, ZipFile > openJars ) throws IOException
+    {
+        if ( entry.getSource().isDirectory() )
+        {
+            return new FileInputStream( new File( entry.getSource(), entry.getName() ) );
+        }
+        ZipFile zip = openJars.get( entry.getSource() );
+        if ( zip == null )
+        {
+            zip = new ZipFile( entry.getSource() );
+            openJars.put( entry.getSource(), zip );
+        }
+        return zip.getInputStream( zip.getEntry( entry.getName() ) );
+    }
+}
@@ -0,0 +1,171 @@
+package com.jayway.maven.plugins.android.phase08preparepackage;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs dx inside the Maven JVM instead of forking a new JVM for every invocation. The dx classes are loaded from
+ * the SDK's <code>dx.jar</code> in an isolated class loader, which is kept for the rest of the Maven session so that
+ * later invocations, e.g. in later reactor modules, run on already loaded and JIT compiled code.
+ * <p/>
+ * dx keeps its state in static fields, so a class loader only ever runs one dx invocation at a time. Concurrent
+ * invocations each get their own class loader, and idle ones are reused.
+ */
+public final class InProcessDx
+{
+    private static final String DEXER_MAIN = "com.android.dx.command.dexer.Main";
+    private static final String DEXER_ARGUMENTS = DEXER_MAIN + "$Arguments";
+    private static final String CONSOLE = "com.android.dx.command.DxConsole";
+
+    /**
+     * Idle class loaders by dx.jar path, size and modification time, so that an updated SDK is picked up.
+     */
+    private static final Map< String, LinkedList< ClassLoader > > IDLE_LOADERS =
+            new HashMap< String, LinkedList< ClassLoader > >();
+
+    private InProcessDx()
+    {
+    }
+
+    /**
+     * Runs dx with the given arguments.
+     *
+     * @param dxJar     the <code>dx.jar</code> of the Android SDK.
+     * @param arguments the dexer arguments, i.e. what would follow <code>--dex</code> on the command line.
+     * @param log       the log receiving the dx output. Standard output is logged at debug level and standard error
+     *                  at info level, the same as for a forked dx.
+     * @throws MojoExecutionException if dx could not be loaded or reported an error.
+     */
+    public static void run( File dxJar, List< String > arguments, Log log ) throws MojoExecutionException
+    {
+        final String key = dxJar.getAbsolutePath() + "|" + dxJar.length() + "|" + dxJar.lastModified();
+        final ClassLoader loader = acquire( key, dxJar );
+        final Thread thread = Thread.currentThread();
+        final ClassLoader previousContextLoader = thread.getContextClassLoader();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int result;
+        try
+        {
+            thread.setContextClassLoader( loader );
+            redirectConsole( loader, new PrintStream( out, true ), new PrintStream( err, true ) );
+
+            final Class< ? > argumentsClass = loader.loadClass( DEXER_ARGUMENTS );
+            final Object dexerArguments = argumentsClass.newInstance();
+            argumentsClass.getMethod( "parse", String[].class )
+                    .invoke( dexerArguments, ( Object ) arguments.toArray( new String[ arguments.size() ] ) );
+            final Method runMethod = loader.loadClass( DEXER_MAIN ).getMethod( "run", argumentsClass );
+            result = ( Integer ) runMethod.invoke( null, dexerArguments );
+        }
+        catch ( InvocationTargetException e )
+        {
+            throw new MojoExecutionException( "dx failed: " + e.getCause().getMessage(), e.getCause() );
+        }
+        catch ( Exception e )
+        {
+            throw new MojoExecutionException( "Could not run dx from " + dxJar + " in process", e );
+        }
+        finally
+        {
+            thread.setContextClassLoader( previousContextLoader );
+            logLines( out, log, false );
+            logLines( err, log, true );
+            release( key, loader );
+        }
+        if ( result != 0 )
+        {
+            throw new MojoExecutionException( "dx failed with exit code " + result );
+        }
+    }
+
+    private static synchronized ClassLoader acquire( String key, File dxJar ) throws MojoExecutionException
+    {
+        final LinkedList< ClassLoader > idle = IDLE_LOADERS.get( key );
+        if ( idle != null && !idle.isEmpty() )
+        {
+            return idle.removeFirst();
+        }
+        try
+        {
+            // no parent besides the bootstrap loader, so dx never sees the classes of Maven or of this plugin
+            return new URLClassLoader( new URL[] { dxJar.toURI().toURL() }, null );
+        }
+        catch ( MalformedURLException e )
+        {
+            throw new MojoExecutionException( "Could not load dx from " + dxJar, e );
+        }
+    }
+
+    private static synchronized void release( String key, ClassLoader loader )
+    {
+        LinkedList< ClassLoader > idle = IDLE_LOADERS.get( key );
+        if ( idle == null )
+        {
+            idle = new LinkedList< ClassLoader >();
+            IDLE_LOADERS.put( key, idle );
+        }
+        idle.addFirst( loader );
+    }
+
+    /**
+     * Points the dx console streams of the given class loader at the given streams. dx versions without a console
+     * class write to the JVM's own streams instead, which is not worth failing for.
+     */
+    private static void redirectConsole( ClassLoader loader, PrintStream out, PrintStream err )
+            throws IllegalAccessException
+    {
+        final Class< ? > console;
+        try
+        {
+            console = loader.loadClass( CONSOLE );
+        }
+        catch ( ClassNotFoundException e )
+        {
+            return;
+        }
+        try
+        {
+            final Field outField = console.getField( "out" );
+            final Field errField = console.getField( "err" );
+            outField.set( null, out );
+            errField.set( null, err );
+        }
+        catch ( NoSuchFieldException e )
+        {
+            // same as a missing console class
+        }
+    }
+
+    private static void logLines( ByteArrayOutputStream output, Log log, boolean error )
+    {
+        if ( output.size() == 0 )
+        {
+            return;
+        }
+        for ( String line : output.toString().split( "\r?\n" ) )
+        {
+            if ( error )
+            {
+                log.info( line );
+            }
+            else
+            {
+                log.debug( line );
+            }
+        }
+    }
+}
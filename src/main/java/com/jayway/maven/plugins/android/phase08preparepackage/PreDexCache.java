@@ -0,0 +1,129 @@
+package com.jayway.maven.plugins.android.phase08preparepackage;
+
+import com.jayway.maven.plugins.android.common.CacheEvictor;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Content-addressed store of pre-dexed libraries, shared by all builds using the same cache directory. Entries are
+ * named after a key that covers everything the dx output depends on, so an entry never needs to be invalidated, only
+ * evicted.
+ * <p/>
+ * Several builds may use the cache at the same time. Entries are written to a temporary file in the cache directory
+ * and renamed into place, so readers only ever see complete entries. Two writers racing for the same key produce the
+ * same content, so whichever rename wins is fine. A reader losing an entry to eviction just treats it as a miss.
+ *
+ * @see DexMojo
+ */
+public class PreDexCache
+{
+    private static final String ENTRY_SUFFIX = ".jar";
+    private static final String TEMP_SUFFIX = CacheEvictor.TEMP_SUFFIX;
+
+    private final File directory;
+    private final long maxSize;
+    private final Log log;
+
+    /**
+     * @param directory the cache directory, created on first store.
+     * @param maxSize   the size in bytes above which the least recently used entries are evicted.
+     * @param log       where to report cache problems. These never fail the build.
+     */
+    public PreDexCache( File directory, long maxSize, Log log )
+    {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.log = log;
+    }
+
+    /**
+     * Copies the cached entry for a key to the target file, if there is one. A hit marks the entry as recently used.
+     *
+     * @param key    the cache key.
+     * @param target where to put the pre-dexed jar.
+     * @return <code>true</code> if the target was created from the cache.
+     */
+    public boolean fetch( String key, File target )
+    {
+        final File entry = entryFile( key );
+        if ( !entry.isFile() )
+        {
+            return false;
+        }
+        final File temp = new File( target.getPath() + TEMP_SUFFIX );
+        try
+        {
+            FileUtils.copyFile( entry, temp, false );
+            if ( !target.delete() && target.exists() || !temp.renameTo( target ) )
+            {
+                throw new IOException( "Could not rename " + temp + " to " + target );
+            }
+            CacheEvictor.touch( entry );
+            return true;
+        }
+        catch ( IOException e )
+        {
+            log.debug( "Could not fetch " + entry + " from the pre-dex cache", e );
+            return false;
+        }
+        finally
+        {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Publishes a freshly pre-dexed jar under the given key. Failing to store is logged and otherwise ignored.
+     *
+     * @param key      the cache key.
+     * @param dexedJar the pre-dexed jar.
+     */
+    public void store( String key, File dexedJar )
+    {
+        final File entry = entryFile( key );
+        if ( entry.isFile() )
+        {
+            CacheEvictor.touch( entry );
+            return;
+        }
+        File temp = null;
+        try
+        {
+            FileUtils.forceMkdir( directory );
+            temp = File.createTempFile( key + ".", TEMP_SUFFIX, directory );
+            FileUtils.copyFile( dexedJar, temp, false );
+            if ( !temp.renameTo( entry ) && !entry.isFile() )
+            {
+                log.warn( "Could not store " + dexedJar.getName() + " in the pre-dex cache at " + directory );
+            }
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Could not store " + dexedJar.getName() + " in the pre-dex cache at " + directory, e );
+        }
+        finally
+        {
+            if ( temp != null )
+            {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits in its maximum size again, along with temporary
+     * files abandoned by builds that did not finish.
+     */
+    public void evict()
+    {
+        CacheEvictor.evict( directory, 0, maxSize, log );
+    }
+
+    private File entryFile( String key )
+    {
+        return new File( directory, key + ENTRY_SUFFIX );
+    }
+}
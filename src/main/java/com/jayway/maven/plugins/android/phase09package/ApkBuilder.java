@@ -231,6 +231,35 @@ public class ApkBuilder
         }
     }
 
+    /**
+     * Gets the location of the debug keystore the SDK signs debug builds with. The class must be initialized before
+     * calling this method.
+     *
+     * @return the debug keystore, which may not exist yet if nothing was ever signed with it.
+     * @throws MojoExecutionException if the class was not initialized, or if the reflective call failed.
+     */
+    public static File getDebugKeystore() throws MojoExecutionException
+    {
+        if ( getDebugKeyStoreMethod == null )
+        {
+            throw new MojoExecutionException( "The APKBuilder class was not initialized" );
+        }
+        try
+        {
+            return new File( ( String ) getDebugKeyStoreMethod.invoke( null, new Object[ 0 ] ) );
+        }
+        catch ( InvocationTargetException e )
+        {
+            log.error( "Cannot get the debug keystore", e.getCause() );
+            throw new MojoExecutionException( "Cannot get the debug keystore", e.getCause() );
+        }
+        catch ( Exception e )
+        {
+            log.error( "Cannot get the debug keystore", e );
+            throw new MojoExecutionException( "Cannot get the debug keystore", e );
+        }
+    }
+
     /**
      * Enables / Disables the debug mode.
      *
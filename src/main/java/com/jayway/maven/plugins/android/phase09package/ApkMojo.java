@@ -21,13 +21,22 @@ import com.jayway.maven.plugins.android.AndroidNdk;
 import com.jayway.maven.plugins.android.AndroidSigner;
 import com.jayway.maven.plugins.android.CommandExecutor;
 import com.jayway.maven.plugins.android.ExecutionException;
+import com.jayway.maven.plugins.android.common.DigestHelper;
+import com.jayway.maven.plugins.android.common.DirectorySynchronizer;
 import com.jayway.maven.plugins.android.common.NativeHelper;
+import com.jayway.maven.plugins.android.common.PathMatcher;
+import com.jayway.maven.plugins.android.common.RawZipEntry;
+import com.jayway.maven.plugins.android.common.RawZipFile;
+import com.jayway.maven.plugins.android.common.RawZipWriter;
+import com.jayway.maven.plugins.android.common.ZipAligner;
 import com.jayway.maven.plugins.android.config.ConfigHandler;
 import com.jayway.maven.plugins.android.config.ConfigPojo;
 import com.jayway.maven.plugins.android.config.PullParameter;
 import com.jayway.maven.plugins.android.configuration.Apk;
 import com.jayway.maven.plugins.android.configuration.Sign;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.filefilter.DirectoryFileFilter;
 import org.apache.commons.io.filefilter.FileFileFilter;
 import org.apache.commons.io.filefilter.FileFilterUtils;
@@ -37,30 +46,27 @@ import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.codehaus.plexus.util.AbstractScanner;
-import org.codehaus.plexus.util.DirectoryScanner;
-import org.codehaus.plexus.util.SelectorUtils;
 
 import java.io.File;
 import java.io.FileFilter;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
 
 import static com.jayway.maven.plugins.android.common.AndroidExtension.APK;
 import static com.jayway.maven.plugins.android.common.AndroidExtension.APKLIB;
@@ -85,6 +91,10 @@ public class ApkMojo extends AbstractAndroidMojo
      * <pre>
      * &lt;sign&gt;
      *     &lt;debug&gt;auto&lt;/debug&gt;
+     *     &lt;keystore&gt;${user.home}/release.keystore&lt;/keystore&gt;
+     *     &lt;storepass&gt;...&lt;/storepass&gt;
+     *     &lt;alias&gt;release&lt;/alias&gt;
+     *     &lt;keypass&gt;...&lt;/keypass&gt;
      * &lt;/sign&gt;
      * </pre>
      * <p>Valid values for <code>&lt;debug&gt;</code> are:
@@ -92,11 +102,13 @@ public class ApkMojo extends AbstractAndroidMojo
      * <li><code>true</code> = sign with the debug keystore.
      * <li><code>false</code> = don't sign with the debug keystore.
      * <li><code>both</code> = create a signed as well as an unsigned apk.
-     * <li><code>auto</code> (default) = sign with debug keystore, unless another keystore is defined. (Signing with
-     * other keystores is not yet implemented. See
-     * <a href="http://code.google.com/p/maven-android-plugin/issues/detail?id=2">Issue 2</a>.)
+     * <li><code>auto</code> (default) = sign with debug keystore, unless a release keystore is defined.
      * </ul></p>
-     * <p>Can also be configured from command-line with parameter <code>-Dandroid.sign.debug</code>.</p>
+     * <p>When <code>&lt;keystore&gt;</code> is defined, the apk is signed with that release key unless
+     * <code>&lt;debug&gt;</code> is <code>true</code>. The key password defaults to the keystore password.</p>
+     * <p>Can also be configured from command-line with parameters <code>-Dandroid.sign.debug</code>,
+     * <code>-Dandroid.sign.keystore</code>, <code>-Dandroid.sign.storepass</code>, <code>-Dandroid.sign.alias</code>
+     * and <code>-Dandroid.sign.keypass</code>.</p>
      *
      * @parameter
      */
@@ -112,6 +124,46 @@ public class ApkMojo extends AbstractAndroidMojo
      */
     private String signDebug;
 
+    /**
+     * <p>Parameter designed to pick up <code>-Dandroid.sign.keystore</code> in case there is no pom with a
+     * <code>&lt;sign&gt;</code> configuration tag.</p>
+     * <p>Corresponds to {@link com.jayway.maven.plugins.android.configuration.Sign#keystore}.</p>
+     *
+     * @parameter expression="${android.sign.keystore}"
+     * @readonly
+     */
+    private String signKeystore;
+
+    /**
+     * <p>Parameter designed to pick up <code>-Dandroid.sign.storepass</code> in case there is no pom with a
+     * <code>&lt;sign&gt;</code> configuration tag.</p>
+     * <p>Corresponds to {@link com.jayway.maven.plugins.android.configuration.Sign#storepass}.</p>
+     *
+     * @parameter expression="${android.sign.storepass}"
+     * @readonly
+     */
+    private String signStorepass;
+
+    /**
+     * <p>Parameter designed to pick up <code>-Dandroid.sign.alias</code> in case there is no pom with a
+     * <code>&lt;sign&gt;</code> configuration tag.</p>
+     * <p>Corresponds to {@link com.jayway.maven.plugins.android.configuration.Sign#alias}.</p>
+     *
+     * @parameter expression="${android.sign.alias}"
+     * @readonly
+     */
+    private String signAlias;
+
+    /**
+     * <p>Parameter designed to pick up <code>-Dandroid.sign.keypass</code> in case there is no pom with a
+     * <code>&lt;sign&gt;</code> configuration tag.</p>
+     * <p>Corresponds to {@link com.jayway.maven.plugins.android.configuration.Sign#keypass}.</p>
+     *
+     * @parameter expression="${android.sign.keypass}"
+     * @readonly
+     */
+    private String signKeypass;
+
     /**
      * <p>Rewrite the manifest so that all of its instrumentation components target the given package.
      * This value will be passed on to the aapt parameter --rename-instrumentation-target-package.
@@ -214,6 +266,118 @@ public class ApkMojo extends AbstractAndroidMojo
     @PullParameter( defaultValue = "false" )
     private Boolean apkDebug;
 
+    /**
+     * Packages the apk with the SDK's ApkBuilder from <code>sdklib.jar</code> instead of the built-in apk writer.
+     * The built-in writer copies the entries of the resource archive and of embedded jars without recompressing
+     * them, and does not need sdklib.
+     *
+     * @parameter expression="${android.apk.useSdkBuilder}"
+     */
+    @PullParameter( defaultValue = "false" )
+    private Boolean apkUseSdkBuilder;
+
+    /**
+     * Whether <code>classes.dex</code> is deflated in the apk. Only used by the built-in apk writer.
+     *
+     * @parameter expression="${android.apk.compressDex}"
+     */
+    @PullParameter( defaultValue = "true" )
+    private Boolean apkCompressDex;
+
+    /**
+     * Whether native libraries are deflated in the apk. Only used by the built-in apk writer.
+     *
+     * @parameter expression="${android.apk.compressNativeLibraries}"
+     */
+    @PullParameter( defaultValue = "true" )
+    private Boolean apkCompressNativeLibraries;
+
+    /**
+     * Number of threads compressing the files added to the apk, 0 for one per processor. Only used by the built-in
+     * apk writer.
+     *
+     * @parameter expression="${android.apk.compressionThreads}"
+     */
+    @PullParameter( defaultValue = "0" )
+    private Integer apkCompressionThreads;
+
+    /**
+     * Maximum size in megabytes of the files read and compressed ahead of being written to the apk. Only used by
+     * the built-in apk writer.
+     *
+     * @parameter expression="${android.apk.compressionMemoryLimit}"
+     */
+    @PullParameter( defaultValue = "128" )
+    private Integer apkCompressionMemoryLimit;
+
+    /**
+     * Extensions of files stored without compression in the apk because they are compressed already. Defaults to
+     * the media formats aapt does not compress either, like png, jpg, ogg and mp3. Only used by the built-in apk
+     * writer.
+     *
+     * @parameter
+     */
+    @PullParameter( defaultValueGetterMethod = "getDefaultStoredExtensions" )
+    private String[] apkStoredExtensions;
+
+    /**
+     * Crunches the PNG images of the resources before running aapt, which then packages them with
+     * <code>--no-crunch</code>. Every distinct image is crunched once with <code>aapt singleCrunch</code> and kept in
+     * {@link #apkCrunchCache}, so later builds only crunch new or changed images, on all processors. Needs the aapt
+     * of build tools 17 or later.
+     *
+     * @parameter expression="${android.apk.preCrunch}"
+     */
+    @PullParameter( defaultValue = "false" )
+    private Boolean apkPreCrunch;
+
+    /**
+     * Directory of the crunched images, keyed by their content. Can be shared by all modules and branches built on
+     * a machine. Defaults to <code>~/.android/png-crunch-cache</code>.
+     *
+     * @parameter expression="${android.apk.crunchCache}"
+     */
+    @PullParameter( defaultValueGetterMethod = "getDefaultCrunchCache" )
+    private File apkCrunchCache;
+
+    /**
+     * Maximum size of {@link #apkCrunchCache} in megabytes. The least recently used images are evicted beyond it.
+     * Defaults to 512.
+     *
+     * @parameter expression="${android.apk.crunchCacheSize}"
+     */
+    @PullParameter( defaultValue = "512" )
+    private Integer apkCrunchCacheSize;
+
+    /**
+     * Stores native libraries uncompressed in the apk, with their data aligned on 4096 byte pages, so that the device
+     * loads them directly from the apk instead of extracting them at install time. Which libraries are selected is
+     * controlled by {@link #apkPageAlignIncludes} and {@link #apkPageAlignExcludes}. The alignment is verified after
+     * packaging and the build fails if it is lost. Only used by the built-in apk writer.
+     *
+     * @parameter expression="${android.apk.pageAlignNativeLibraries}"
+     */
+    @PullParameter( defaultValue = "false" )
+    private Boolean apkPageAlignNativeLibraries;
+
+    /**
+     * Patterns of the native libraries to store page aligned, matched against their path in the apk. Use the ABI
+     * folder to select libraries per ABI, e.g. <code>lib/armeabi-v7a/*.so</code>. Defaults to all libraries.
+     *
+     * @parameter
+     */
+    @PullParameter( defaultValueGetterMethod = "getDefaultPageAlignIncludes" )
+    private String[] apkPageAlignIncludes;
+
+    /**
+     * Patterns of the native libraries to compress even though they match {@link #apkPageAlignIncludes}, e.g.
+     * <code>lib/armeabi/*.so</code> to keep the libraries of one ABI compressed.
+     *
+     * @parameter
+     */
+    @PullParameter( defaultValueGetterMethod = "getDefaultPageAlignExcludes" )
+    private String[] apkPageAlignExcludes;
+
     /**
      * @parameter expression="${android.nativeToolchain}"
      */
@@ -284,22 +448,38 @@ public class ApkMojo extends AbstractAndroidMojo
         
         // Initialize apk build configuration
         File outputFile = new File( project.getBuild().getDirectory(), project.getBuild().getFinalName() + "." + APK );
-        final boolean signWithDebugKeyStore = getAndroidSigner().isSignWithDebugKeyStore();
+        final AndroidSigner androidSigner = getAndroidSigner();
+        final boolean signApk = androidSigner.isSignWithDebugKeyStore() || androidSigner.isSignWithReleaseKeyStore();
 
-        if ( getAndroidSigner().shouldCreateBothSignedAndUnsignedApk() )
+        if ( androidSigner.shouldCreateBothSignedAndUnsignedApk() )
         {
-            getLog().info( "Creating debug key signed apk file " + outputFile );
-            createApkFile( outputFile, true );
             final File unsignedOutputFile = new File( project.getBuild().getDirectory(),
                     project.getBuild().getFinalName() + "-unsigned." + APK );
-            getLog().info( "Creating additional unsigned apk file " + unsignedOutputFile );
+            getLog().info( "Creating unsigned apk file " + unsignedOutputFile );
             createApkFile( unsignedOutputFile, false );
+            // the signed apk only differs by its signature, so sign a copy instead of packaging everything again
+            if ( androidSigner.isSignWithReleaseKeyStore() )
+            {
+                getLog().info( "Creating release key signed apk file " + outputFile + " from the unsigned apk" );
+                signApkFile( unsignedOutputFile, outputFile, createReleaseSigner() );
+            }
+            else
+            {
+                getLog().info( "Creating debug key signed apk file " + outputFile + " from the unsigned apk" );
+                signApkFile( unsignedOutputFile, outputFile, createDebugSigner() );
+            }
             projectHelper.attachArtifact( project, unsignedOutputFile,
                     classifier == null ? "unsigned" : classifier + "_unsigned" );
         }
         else
         {
-            createApkFile( outputFile, signWithDebugKeyStore );
+            createApkFile( outputFile, signApk );
+        }
+
+        // checks the apk that is attached, after any signing pass that rewrote it
+        if ( apkPageAlignNativeLibraries && ! apkUseSdkBuilder )
+        {
+            verifyPageAlignedNativeLibraries( outputFile );
         }
 
         if ( classifier == null )
@@ -314,8 +494,118 @@ public class ApkMojo extends AbstractAndroidMojo
         }
     }
 
-    void createApkFile( File outputFile, boolean signWithDebugKeyStore ) throws MojoExecutionException
+    /**
+     * @return the location of the debug keystore of the SDK, which may not exist yet.
+     */
+    private File getDebugKeystore()
+    {
+        try
+        {
+            initializeAPKBuilder();
+            return ApkBuilder.getDebugKeystore();
+        }
+        catch ( Throwable e )
+        {
+            // sdklib is not available, look where it would have created the keystore
+            getLog().debug( "Debug keystore not available from sdklib", e );
+            final String androidSdkHome = System.getenv( "ANDROID_SDK_HOME" );
+            return new File( androidSdkHome != null ? androidSdkHome : System.getProperty( "user.home" ),
+                    ".android" + File.separator + "debug.keystore" );
+        }
+    }
+
+    /**
+     * @return a signer using the debug key, creating the debug keystore like the SDK does when it is missing.
+     * @throws MojoExecutionException if the debug keystore cannot be created or read.
+     */
+    private ApkSigner createDebugSigner() throws MojoExecutionException
+    {
+        final File debugKeystore = getDebugKeystore();
+        if ( !debugKeystore.isFile() )
+        {
+            getLog().info( "Creating the debug keystore " + debugKeystore );
+        }
+        try
+        {
+            return ApkSigner.fromDebugKeystore( debugKeystore );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not create or read the debug keystore " + debugKeystore, e );
+        }
+        catch ( GeneralSecurityException e )
+        {
+            throw new MojoExecutionException( "Could not load the debug key from " + debugKeystore, e );
+        }
+    }
+
+    private ApkSigner createReleaseSigner() throws MojoExecutionException
+    {
+        final File keystore = new File( getSignParameter( sign == null ? null : sign.getKeystore(), signKeystore ) );
+        final String storepass = getSignParameter( sign == null ? null : sign.getStorepass(), signStorepass );
+        final String alias = getSignParameter( sign == null ? null : sign.getAlias(), signAlias );
+        final String keypass = getSignParameter( sign == null ? null : sign.getKeypass(), signKeypass );
+        if ( storepass == null || alias == null )
+        {
+            throw new MojoExecutionException( "android.sign.storepass and android.sign.alias must be set to sign with "
+                    + keystore );
+        }
+        try
+        {
+            return ApkSigner.fromKeystore( keystore, storepass, alias, keypass != null ? keypass : storepass );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not read " + keystore, e );
+        }
+        catch ( GeneralSecurityException e )
+        {
+            throw new MojoExecutionException( "Could not load the key " + alias + " from " + keystore, e );
+        }
+    }
+
+    /**
+     * @return the value from the <code>&lt;sign&gt;</code> configuration tag, or else the one from the command line.
+     */
+    private static String getSignParameter( String configured, String commandLine )
+    {
+        return configured != null ? configured : commandLine;
+    }
+
+    private void signApkFile( File unsignedApk, File signedApk, ApkSigner signer ) throws MojoExecutionException
+    {
+        try
+        {
+            signer.sign( unsignedApk, signedApk );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not sign " + unsignedApk, e );
+        }
+        catch ( GeneralSecurityException e )
+        {
+            throw new MojoExecutionException( "Could not sign " + unsignedApk, e );
+        }
+    }
+
+    /**
+     * Signs an apk in place, for the packaging paths that cannot sign with a release key themselves.
+     */
+    private void signApkFileInPlace( File apk, ApkSigner signer ) throws MojoExecutionException
     {
+        final File signedApk = new File( apk.getParentFile(), apk.getName() + ".signed" );
+        signApkFile( apk, signedApk, signer );
+        if ( ! apk.delete() || ! signedApk.renameTo( apk ) )
+        {
+            throw new MojoExecutionException( "Could not replace " + apk + " with " + signedApk );
+        }
+    }
+
+    void createApkFile( File outputFile, boolean signApk ) throws MojoExecutionException
+    {
+        final boolean signWithReleaseKeyStore = signApk && getAndroidSigner().isSignWithReleaseKeyStore();
+        // the SDK builders only know the debug key, they leave release signing to a pass of its own
+        final boolean signWithDebugKeyStore = signApk && ! signWithReleaseKeyStore;
         File dexFile = new File( project.getBuild().getDirectory(), "classes.dex" );
         File zipArchive = new File( project.getBuild().getDirectory(), project.getBuild().getFinalName() + ".ap_" );
         ArrayList<File> sourceFolders = new ArrayList<File>();
@@ -330,23 +620,38 @@ public class ApkMojo extends AbstractAndroidMojo
         ArrayList<File> nativeFolders = new ArrayList<File>();
 
         boolean useInternalAPKBuilder = true;
-        try
-        {
-            initializeAPKBuilder();
-            // Ok...
-            // So we can try to use the internal ApkBuilder
-        }
-        catch ( Throwable e )
+        if ( apkUseSdkBuilder )
         {
-            // Not supported platform try to old way.
-            useInternalAPKBuilder = false;
+            try
+            {
+                initializeAPKBuilder();
+                // Ok...
+                // So we can try to use the internal ApkBuilder
+            }
+            catch ( Throwable e )
+            {
+                // Not supported platform try to old way.
+                useInternalAPKBuilder = false;
+            }
         }
 
         // Process the native libraries, looking both in the current build directory as well as
         // at the dependencies declared in the pom.  Currently, all .so files are automatically included
         processNativeLibraries( nativeFolders );
-        
-        if ( useInternalAPKBuilder )
+
+        if ( apkUseSdkBuilder && apkPageAlignNativeLibraries )
+        {
+            getLog().warn( "Native libraries can only be page aligned by the built-in apk writer, "
+                    + "ignoring apkPageAlignNativeLibraries" );
+        }
+
+        if ( ! apkUseSdkBuilder )
+        {
+            doAPKWithApkWriter( outputFile, dexFile, zipArchive, sourceFolders, jarFiles, nativeFolders,
+                    signWithReleaseKeyStore ? createReleaseSigner()
+                            : signWithDebugKeyStore ? createDebugSigner() : null );
+        }
+        else if ( useInternalAPKBuilder )
         {
             doAPKWithAPKBuilder( outputFile, dexFile, zipArchive, sourceFolders, jarFiles, nativeFolders,
                     signWithDebugKeyStore );
@@ -357,7 +662,8 @@ public class ApkMojo extends AbstractAndroidMojo
                     signWithDebugKeyStore );
         }
 
-        if ( this.apkMetaIncludes != null && this.apkMetaIncludes.length > 0 )
+        // the built-in apk writer adds the META-INF resources while packaging
+        if ( apkUseSdkBuilder && hasMetaIncludes() )
         {
             try
             {
@@ -368,25 +674,83 @@ public class ApkMojo extends AbstractAndroidMojo
                 throw new MojoExecutionException( "Could not add META-INF resources.", e );
             }
         }
+
+        if ( signWithReleaseKeyStore && apkUseSdkBuilder )
+        {
+            signApkFileInPlace( outputFile, createReleaseSigner() );
+        }
     }
 
-    private void addMetaInf( File outputFile, ArrayList<File> jarFiles ) throws IOException
+    private boolean hasMetaIncludes()
     {
-        File tmp = File.createTempFile( outputFile.getName(), ".add", outputFile.getParentFile() );
+        return apkMetaIncludes != null && apkMetaIncludes.length > 0;
+    }
 
-        FileOutputStream fos = new FileOutputStream( tmp );
-        ZipOutputStream zos = new ZipOutputStream( fos );
-        Set<String> entries = new HashSet<String>();
+    /**
+     * Adds the META-INF resources of the embedded jars to an apk built by the SDK builder. All entries are copied
+     * without recompressing them.
+     */
+    private void addMetaInf( File outputFile, ArrayList<File> jarFiles ) throws IOException
+    {
+        final File tmp = File.createTempFile( outputFile.getName(), ".add", outputFile.getParentFile() );
+        final PathMatcher metaInf = new PathMatcher( "META-INF/", apkMetaIncludes );
+        final Set<String> entries = new HashSet<String>();
 
-        updateWithMetaInf( zos, outputFile, entries, false );
+        final RawZipWriter writer = new RawZipWriter( tmp );
+        try
+        {
+            final RawZipFile apk = new RawZipFile( outputFile );
+            try
+            {
+                for ( RawZipEntry entry : apk.getEntries() )
+                {
+                    if ( ! entry.isDirectory() )
+                    {
+                        entries.add( entry.getName() );
+                        writer.copy( apk, entry );
+                    }
+                }
+            }
+            finally
+            {
+                apk.close();
+            }
 
-        for ( File f : jarFiles )
+            for ( File jarFile : jarFiles )
+            {
+                final RawZipFile jar = new RawZipFile( jarFile );
+                try
+                {
+                    for ( RawZipEntry entry : jar.getEntries() )
+                    {
+                        final String name = entry.getName();
+                        if ( entry.isDirectory() || ! name.startsWith( "META-INF/" ) || ! metaInf.matches( name ) )
+                        {
+                            continue;
+                        }
+                        if ( ! entries.add( name ) )
+                        {
+                            if ( this.extractDuplicates )
+                            {
+                                continue;
+                            }
+                            throw new IOException( "Duplicate entry " + name + " in " + jarFile );
+                        }
+                        writer.copy( jar, entry );
+                    }
+                }
+                finally
+                {
+                    jar.close();
+                }
+            }
+            writer.close();
+        }
+        finally
         {
-            updateWithMetaInf( zos, f, entries, true );
+            IOUtils.closeQuietly( writer );
         }
 
-        zos.close();
-
         outputFile.delete();
 
         if ( ! tmp.renameTo( outputFile ) )
@@ -395,90 +759,131 @@ public class ApkMojo extends AbstractAndroidMojo
         }
     }
 
-    private void updateWithMetaInf( ZipOutputStream zos, File jarFile, Set<String> entries, boolean metaInfOnly )
-            throws IOException
+    /**
+     * Lists the entries of the given jars from their central directories only, reading the jars in parallel.
+     * META-INF entries and directories are left out.
+     *
+     * @return the jars containing each entry, in the order of the given jars.
+     */
+    private Map<String, List<File>> indexJarEntries( List<File> jarFiles ) throws MojoExecutionException
     {
-        ZipFile zin = new ZipFile( jarFile );
-
-        for ( Enumeration<? extends ZipEntry> en = zin.entries(); en.hasMoreElements(); )
+        final Map<File, Future<List<String>>> futures = new LinkedHashMap<File, Future<List<String>>>();
+        final int workers = Math.max( 1, Math.min( Runtime.getRuntime().availableProcessors(), jarFiles.size() ) );
+        final ExecutorService pool = Executors.newFixedThreadPool( workers );
+        try
         {
-            ZipEntry ze = en.nextElement();
-
-            if ( ze.isDirectory() )
+            for ( final File jar : jarFiles )
             {
-                continue;
+                futures.put( jar, pool.submit( new Callable<List<String>>()
+                {
+                    @Override
+                    public List<String> call() throws IOException
+                    {
+                        final List<String> names = new ArrayList<String>();
+                        final RawZipFile zip = new RawZipFile( jar );
+                        try
+                        {
+                            for ( RawZipEntry entry : zip.getEntries() )
+                            {
+                                if ( ! ( entry.getName().contains( "META-INF/" ) || entry.isDirectory() ) )
+                                {
+                                    names.add( entry.getName() );
+                                }
+                            }
+                        }
+                        finally
+                        {
+                            zip.close();
+                        }
+                        return names;
+                    }
+                } ) );
             }
 
-            String zn = ze.getName();
-
-            if ( metaInfOnly )
+            final Map<String, List<File>> index = new LinkedHashMap<String, List<File>>();
+            for ( Map.Entry<File, Future<List<String>>> future : futures.entrySet() )
             {
-                if ( ! zn.startsWith( "META-INF/" ) )
+                final File jar = future.getKey();
+                final List<String> names;
+                try
                 {
-                    continue;
+                    names = future.getValue().get();
                 }
-
-                if ( this.extractDuplicates && ! entries.add( zn ) )
+                catch ( java.util.concurrent.ExecutionException e )
                 {
+                    getLog().warn( "Cannot compute duplicates files from " + jar.getAbsolutePath(), e.getCause() );
                     continue;
                 }
-
-                if ( ! metaInfMatches( zn ) )
+                catch ( InterruptedException e )
                 {
-                    continue;
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException( "Interrupted while looking for duplicate files", e );
+                }
+                for ( String name : names )
+                {
+                    List<File> l = index.get( name );
+                    if ( l == null )
+                    {
+                        l = new ArrayList<File>( 1 );
+                        index.put( name, l );
+                    }
+                    l.add( jar );
                 }
             }
-
-            zos.putNextEntry( new ZipEntry( zn ) );
-
-            InputStream is = zin.getInputStream( ze );
-
-            copyStreamWithoutClosing( is, zos );
-
-            is.close();
-            zos.closeEntry();
+            return index;
+        }
+        finally
+        {
+            pool.shutdownNow();
         }
-
-        zin.close();
     }
 
-    private boolean metaInfMatches( String path )
+    /**
+     * Creates the APK file using the internal APKBuilder.
+     *
+     * @param outputFile            the output file
+     * @param dexFile               the dex file
+     * @param zipArchive            the classes folder
+     * @param sourceFolders         the resources
+     * @param jarFiles              the embedded java files
+     * @param nativeFolders         the native folders
+     * @param signWithDebugKeyStore enables the signature of the APK using the debug key
+     * @throws MojoExecutionException if the APK cannot be created.
+     */
+    private void doAPKWithAPKBuilder( File outputFile, File dexFile, File zipArchive, ArrayList<File> sourceFolders,
+                                      ArrayList<File> jarFiles, ArrayList<File> nativeFolders,
+                                      boolean signWithDebugKeyStore ) throws MojoExecutionException
     {
-        for ( String inc : this.apkMetaIncludes )
+        getLog().debug( "Building APK with internal APKBuilder" );
+        collectEmbeddedJars( sourceFolders, jarFiles );
+
+        ApkBuilder builder = new ApkBuilder( outputFile, zipArchive, dexFile, signWithDebugKeyStore, null );
+
+        if ( apkDebug )
         {
-            if ( SelectorUtils.matchPath( "META-INF/" + inc, path ) )
-            {
-                return true;
-            }
+            builder.setDebugMode( apkDebug );
         }
 
-        return false;
-    }
+        for ( File sourceFolder : sourceFolders )
+        {
+            builder.addSourceFolder( sourceFolder );
+        }
 
-    private Map<String, List<File>> jars = new HashMap<String, List<File>>();
+        for ( File jarFile : getJarsWithResources( jarFiles ) )
+        {
+            builder.addResourcesFromJar( jarFile );
+        }
 
-    private void computeDuplicateFiles( File jar ) throws IOException
-    {
-        ZipFile file = new ZipFile( jar );
-        Enumeration<? extends ZipEntry> list = file.entries();
-        while ( list.hasMoreElements() )
-        {
-            ZipEntry ze = list.nextElement();
-            if ( ! ( ze.getName().contains( "META-INF/" ) || ze.isDirectory() ) )
-            { // Exclude META-INF and Directories
-                List<File> l = jars.get( ze.getName() );
-                if ( l == null )
-                {
-                    l = new ArrayList<File>();
-                    jars.put( ze.getName(), l );
-                }
-                l.add( jar );
-            }
+        for ( File nativeFolder : nativeFolders )
+        {
+            builder.addNativeLibraries( nativeFolder, null );
         }
+
+        builder.sealApk();
     }
 
     /**
-     * Creates the APK file using the internal APKBuilder.
+     * Creates the APK file using the built-in {@link ApkWriter}.
      *
      * @param outputFile            the output file
      * @param dexFile               the dex file
@@ -486,51 +891,140 @@ public class ApkMojo extends AbstractAndroidMojo
      * @param sourceFolders         the resources
      * @param jarFiles              the embedded java files
      * @param nativeFolders         the native folders
-     * @param signWithDebugKeyStore enables the signature of the APK using the debug key
+     * @param signer                the signer of the APK, <code>null</code> to leave it unsigned
      * @throws MojoExecutionException if the APK cannot be created.
      */
-    private void doAPKWithAPKBuilder( File outputFile, File dexFile, File zipArchive, ArrayList<File> sourceFolders,
-                                      ArrayList<File> jarFiles, ArrayList<File> nativeFolders,
-                                      boolean signWithDebugKeyStore ) throws MojoExecutionException
+    private void doAPKWithApkWriter( File outputFile, File dexFile, File zipArchive, ArrayList<File> sourceFolders,
+                                     ArrayList<File> jarFiles, ArrayList<File> nativeFolders,
+                                     ApkSigner signer ) throws MojoExecutionException
     {
-        getLog().debug( "Building APK with internal APKBuilder" );
-        sourceFolders.add( new File( project.getBuild().getOutputDirectory() ) );
+        getLog().debug( "Building APK with the built-in apk writer" );
+        collectEmbeddedJars( sourceFolders, jarFiles );
 
-        for ( Artifact artifact : getRelevantCompileArtifacts() )
+        final ApkWriter writer = new ApkWriter( outputFile, signer, getLog() );
+        try
         {
-            if ( extractDuplicates )
+            writer.setDebugMode( apkDebug );
+            writer.setCompressNativeLibraries( apkCompressNativeLibraries );
+            writer.setCompressionThreads( apkCompressionThreads );
+            writer.setMemoryLimit( apkCompressionMemoryLimit * 1024L * 1024L );
+            writer.setStoredExtensions( apkStoredExtensions );
+            if ( apkPageAlignNativeLibraries )
             {
-                try
+                writer.setPageAlignedNativeLibraries( apkPageAlignIncludes, apkPageAlignExcludes );
+            }
+            writer.addResourceArchive( zipArchive );
+            writer.addDexFile( dexFile, apkCompressDex );
+
+            for ( File sourceFolder : sourceFolders )
+            {
+                writer.addSourceFolder( sourceFolder );
+            }
+
+            for ( File jarFile : getJarsWithResources( jarFiles ) )
+            {
+                writer.addResourcesFromJar( jarFile );
+            }
+
+            for ( File nativeFolder : nativeFolders )
+            {
+                writer.addNativeLibraries( nativeFolder );
+            }
+
+            if ( hasMetaIncludes() )
+            {
+                final PathMatcher metaInf = new PathMatcher( "META-INF/", apkMetaIncludes );
+                for ( File jarFile : jarFiles )
                 {
-                    computeDuplicateFiles( artifact.getFile() );
+                    writer.addMetaInfFromJar( jarFile, metaInf, extractDuplicates );
                 }
-                catch ( Exception e )
+            }
+
+            writer.seal();
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * Fails the build if a native library that should be loaded directly from the apk is compressed or not page
+     * aligned.
+     */
+    private void verifyPageAlignedNativeLibraries( File apkFile ) throws MojoExecutionException
+    {
+        final ApkWriter.NativeLibrarySelector selector = new ApkWriter.NativeLibrarySelector( apkPageAlignIncludes,
+                apkPageAlignExcludes );
+        final List<String> invalid = new ArrayList<String>();
+        int count = 0;
+        RawZipFile apk = null;
+        try
+        {
+            apk = new RawZipFile( apkFile );
+            for ( RawZipEntry entry : apk.getEntries() )
+            {
+                if ( ZipAligner.isNativeLibrary( entry.getName() ) && selector.matches( entry.getName() ) )
                 {
-                    getLog().warn( "Cannot compute duplicates files from " + artifact.getFile().getAbsolutePath(), e );
+                    count++;
+                    if ( entry.getMethod() != RawZipEntry.STORED
+                            || apk.getDataOffset( entry ) % ZipAligner.PAGE_ALIGNMENT != 0 )
+                    {
+                        invalid.add( entry.getName() );
+                    }
                 }
             }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not verify the native libraries of " + apkFile, e );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( apk );
+        }
+        if ( ! invalid.isEmpty() )
+        {
+            throw new MojoExecutionException( "Native libraries are not stored page aligned in " + apkFile + ": "
+                    + invalid );
+        }
+        getLog().info( "Verified " + count + " page aligned native libraries in " + apkFile.getName() );
+    }
+
+    /**
+     * Adds the output directory to the source folders and the compile artifacts to the embedded jars, without
+     * their duplicate files if {@link #extractDuplicates} is set.
+     */
+    private void collectEmbeddedJars( ArrayList<File> sourceFolders, ArrayList<File> jarFiles )
+            throws MojoExecutionException
+    {
+        sourceFolders.add( new File( project.getBuild().getOutputDirectory() ) );
+        for ( Artifact artifact : getRelevantCompileArtifacts() )
+        {
             jarFiles.add( artifact.getFile() );
         }
 
         // Check duplicates.
         if ( extractDuplicates )
         {
-            List<String> duplicates = new ArrayList<String>();
-            List<File> jarToModify = new ArrayList<File>();
-            for ( String s : jars.keySet() )
+            final List<File> jarsToIndex = new ArrayList<File>();
+            for ( File jarFile : jarFiles )
+            {
+                if ( jarFile.isFile() )
+                {
+                    jarsToIndex.add( jarFile );
+                }
+            }
+            Set<String> duplicates = new HashSet<String>();
+            Set<File> jarToModify = new LinkedHashSet<File>();
+            for ( Map.Entry<String, List<File>> entry : indexJarEntries( jarsToIndex ).entrySet() )
             {
-                List<File> l = jars.get( s );
+                List<File> l = entry.getValue();
                 if ( l.size() > 1 )
                 {
-                    getLog().warn( "Duplicate file " + s + " : " + l );
-                    duplicates.add( s );
-                    for ( int i = 1; i < l.size(); i++ )
-                    {
-                        if ( ! jarToModify.contains( l.get( i ) ) )
-                        {
-                            jarToModify.add( l.get( i ) );
-                        }
-                    }
+                    getLog().warn( "Duplicate file " + entry.getKey() + " : " + l );
+                    duplicates.add( entry.getKey() );
+                    jarToModify.addAll( l.subList( 1, l.size() ) );
                 }
             }
 
@@ -547,19 +1041,15 @@ public class ApkMojo extends AbstractAndroidMojo
 
             }
         }
+    }
 
-        ApkBuilder builder = new ApkBuilder( outputFile, zipArchive, dexFile, signWithDebugKeyStore, null );
-
-        if ( apkDebug )
-        {
-            builder.setDebugMode( apkDebug );
-        }
-
-        for ( File sourceFolder : sourceFolders )
-        {
-            builder.addSourceFolder( sourceFolder );
-        }
-
+    /**
+     * @return the embedded jars whose resources are packaged, i.e. those not excluded by
+     *         {@link #excludeJarResources}, with directories replaced by the jars they contain.
+     */
+    private List<File> getJarsWithResources( List<File> jarFiles )
+    {
+        final List<File> jarsWithResources = new ArrayList<File>();
         for ( File jarFile : jarFiles )
         {
             boolean excluded = false;
@@ -601,124 +1091,100 @@ public class ApkMojo extends AbstractAndroidMojo
 
                 for ( String filename : filenames )
                 {
-                    builder.addResourcesFromJar( new File( jarFile, filename ) );
+                    jarsWithResources.add( new File( jarFile, filename ) );
                 }
             }
             else
             {
-                builder.addResourcesFromJar( jarFile );
+                jarsWithResources.add( jarFile );
             }
         }
-
-        for ( File nativeFolder : nativeFolders )
-        {
-            builder.addNativeLibraries( nativeFolder, null );
-        }
-
-        builder.sealApk();
+        return jarsWithResources;
     }
 
-    private File removeDuplicatesFromJar( File in, List<String> duplicates )
+    /**
+     * Rewrites a jar without the given entries, copying the remaining entries without recompressing them. The
+     * rewritten jar is kept in <code>unpacked-embedded-jars</code> of the build directory under a name derived from
+     * the content of the jar and the removed entries, so that it is reused only as long as both are unchanged. Every
+     * input jar has a folder of its own there, and a new rewrite replaces the previous one of the same jar.
+     *
+     * @return the rewritten jar, or <code>null</code> if it could not be written.
+     */
+    private File removeDuplicatesFromJar( File in, Set<String> duplicates )
     {
-        String target = project.getBuild().getOutputDirectory();
-        File tmp = new File( target, "unpacked-embedded-jars" );
+        // jars of different dependencies often share a name, e.g. classes.jar
+        final File tmp = new File( new File( project.getBuild().getDirectory(), "unpacked-embedded-jars" ),
+                DigestHelper.sha256( in.getAbsolutePath() ).substring( 0, 16 ) );
         tmp.mkdirs();
-        File out = new File( tmp, in.getName() );
 
-        if ( out.exists() )
-        {
-            return out;
-        }
-        else
+        RawZipFile inZip = null;
+        RawZipWriter writer = null;
+        File partial = null;
+        try
         {
-            try
+            inZip = new RawZipFile( in );
+            final List<String> removed = new ArrayList<String>();
+            for ( RawZipEntry entry : inZip.getEntries() )
             {
-                out.createNewFile();
+                if ( duplicates.contains( entry.getName() ) )
+                {
+                    removed.add( entry.getName() );
+                }
             }
-            catch ( IOException e )
+            Collections.sort( removed );
+            final String key = DigestHelper.sha256( DigestHelper.sha256( in ),
+                    DigestHelper.sha256( removed.toArray( new String[ removed.size() ] ) ) );
+            final File out = new File( tmp, FilenameUtils.getBaseName( in.getName() ) + "-"
+                    + key.substring( 0, 16 ) + ".jar" );
+            if ( out.isFile() )
             {
-                e.printStackTrace();
+                getLog().debug( in.getName() + " already rewritten without duplicates : " + out.getAbsolutePath() );
+                return out;
             }
-        }
-
-        // Create a new Jar file
-        FileOutputStream fos = null;
-        ZipOutputStream jos = null;
-        try
-        {
-            fos = new FileOutputStream( out );
-            jos = new ZipOutputStream( fos );
-        }
-        catch ( FileNotFoundException e1 )
-        {
-            getLog().error( "Cannot remove duplicates : the output file " + out.getAbsolutePath() + " does not found" );
-            return null;
-        }
 
-        ZipFile inZip = null;
-        try
-        {
-            inZip = new ZipFile( in );
-            Enumeration<? extends ZipEntry> entries = inZip.entries();
-            while ( entries.hasMoreElements() )
+            partial = new File( out.getPath() + ".part" );
+            writer = new RawZipWriter( partial );
+            for ( RawZipEntry entry : inZip.getEntries() )
             {
-                ZipEntry entry = entries.nextElement();
                 // If the entry is not a duplicate, copy.
-                if ( ! duplicates.contains( entry.getName() ) )
+                if ( ! duplicates.contains( entry.getName() ) && ! writer.contains( entry.getName() ) )
                 {
-                    // copy the entry header to jos
-                    jos.putNextEntry( entry );
-                    InputStream currIn = inZip.getInputStream( entry );
-                    copyStreamWithoutClosing( currIn, jos );
-                    currIn.close();
-                    jos.closeEntry();
+                    writer.copy( inZip, entry );
                 }
             }
+            writer.close();
+            writer = null;
+            if ( ! partial.renameTo( out ) )
+            {
+                getLog().error( "Cannot remove duplicates : could not rename " + partial + " to " + out );
+                return null;
+            }
+            getLog().info( in.getName() + " rewritten without duplicates : " + out.getAbsolutePath() );
+            for ( File superseded : tmp.listFiles() )
+            {
+                if ( ! superseded.equals( out ) && superseded.getName().endsWith( ".jar" ) )
+                {
+                    superseded.delete();
+                }
+            }
+            return out;
         }
         catch ( IOException e )
         {
             getLog().error( "Cannot removing duplicates : " + e.getMessage() );
             return null;
         }
-
-        try
+        finally
         {
-            if ( inZip != null )
+            IOUtils.closeQuietly( writer );
+            IOUtils.closeQuietly( inZip );
+            if ( partial != null )
             {
-                inZip.close();
+                partial.delete();
             }
-            jos.close();
-            fos.close();
-            jos = null;
-            fos = null;
-        }
-        catch ( IOException e )
-        {
-            // ignore it.
-        }
-        getLog().info( in.getName() + " rewritten without duplicates : " + out.getAbsolutePath() );
-        return out;
-    }
-
-    /**
-     * Copies an input stream into an output stream but does not close the streams.
-     *
-     * @param in  the input stream
-     * @param out the output stream
-     * @throws IOException if the stream cannot be copied
-     */
-    private static void copyStreamWithoutClosing( InputStream in, OutputStream out ) throws IOException
-    {
-        final int bufferSize = 4096;
-        byte[] b = new byte[ bufferSize ];
-        int n;
-        while ( ( n = in.read( b ) ) != - 1 )
-        {
-            out.write( b, 0, n );
         }
     }
 
-
     /**
      * Creates the APK file using the command line.
      *
@@ -790,40 +1256,23 @@ public class ApkMojo extends AbstractAndroidMojo
         ApkBuilder.initialize( getLog(), file );
     }
 
+    /**
+     * Adds the native library directories to package. Native dependencies are resolved and the library directories
+     * are examined once per execution; each NDK architecture is then only a lookup in the resolved artifacts.
+     */
     private void processNativeLibraries( final List<File> natives ) throws MojoExecutionException
-    {
-        for ( String ndkArchitecture : AndroidNdk.NDK_ARCHITECTURES )
-        {
-            processNativeLibraries( natives, ndkArchitecture );
-        }
-    }
-
-    private void addNativeDirectory( final List<File> natives, final File nativeDirectory )
-    {
-        if ( ! natives.contains( nativeDirectory ) )
-        {
-            natives.add( nativeDirectory );
-        }
-    }
-
-    private void processNativeLibraries( final List<File> natives, String ndkArchitecture )
-            throws MojoExecutionException
     {
         // Examine the native libraries directory for content. This will only be true if:
         // a) the directory exists
         // b) it contains at least 1 file
-        final boolean hasValidNativeLibrariesDirectory = nativeLibrariesDirectory != null
-                && nativeLibrariesDirectory.exists()
-                && ( nativeLibrariesDirectory.listFiles() != null && nativeLibrariesDirectory.listFiles().length > 0 );
+        final boolean hasValidNativeLibrariesDirectory = hasFiles( nativeLibrariesDirectory );
 
         // Retrieve any native dependencies or attached artifacts.  This may include artifacts from the ndk-build MOJO
         NativeHelper nativeHelper = new NativeHelper( project, projectRepos, repoSession, repoSystem, artifactFactory,
                 getLog() );
         final Set<Artifact> artifacts = nativeHelper.getNativeDependenciesArtifacts( unpackedApkLibsDirectory, true );
 
-        final boolean hasValidBuildNativeLibrariesDirectory = nativeLibrariesOutputDirectory.exists() && (
-                nativeLibrariesOutputDirectory.listFiles() != null
-                && nativeLibrariesOutputDirectory.listFiles().length > 0 );
+        final boolean hasValidBuildNativeLibrariesDirectory = hasFiles( nativeLibrariesOutputDirectory );
 
         if ( artifacts.isEmpty() && hasValidNativeLibrariesDirectory && ! hasValidBuildNativeLibrariesDirectory )
         {
@@ -836,74 +1285,57 @@ public class ApkMojo extends AbstractAndroidMojo
 
             // FIXME: This would pollute a libs folder which is under source control
             // FIXME: Would be better to not support this case?
-            optionallyCopyGdbServer( nativeLibrariesDirectory, ndkArchitecture );
-
+            for ( String ndkArchitecture : AndroidNdk.NDK_ARCHITECTURES )
+            {
+                optionallyCopyGdbServer( nativeLibrariesDirectory, ndkArchitecture );
+            }
         }
-        else
+        else if ( ! artifacts.isEmpty() || hasValidNativeLibrariesDirectory )
         {
-            if ( ! artifacts.isEmpty() || hasValidNativeLibrariesDirectory )
-            {
-                // In this case, we may have both .so files in it's normal location
-                // as well as .so dependencies
+            // In this case, we may have both .so files in it's normal location
+            // as well as .so dependencies
 
-                // Create the ${project.build.outputDirectory}/libs
-                final File destinationDirectory = new File( nativeLibrariesOutputDirectory.getAbsolutePath() );
-                destinationDirectory.mkdirs();
+            // Create the ${project.build.outputDirectory}/libs
+            final File destinationDirectory = new File( nativeLibrariesOutputDirectory.getAbsolutePath() );
+            destinationDirectory.mkdirs();
 
-                // Point directly to the directory
-                addNativeDirectory( natives, destinationDirectory );
+            // Point directly to the directory
+            addNativeDirectory( natives, destinationDirectory );
+
+            // If we have a valid native libs, copy those files - these already come in the structure required
+            if ( hasValidNativeLibrariesDirectory )
+            {
+                copyLocalNativeLibraries( nativeLibrariesDirectory, destinationDirectory );
+            }
 
-                // If we have a valid native libs, copy those files - these already come in the structure required
-                if ( hasValidNativeLibrariesDirectory )
+            // Index the shared libraries by architecture, apklibs bring their own libs folder
+            final Map<String, List<Artifact>> sharedLibraries = new HashMap<String, List<Artifact>>();
+            for ( Artifact resolvedArtifact : artifacts )
+            {
+                if ( "so".equals( resolvedArtifact.getType() ) )
+                {
+                    List<Artifact> architectureLibraries = sharedLibraries.get( resolvedArtifact.getClassifier() );
+                    if ( architectureLibraries == null )
+                    {
+                        architectureLibraries = new ArrayList<Artifact>();
+                        sharedLibraries.put( resolvedArtifact.getClassifier(), architectureLibraries );
+                    }
+                    architectureLibraries.add( resolvedArtifact );
+                }
+                else if ( APKLIB.equals( resolvedArtifact.getType() ) )
                 {
-                    copyLocalNativeLibraries( nativeLibrariesDirectory, destinationDirectory );
+                    addNativeDirectory( natives, new File( getLibraryUnpackDirectory( resolvedArtifact ) + "/libs" ) );
                 }
+            }
 
-                if ( ! artifacts.isEmpty() )
+            for ( String ndkArchitecture : AndroidNdk.NDK_ARCHITECTURES )
+            {
+                final List<Artifact> architectureLibraries = sharedLibraries.get( ndkArchitecture );
+                if ( architectureLibraries != null )
                 {
-                    for ( Artifact resolvedArtifact : artifacts )
+                    for ( Artifact resolvedArtifact : architectureLibraries )
                     {
-                        if ( "so".equals( resolvedArtifact.getType() ) && ndkArchitecture.equals(
-                             resolvedArtifact.getClassifier() ) )
-                        {
-                            final File artifactFile = resolvedArtifact.getFile();
-                            try
-                            {
-                                final String artifactId = resolvedArtifact.getArtifactId();
-                                String filename = artifactId.startsWith( "lib" ) 
-                                        ? artifactId + ".so"
-                                        : "lib" + artifactId + ".so";
-                                if ( ndkFinalLibraryName != null 
-                                        && ( resolvedArtifact.getFile().getName()
-                                                .startsWith( "lib" + ndkFinalLibraryName ) ) )
-                                {
-                                    // The artifact looks like one we built with the NDK in this module
-                                    // preserve the name from the NDK build
-                                    filename = resolvedArtifact.getFile().getName();
-                                }
-
-                                final File finalDestinationDirectory = getFinalDestinationDirectoryFor(
-                                        resolvedArtifact, destinationDirectory, ndkArchitecture );
-                                final File file = new File( finalDestinationDirectory, filename );
-                                getLog().debug(
-                                        "Copying native dependency " + artifactId + " (" + resolvedArtifact.getGroupId()
-                                        +
-                                        ") to " + file );
-                                org.apache.commons.io.FileUtils.copyFile( artifactFile, file );
-                            }
-                            catch ( Exception e )
-                            {
-                                throw new MojoExecutionException( "Could not copy native dependency.", e );
-                            }
-                        }
-                        else
-                        {
-                            if ( APKLIB.equals( resolvedArtifact.getType() ) )
-                            {
-                                addNativeDirectory( natives, new File( getLibraryUnpackDirectory( resolvedArtifact )
-                                                                           + "/libs" ) );
-                            }
-                        }
+                        copyNativeDependency( resolvedArtifact, destinationDirectory, ndkArchitecture );
                     }
                 }
 
@@ -913,6 +1345,58 @@ public class ApkMojo extends AbstractAndroidMojo
         }
     }
 
+    private static boolean hasFiles( File directory )
+    {
+        if ( directory == null )
+        {
+            return false;
+        }
+        final File[] files = directory.listFiles();
+        return files != null && files.length > 0;
+    }
+
+    private void addNativeDirectory( final List<File> natives, final File nativeDirectory )
+    {
+        if ( ! natives.contains( nativeDirectory ) )
+        {
+            natives.add( nativeDirectory );
+        }
+    }
+
+    private void copyNativeDependency( Artifact resolvedArtifact, File destinationDirectory, String ndkArchitecture )
+            throws MojoExecutionException
+    {
+        final File artifactFile = resolvedArtifact.getFile();
+        try
+        {
+            final String artifactId = resolvedArtifact.getArtifactId();
+            String filename = artifactId.startsWith( "lib" )
+                    ? artifactId + ".so"
+                    : "lib" + artifactId + ".so";
+            if ( ndkFinalLibraryName != null
+                    && ( resolvedArtifact.getFile().getName()
+                            .startsWith( "lib" + ndkFinalLibraryName ) ) )
+            {
+                // The artifact looks like one we built with the NDK in this module
+                // preserve the name from the NDK build
+                filename = resolvedArtifact.getFile().getName();
+            }
+
+            final File finalDestinationDirectory = getFinalDestinationDirectoryFor(
+                    resolvedArtifact, destinationDirectory, ndkArchitecture );
+            final File file = new File( finalDestinationDirectory, filename );
+            getLog().debug(
+                    "Copying native dependency " + artifactId + " (" + resolvedArtifact.getGroupId()
+                    +
+                    ") to " + file );
+            org.apache.commons.io.FileUtils.copyFile( artifactFile, file );
+        }
+        catch ( Exception e )
+        {
+            throw new MojoExecutionException( "Could not copy native dependency.", e );
+        }
+    }
+
     private void optionallyCopyGdbServer( File destinationDirectory, String architecture ) throws MojoExecutionException
     {
 
@@ -987,30 +1471,13 @@ public class ApkMojo extends AbstractAndroidMojo
         executor.setLogger( this.getLog() );
         File[] overlayDirectories = getResourceOverlayDirectories();
 
-        if ( extractedDependenciesRes.exists() )
-        {
-            copyDependenciesRes();
-        }
-        if ( resourceDirectory.exists() && combinedRes.exists() )
-        {
-            copyLocalResourceFiles();
-        }
+        mergeResources();
 
         // Must combine assets.
         // The aapt tools does not support several -A arguments.
-        // We copy the assets from extracted dependencies first, and then the local assets.
+        // We take the assets from extracted dependencies first, then from apklibs and then the local assets.
         // This allows redefining the assets in the current project
-        if ( extractedDependenciesAssets.exists() )
-        {
-            copyDependencyAssets();
-        }
-
-        processApkLibAssets();
-
-        if ( assetsDirectory.exists() )
-        {
-            copyLocalAssets();
-        }
+        combineAssets();
 
         File androidJar = getAndroidSdk().getAndroidJar();
         File outputFile = new File( project.getBuild().getDirectory(), project.getBuild().getFinalName() + ".ap_" );
@@ -1020,39 +1487,45 @@ public class ApkMojo extends AbstractAndroidMojo
         commands.add( "-f" );
         commands.add( "-M" );
         commands.add( androidManifestFile.getAbsolutePath() );
+        final List<File> resourceDirectories = new ArrayList<File>();
         for ( File resOverlayDir : overlayDirectories )
         {
             if ( resOverlayDir != null && resOverlayDir.exists() )
             {
-                commands.add( "-S" );
-                commands.add( resOverlayDir.getAbsolutePath() );
+                resourceDirectories.add( resOverlayDir );
             }
         }
         if ( combinedRes.exists() )
         {
-            commands.add( "-S" );
-            commands.add( combinedRes.getAbsolutePath() );
+            resourceDirectories.add( combinedRes );
         }
         else
         {
             if ( resourceDirectory.exists() )
             {
-                commands.add( "-S" );
-                commands.add( resourceDirectory.getAbsolutePath() );
+                resourceDirectories.add( resourceDirectory );
             }
         }
         for ( Artifact artifact : getAllRelevantDependencyArtifacts() )
         {
             if ( artifact.getType().equals( APKLIB ) )
             {
-                final String apkLibResDir = getLibraryUnpackDirectory( artifact ) + "/res";
-                if ( new File( apkLibResDir ).exists() )
+                final File apkLibResDir = new File( getLibraryUnpackDirectory( artifact ) + "/res" );
+                if ( apkLibResDir.exists() )
                 {
-                    commands.add( "-S" );
-                    commands.add( apkLibResDir );
+                    resourceDirectories.add( apkLibResDir );
                 }
             }
         }
+        for ( File resDir : apkPreCrunch ? preCrunch( resourceDirectories ) : resourceDirectories )
+        {
+            commands.add( "-S" );
+            commands.add( resDir.getAbsolutePath() );
+        }
+        if ( apkPreCrunch )
+        {
+            commands.add( "--no-crunch" );
+        }
         commands.add( "--auto-add-overlay" );
 
         // Use the combined assets.
@@ -1111,182 +1584,66 @@ public class ApkMojo extends AbstractAndroidMojo
         }
     }
 
-    private void copyDependenciesRes() throws MojoExecutionException
+    /**
+     * Mirrors resource directories with their PNG images crunched through the crunch cache.
+     *
+     * @return the mirrors, in the same order.
+     */
+    private List<File> preCrunch( List<File> resourceDirectories ) throws MojoExecutionException
     {
-        try
-        {
-            getLog().info( "Copying dependency resource files to combined resource directory." );
-            if ( ! combinedRes.exists() )
+        final PngCruncher cruncher = new PngCruncher( getAndroidSdk().getPathForTool( "aapt" ), apkCrunchCache,
+                apkCrunchCacheSize * 1024L * 1024L, getLog() );
+        final File crunchedRes = new File( project.getBuild().getDirectory(), "generated-sources/crunched-res" );
+        final List<File> mirrors = new ArrayList<File>();
+        for ( File resDir : resourceDirectories )
+        {
+            final String name = DigestHelper.sha256( resDir.getAbsolutePath() ).substring( 0, 16 );
+            final File mirror = new File( crunchedRes, name );
+            final DirectorySynchronizer synchronizer = new DirectorySynchronizer( mirror,
+                    new File( crunchedRes, name + ".state" ), getLog() );
+            synchronizer.setTransformer( cruncher );
+            synchronizer.addSource( resDir );
+            try
             {
-                if ( ! combinedRes.mkdirs() )
-                {
-                    throw new MojoExecutionException(
-                            "Could not create directory for combined resources at "
-                                    + combinedRes.getAbsolutePath() );
-                }
+                final int changes = synchronizer.synchronize();
+                getLog().debug( "Updated " + changes + " files of " + mirror + " from " + resDir );
             }
-            FileUtils.copyDirectory( extractedDependenciesRes, combinedRes );
-        }
-        catch ( IOException e )
-        {
-            throw new MojoExecutionException( "", e );
-        }
-    }
-
-    private void copyLocalResourceFiles() throws MojoExecutionException
-    {
-        try
-        {
-            getLog().info( "Copying local resource files to combined resource directory." );
-            org.apache.commons.io.FileUtils.copyDirectory( resourceDirectory, combinedRes, new FileFilter()
+            catch ( IOException e )
             {
-
-                /**
-                 * Excludes files matching one of the common file to exclude.
-                 * The default excludes pattern are the ones from
-                 * {org.codehaus.plexus.util.AbstractScanner#DEFAULTEXCLUDES}
-                 * @see java.io.FileFilter#accept(java.io.File)
-                 */
-                public boolean accept( File file )
-                {
-                    for ( String pattern : DirectoryScanner.DEFAULTEXCLUDES )
-                    {
-                        if ( DirectoryScanner.match( pattern, file.getAbsolutePath() ) )
-                        {
-                            getLog().debug(
-                                    "Excluding " + file.getName() + " from resource copy : matching " + pattern );
-                            return false;
-                        }
-                    }
-                    return true;
-                }
-            } );
-        }
-        catch ( IOException e )
-        {
-            throw new MojoExecutionException( "", e );
+                throw new MojoExecutionException( "Could not crunch the images of " + resDir, e );
+            }
+            mirrors.add( mirror );
         }
+        cruncher.evict();
+        return mirrors;
     }
 
-    private void copyDependencyAssets() throws MojoExecutionException
+    /**
+     * Synchronizes the combined assets directory with the assets of the dependencies, the apklibs and the project,
+     * copying only what changed since the last build.
+     */
+    private void combineAssets() throws MojoExecutionException
     {
-        try
+        final DirectorySynchronizer assets = new DirectorySynchronizer( combinedAssets,
+                new File( combinedAssets.getParentFile(), "combined-assets.state" ), getLog() );
+        assets.addSource( extractedDependenciesAssets );
+        for ( Artifact artifact : getAllRelevantDependencyArtifacts() )
         {
-            getLog().info( "Copying dependency assets files to combined assets directory." );
-            FileUtils.copyDirectory( extractedDependenciesAssets, combinedAssets, new FileFilter()
+            if ( artifact.getType().equals( APKLIB ) )
             {
-                /**
-                 * Excludes files matching one of the common file to exclude.
-                 * The default excludes pattern are the ones from
-                 * {org.codehaus.plexus.util.AbstractScanner#DEFAULTEXCLUDES}
-                 * @see java.io.FileFilter#accept(java.io.File)
-                 */
-                public boolean accept( File file )
-                {
-                    for ( String pattern : AbstractScanner.DEFAULTEXCLUDES )
-                    {
-                        if ( AbstractScanner.match( pattern, file.getAbsolutePath() ) )
-                        {
-                            getLog().debug(
-                                    "Excluding " + file.getName() + " from asset copy : matching " + pattern );
-                            return false;
-                        }
-                    }
-
-                    return true;
-
-                }
-            } );
-        }
-        catch ( IOException e )
-        {
-            throw new MojoExecutionException( "", e );
+                assets.addSource( new File( getLibraryUnpackDirectory( artifact ) + "/assets" ) );
+            }
         }
-    }
-
-    private void copyLocalAssets() throws MojoExecutionException
-    {
+        assets.addSource( assetsDirectory );
         try
         {
-            getLog().info( "Copying local assets files to combined assets directory." );
-            org.apache.commons.io.FileUtils.copyDirectory( assetsDirectory, combinedAssets, new FileFilter()
-            {
-                /**
-                 * Excludes files matching one of the common file to exclude.
-                 * The default excludes pattern are the ones from
-                 * {org.codehaus.plexus.util.AbstractScanner#DEFAULTEXCLUDES}
-                 * @see java.io.FileFilter#accept(java.io.File)
-                 */
-                public boolean accept( File file )
-                {
-                    for ( String pattern : AbstractScanner.DEFAULTEXCLUDES )
-                    {
-                        if ( AbstractScanner.match( pattern, file.getAbsolutePath() ) )
-                        {
-                            getLog().debug(
-                                    "Excluding " + file.getName() + " from asset copy : matching " + pattern );
-                            return false;
-                        }
-                    }
-
-                    return true;
-
-                }
-            } );
+            final int changes = assets.synchronize();
+            getLog().info( changes == 0 ? "Combined assets directory is up to date."
+                    : "Updated " + changes + " files of the combined assets directory." );
         }
         catch ( IOException e )
         {
-            throw new MojoExecutionException( "", e );
-        }
-    }
-
-    private void processApkLibAssets() throws MojoExecutionException
-    {
-        // Next pull APK Lib assets, reverse the order to give precedence to libs higher up the chain
-        List<Artifact> artifactList = new ArrayList<Artifact>( getAllRelevantDependencyArtifacts() );
-        for ( Artifact artifact : artifactList )
-        {
-            if ( artifact.getType().equals( APKLIB ) )
-            {
-                File apklibAsssetsDirectory = new File( getLibraryUnpackDirectory( artifact ) + "/assets" );
-                if ( apklibAsssetsDirectory.exists() )
-                {
-                    try
-                    {
-                        getLog().info( "Copying dependency assets files to combined assets directory." );
-                        org.apache.commons.io.FileUtils
-                                .copyDirectory( apklibAsssetsDirectory, combinedAssets, new FileFilter()
-                                {
-                                    /**
-                                     * Excludes files matching one of the common file to exclude.
-                                     * The default excludes pattern are the ones from
-                                     * {org.codehaus.plexus.util.AbstractScanner#DEFAULTEXCLUDES}
-                                     * @see java.io.FileFilter#accept(java.io.File)
-                                     */
-                                    public boolean accept( File file )
-                                    {
-                                        for ( String pattern : AbstractScanner.DEFAULTEXCLUDES )
-                                        {
-                                            if ( AbstractScanner.match( pattern, file.getAbsolutePath() ) )
-                                            {
-                                                getLog().debug( "Excluding " + file.getName() + " from asset copy : "
-                                                        + "matching " + pattern );
-                                                return false;
-                                            }
-                                        }
-
-                                        return true;
-
-                                    }
-                                } );
-                    }
-                    catch ( IOException e )
-                    {
-                        throw new MojoExecutionException( "", e );
-                    }
-
-                }
-            }
+            throw new MojoExecutionException( "Could not combine the assets in " + combinedAssets, e );
         }
     }
 
@@ -1299,11 +1656,11 @@ public class ApkMojo extends AbstractAndroidMojo
     {
         if ( sign == null )
         {
-            return new AndroidSigner( signDebug );
+            return new AndroidSigner( signDebug, signKeystore != null );
         }
         else
         {
-            return new AndroidSigner( sign.getDebug() );
+            return new AndroidSigner( sign.getDebug(), getSignParameter( sign.getKeystore(), signKeystore ) != null );
         }
     }
 
@@ -1315,4 +1672,28 @@ public class ApkMojo extends AbstractAndroidMojo
     {
         return new String[ 0 ];
     }
+
+    // used via PullParameter annotation - do not remove
+    private File getDefaultCrunchCache()
+    {
+        return new File( System.getProperty( "user.home" ), ".android" + File.separator + "png-crunch-cache" );
+    }
+
+    // used via PullParameter annotation - do not remove
+    private String[] getDefaultStoredExtensions()
+    {
+        return ApkWriter.DEFAULT_STORED_EXTENSIONS.clone();
+    }
+
+    // used via PullParameter annotation - do not remove
+    private String[] getDefaultPageAlignIncludes()
+    {
+        return new String[] { "lib/**/*.so" };
+    }
+
+    // used via PullParameter annotation - do not remove
+    private String[] getDefaultPageAlignExcludes()
+    {
+        return new String[ 0 ];
+    }
 }
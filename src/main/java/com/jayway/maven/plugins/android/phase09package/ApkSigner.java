@@ -0,0 +1,543 @@
+package com.jayway.maven.plugins.android.phase09package;
+
+import com.jayway.maven.plugins.android.common.RawZipEntry;
+import com.jayway.maven.plugins.android.common.RawZipFile;
+import com.jayway.maven.plugins.android.common.RawZipWriter;
+import com.jayway.maven.plugins.android.common.ZipAligner;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.codehaus.plexus.util.Base64;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Signs APKs with the jar signature scheme, the way the SDK's ApkBuilder signs them: a <code>MANIFEST.MF</code> with
+ * the SHA-1 digest of every entry, a <code>CERT.SF</code> with the digests of the manifest sections and a PKCS#7
+ * signature block over <code>CERT.SF</code>.
+ * <p/>
+ * Signing copies all entries of the unsigned APK without recompressing them and keeps stored entries aligned, so
+ * it costs one read of the APK
+ * instead of a complete packaging run. The digests are computed by a pool of threads while the entries are copied.
+ * <p/>
+ * The same signer is used for the debug keystore and for release keystores, see {@link #fromKeystore}.
+ */
+public class ApkSigner
+{
+    /**
+     * Password of the debug keystore as well as of its key.
+     */
+    public static final String DEBUG_PASSWORD = "android";
+
+    /**
+     * Alias of the key in the debug keystore.
+     */
+    public static final String DEBUG_ALIAS = "androiddebugkey";
+
+    /**
+     * Distinguished name of the debug certificate.
+     */
+    public static final String DEBUG_DNAME = "CN=Android Debug,O=Android,C=US";
+
+    /**
+     * Validity of the debug certificate in days, 30 years like the SDK.
+     */
+    private static final int DEBUG_VALIDITY_DAYS = 30 * 365;
+    private static final int DEBUG_KEY_SIZE = 2048;
+
+    private static final String META_INF = "META-INF/";
+    private static final String MANIFEST_NAME = META_INF + "MANIFEST.MF";
+    private static final String CREATED_BY = "1.0 (Android)";
+    private static final String DIGEST_ALGORITHM = "SHA1";
+    private static final int MAX_LINE_LENGTH = 72;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] DER_NULL = { 0x05, 0x00 };
+    private static final byte[] DER_VERSION_1 = { 0x02, 0x01, 0x01 };
+    private static final byte[] OID_SHA1 = { 0x06, 0x05, 0x2b, 0x0e, 0x03, 0x02, 0x1a };
+    private static final byte[] OID_RSA = { 0x06, 0x09, 0x2a, ( byte ) 0x86, 0x48, ( byte ) 0x86, ( byte ) 0xf7, 0x0d,
+            0x01, 0x01, 0x01 };
+    private static final byte[] OID_DSA = { 0x06, 0x07, 0x2a, ( byte ) 0x86, 0x48, ( byte ) 0xce, 0x38, 0x04, 0x01 };
+    private static final byte[] OID_DATA = { 0x06, 0x09, 0x2a, ( byte ) 0x86, 0x48, ( byte ) 0x86, ( byte ) 0xf7,
+            0x0d, 0x01, 0x07, 0x01 };
+    private static final byte[] OID_SIGNED_DATA = { 0x06, 0x09, 0x2a, ( byte ) 0x86, 0x48, ( byte ) 0x86,
+            ( byte ) 0xf7, 0x0d, 0x01, 0x07, 0x02 };
+    private static final int DER_INTEGER = 0x02;
+    private static final int DER_OCTET_STRING = 0x04;
+    private static final int DER_SEQUENCE = 0x30;
+    private static final int DER_SET = 0x31;
+    private static final int DER_CONTEXT_0 = 0xa0;
+    private static final int DER_SHORT_LENGTH_LIMIT = 0x80;
+    private static final int BITS_PER_BYTE = 8;
+
+    private final PrivateKey privateKey;
+    private final X509Certificate certificate;
+
+    /**
+     * @param privateKey  the signing key, RSA or DSA.
+     * @param certificate the certificate of the signing key.
+     */
+    public ApkSigner( PrivateKey privateKey, X509Certificate certificate )
+    {
+        if ( !"RSA".equals( privateKey.getAlgorithm() ) && !"DSA".equals( privateKey.getAlgorithm() ) )
+        {
+            throw new IllegalArgumentException( "Unsupported key algorithm " + privateKey.getAlgorithm() );
+        }
+        this.privateKey = privateKey;
+        this.certificate = certificate;
+    }
+
+    /**
+     * Loads the signing key from a keystore.
+     *
+     * @param keystore      the keystore file, in the default keystore format of the JVM.
+     * @param storePassword the keystore password.
+     * @param alias         the alias of the key.
+     * @param keyPassword   the key password.
+     * @return a signer using the key.
+     * @throws IOException              if the keystore cannot be read.
+     * @throws GeneralSecurityException if the key cannot be loaded.
+     */
+    public static ApkSigner fromKeystore( File keystore, String storePassword, String alias, String keyPassword )
+            throws IOException, GeneralSecurityException
+    {
+        final KeyStore store = KeyStore.getInstance( KeyStore.getDefaultType() );
+        final InputStream in = new FileInputStream( keystore );
+        try
+        {
+            store.load( in, storePassword.toCharArray() );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( in );
+        }
+        final PrivateKey key = ( PrivateKey ) store.getKey( alias, keyPassword.toCharArray() );
+        if ( key == null )
+        {
+            throw new GeneralSecurityException( "No key " + alias + " in " + keystore );
+        }
+        return new ApkSigner( key, ( X509Certificate ) store.getCertificate( alias ) );
+    }
+
+    /**
+     * Loads the debug key, creating the debug keystore first when it does not exist yet, like the SDK tools do on
+     * their first build.
+     *
+     * @param keystore the debug keystore, usually <code>~/.android/debug.keystore</code>.
+     * @return a signer using the debug key.
+     * @throws IOException              if the keystore cannot be created or read.
+     * @throws GeneralSecurityException if the key cannot be loaded.
+     */
+    public static ApkSigner fromDebugKeystore( File keystore ) throws IOException, GeneralSecurityException
+    {
+        if ( !keystore.isFile() )
+        {
+            createDebugKeystore( keystore );
+        }
+        return fromKeystore( keystore, DEBUG_PASSWORD, DEBUG_ALIAS, DEBUG_PASSWORD );
+    }
+
+    /**
+     * Creates a debug keystore with the alias, passwords and distinguished name the SDK uses, by running the keytool
+     * of the running JVM as the SDK does. The keystore is generated next to its final location and renamed, so that
+     * concurrent builds never read a partial keystore.
+     *
+     * @param keystore the keystore to create.
+     * @throws IOException if keytool failed.
+     */
+    public static void createDebugKeystore( File keystore ) throws IOException
+    {
+        final File directory = keystore.getAbsoluteFile().getParentFile();
+        FileUtils.forceMkdir( directory );
+        final File temp = new File( directory, keystore.getName() + "." + System.nanoTime() + ".tmp" );
+        final String keytool = new File( new File( System.getProperty( "java.home" ), "bin" ), "keytool" ).getPath();
+        final ProcessBuilder builder = new ProcessBuilder( keytool, "-genkeypair", "-keystore", temp.getPath(),
+                "-storetype", KeyStore.getDefaultType(), "-storepass", DEBUG_PASSWORD, "-alias", DEBUG_ALIAS,
+                "-keypass", DEBUG_PASSWORD, "-keyalg", "RSA", "-keysize", String.valueOf( DEBUG_KEY_SIZE ),
+                "-validity", String.valueOf( DEBUG_VALIDITY_DAYS ), "-dname", DEBUG_DNAME );
+        builder.redirectErrorStream( true );
+        try
+        {
+            final Process process = builder.start();
+            final String output = IOUtils.toString( process.getInputStream() );
+            if ( process.waitFor() != 0 || !temp.isFile() )
+            {
+                throw new IOException( "keytool could not create " + keystore + ": " + output );
+            }
+            if ( !temp.renameTo( keystore ) && !keystore.isFile() )
+            {
+                throw new IOException( "Could not rename " + temp + " to " + keystore );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while creating " + keystore );
+        }
+        finally
+        {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Writes a signed copy of an APK. Signature files already in the APK are replaced.
+     *
+     * @param unsignedApk the APK to sign.
+     * @param signedApk   the signed APK to write.
+     * @throws IOException              if an APK cannot be read or written.
+     * @throws GeneralSecurityException if signing fails.
+     */
+    public void sign( File unsignedApk, File signedApk ) throws IOException, GeneralSecurityException
+    {
+        final List< String > names = new ArrayList< String >();
+        final List< Future< String > > pendingDigests = new ArrayList< Future< String > >();
+        final ExecutorService digesters = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors() );
+        final RawZipFile source = new RawZipFile( unsignedApk );
+        final RawZipWriter writer = new RawZipWriter( signedApk );
+        try
+        {
+            for ( RawZipEntry entry : source.getEntries() )
+            {
+                if ( isSignatureFile( entry.getName() ) )
+                {
+                    continue;
+                }
+                if ( !entry.isDirectory() )
+                {
+                    names.add( entry.getName() );
+                    pendingDigests.add( digesters.submit( digestTask( source, entry ) ) );
+                }
+                writer.copy( source, entry, entry.getName(), getAlignment( source, entry ) );
+            }
+            final Map< String, String > digests = new LinkedHashMap< String, String >();
+            for ( int i = 0; i < names.size(); i++ )
+            {
+                digests.put( names.get( i ), getDigest( pendingDigests.get( i ) ) );
+            }
+            writeSignature( writer, digests, System.currentTimeMillis() );
+            writer.close();
+        }
+        finally
+        {
+            digesters.shutdownNow();
+            IOUtils.closeQuietly( writer );
+            source.close();
+        }
+    }
+
+    /**
+     * Keeps the alignment of the unsigned APK, which the signature files would otherwise shift: stored native
+     * libraries that are page aligned stay page aligned, and all other stored entries are aligned on 4 bytes like
+     * <code>zipalign</code> does.
+     */
+    private static int getAlignment( RawZipFile source, RawZipEntry entry ) throws IOException
+    {
+        if ( entry.getMethod() != RawZipEntry.STORED )
+        {
+            return 0;
+        }
+        if ( ZipAligner.isNativeLibrary( entry.getName() )
+                && source.getDataOffset( entry ) % ZipAligner.PAGE_ALIGNMENT == 0 )
+        {
+            return ZipAligner.PAGE_ALIGNMENT;
+        }
+        return ZipAligner.DEFAULT_ALIGNMENT;
+    }
+
+    /**
+     * @param source the zip file containing the entry, which must stay open until the task is done.
+     * @param entry  the entry to digest.
+     * @return a task computing the digest of the entry, see {@link #digest(RawZipFile, RawZipEntry)}. Tasks for
+     *         several entries of the same file can run concurrently.
+     */
+    public static Callable< String > digestTask( final RawZipFile source, final RawZipEntry entry )
+    {
+        return new Callable< String >()
+        {
+            @Override
+            public String call() throws IOException
+            {
+                return digest( source, entry );
+            }
+        };
+    }
+
+    /**
+     * Waits for a digest computed by a {@link #digestTask}.
+     *
+     * @param pendingDigest the submitted task.
+     * @return the digest.
+     * @throws IOException if the entry could not be read, or the thread was interrupted.
+     */
+    public static String getDigest( Future< String > pendingDigest ) throws IOException
+    {
+        try
+        {
+            return pendingDigest.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while computing digests" );
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof IOException )
+            {
+                throw ( IOException ) e.getCause();
+            }
+            throw new IllegalStateException( "Could not compute a digest", e.getCause() );
+        }
+    }
+
+    /**
+     * @param data the uncompressed data of an entry.
+     * @return the base64 encoded SHA-1 digest of the data, as listed in the manifest.
+     */
+    public static String digest( byte[] data )
+    {
+        return base64( newDigest().digest( data ) );
+    }
+
+    /**
+     * @param source the zip file containing the entry.
+     * @param entry  the entry to digest.
+     * @return the base64 encoded SHA-1 digest of the uncompressed data of the entry, as listed in the manifest.
+     * @throws IOException if the entry cannot be read.
+     */
+    public static String digest( RawZipFile source, RawZipEntry entry ) throws IOException
+    {
+        final MessageDigest digest = newDigest();
+        final byte[] buffer = new byte[ BUFFER_SIZE ];
+        final InputStream in = source.getInputStream( entry );
+        try
+        {
+            int n;
+            while ( ( n = in.read( buffer ) ) != -1 )
+            {
+                digest.update( buffer, 0, n );
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly( in );
+        }
+        return base64( digest.digest() );
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance( DIGEST_ALGORITHM );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( DIGEST_ALGORITHM + " is not available", e );
+        }
+    }
+
+    /**
+     * Writes <code>MANIFEST.MF</code>, <code>CERT.SF</code> and the signature block for entries that were already
+     * written.
+     *
+     * @param writer  the APK being written.
+     * @param digests the base64 encoded SHA-1 digests of all entries, by entry name, in APK order.
+     * @param time    the modification time to give the signature files.
+     * @throws IOException              if the signature files cannot be written.
+     * @throws GeneralSecurityException if signing fails.
+     */
+    public void writeSignature( RawZipWriter writer, Map< String, String > digests, long time )
+            throws IOException, GeneralSecurityException
+    {
+        final MessageDigest digest = MessageDigest.getInstance( DIGEST_ALGORITHM );
+        final ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+        writeAttribute( manifest, "Manifest-Version", "1.0" );
+        writeAttribute( manifest, "Created-By", CREATED_BY );
+        manifest.write( CRLF );
+
+        final ByteArrayOutputStream signatureFileSections = new ByteArrayOutputStream();
+        final ByteArrayOutputStream section = new ByteArrayOutputStream();
+        for ( Map.Entry< String, String > entry : digests.entrySet() )
+        {
+            section.reset();
+            writeAttribute( section, "Name", entry.getKey() );
+            writeAttribute( section, DIGEST_ALGORITHM + "-Digest", entry.getValue() );
+            section.write( CRLF );
+            section.writeTo( manifest );
+
+            writeAttribute( signatureFileSections, "Name", entry.getKey() );
+            writeAttribute( signatureFileSections, DIGEST_ALGORITHM + "-Digest",
+                    base64( digest.digest( section.toByteArray() ) ) );
+            signatureFileSections.write( CRLF );
+        }
+
+        final byte[] manifestBytes = manifest.toByteArray();
+        final ByteArrayOutputStream signatureFile = new ByteArrayOutputStream();
+        writeAttribute( signatureFile, "Signature-Version", "1.0" );
+        writeAttribute( signatureFile, "Created-By", CREATED_BY );
+        writeAttribute( signatureFile, DIGEST_ALGORITHM + "-Digest-Manifest",
+                base64( digest.digest( manifestBytes ) ) );
+        signatureFile.write( CRLF );
+        signatureFileSections.writeTo( signatureFile );
+        final byte[] signatureFileBytes = signatureFile.toByteArray();
+
+        writer.writeDeflated( MANIFEST_NAME, manifestBytes, time );
+        writer.writeDeflated( META_INF + "CERT.SF", signatureFileBytes, time );
+        writer.writeDeflated( META_INF + "CERT." + privateKey.getAlgorithm(), signatureBlock( signatureFileBytes ),
+                time );
+    }
+
+    /**
+     * @param name an entry name.
+     * @return <code>true</code> for the files of a jar signature, which are recreated when signing.
+     */
+    public static boolean isSignatureFile( String name )
+    {
+        if ( !name.startsWith( META_INF ) || name.indexOf( '/', META_INF.length() ) >= 0 )
+        {
+            return false;
+        }
+        final String upperCaseName = name.toUpperCase( Locale.ENGLISH );
+        return upperCaseName.equals( MANIFEST_NAME ) || upperCaseName.endsWith( ".SF" )
+                || upperCaseName.endsWith( ".RSA" ) || upperCaseName.endsWith( ".DSA" )
+                || upperCaseName.endsWith( ".EC" );
+    }
+
+    /**
+     * Creates the PKCS#7 SignedData block of the signature, in the same minimal form as jarsigner: the certificate,
+     * and one signer without authenticated attributes.
+     */
+    private byte[] signatureBlock( byte[] signatureFile ) throws GeneralSecurityException
+    {
+        final boolean rsa = "RSA".equals( privateKey.getAlgorithm() );
+        final Signature signature = Signature.getInstance( DIGEST_ALGORITHM + "with" + privateKey.getAlgorithm() );
+        signature.initSign( privateKey );
+        signature.update( signatureFile );
+
+        final byte[] sha1Algorithm = der( DER_SEQUENCE, OID_SHA1, DER_NULL );
+        final byte[] signerInfo = der( DER_SEQUENCE,
+                DER_VERSION_1,
+                der( DER_SEQUENCE,
+                        certificate.getIssuerX500Principal().getEncoded(),
+                        der( DER_INTEGER, certificate.getSerialNumber().toByteArray() ) ),
+                sha1Algorithm,
+                rsa ? der( DER_SEQUENCE, OID_RSA, DER_NULL ) : der( DER_SEQUENCE, OID_DSA ),
+                der( DER_OCTET_STRING, signature.sign() ) );
+        final byte[] signedData = der( DER_SEQUENCE,
+                DER_VERSION_1,
+                der( DER_SET, sha1Algorithm ),
+                der( DER_SEQUENCE, OID_DATA ),
+                der( DER_CONTEXT_0, certificate.getEncoded() ),
+                der( DER_SET, signerInfo ) );
+        return der( DER_SEQUENCE, OID_SIGNED_DATA, der( DER_CONTEXT_0, signedData ) );
+    }
+
+    /**
+     * DER encodes a value from its tag and already encoded content.
+     */
+    private static byte[] der( int tag, byte[]... contents )
+    {
+        int length = 0;
+        for ( byte[] content : contents )
+        {
+            length += content.length;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream( length + BITS_PER_BYTE );
+        out.write( tag );
+        if ( length < DER_SHORT_LENGTH_LIMIT )
+        {
+            out.write( length );
+        }
+        else
+        {
+            int lengthBytes = 0;
+            for ( int remaining = length; remaining > 0; remaining >>>= BITS_PER_BYTE )
+            {
+                lengthBytes++;
+            }
+            out.write( DER_SHORT_LENGTH_LIMIT | lengthBytes );
+            for ( int i = lengthBytes - 1; i >= 0; i-- )
+            {
+                out.write( length >>> ( i * BITS_PER_BYTE ) );
+            }
+        }
+        for ( byte[] content : contents )
+        {
+            out.write( content, 0, content.length );
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a manifest attribute, wrapping lines at 72 bytes like java.util.jar does.
+     */
+    private static void writeAttribute( ByteArrayOutputStream out, String name, String value )
+    {
+        final byte[] line = utf8( name + ": " + value );
+        int position = 0;
+        int limit = MAX_LINE_LENGTH;
+        while ( true )
+        {
+            final int length = Math.min( limit, line.length - position );
+            out.write( line, position, length );
+            out.write( CRLF, 0, CRLF.length );
+            position += length;
+            if ( position >= line.length )
+            {
+                break;
+            }
+            // continuation lines start with a space, which counts towards their length
+            out.write( ' ' );
+            limit = MAX_LINE_LENGTH - 1;
+        }
+    }
+
+    private static String base64( byte[] bytes )
+    {
+        try
+        {
+            return new String( Base64.encodeBase64( bytes ), "US-ASCII" );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( "US-ASCII is not supported", e );
+        }
+    }
+
+    private static byte[] utf8( String value )
+    {
+        try
+        {
+            return value.getBytes( "UTF-8" );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( "UTF-8 is not supported", e );
+        }
+    }
+}
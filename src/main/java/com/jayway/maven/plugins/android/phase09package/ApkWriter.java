@@ -0,0 +1,611 @@
+package com.jayway.maven.plugins.android.phase09package;
+
+import com.jayway.maven.plugins.android.common.RawZipEntry;
+import com.jayway.maven.plugins.android.common.RawZipFile;
+import com.jayway.maven.plugins.android.common.PathMatcher;
+import com.jayway.maven.plugins.android.common.RawZipWriter;
+import com.jayway.maven.plugins.android.common.ZipAligner;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes an APK the way the SDK's ApkBuilder does, without going through sdklib. Entries of the resource archive
+ * and of embedded jars are copied as they are compressed there, only files added from disk are compressed.
+ * <p/>
+ * The same files are packaged as by ApkBuilder: directories, <code>META-INF</code> and source control folders are
+ * skipped, as well as sources, classes and editor files; native libraries are taken from
+ * <code>&lt;abi&gt;/*.so</code>, plus <code>gdbserver</code> in debug mode. Adding the same path twice fails.
+ * <p/>
+ * Files are deflated by a pool of threads while later files are read, and written in the order they were added.
+ * The uncompressed size of the files waiting to be written is bounded by a memory limit. When signing, the same
+ * pool computes the digests of all entries, including those copied from archives, so that the signature files
+ * are written at the end of the single pass over the content.
+ */
+public class ApkWriter implements Closeable
+{
+    private static final String META_INF = "META-INF/";
+    private static final String NATIVE_LIBRARIES_FOLDER = "lib/";
+    private static final String GDBSERVER = "gdbserver";
+    private static final long DEFAULT_MEMORY_LIMIT = 128L * 1024 * 1024;
+
+    /**
+     * Extensions of files that are already compressed, which aapt does not compress either.
+     */
+    public static final String[] DEFAULT_STORED_EXTENSIONS = { "jpg", "jpeg", "png", "gif", "wav", "mp2", "mp3",
+            "ogg", "aac", "mpg", "mpeg", "mid", "midi", "smf", "jet", "rtttl", "imy", "xmf", "mp4", "m4a", "m4v",
+            "3gp", "3gpp", "3g2", "3gpp2", "amr", "awb", "wma", "wmv" };
+
+    private final RawZipWriter writer;
+    private final ApkSigner signer;
+    private final Log log;
+    private final Map< String, String > digests = new LinkedHashMap< String, String >();
+    private final Map< String, File > origins = new HashMap< String, File >();
+    private boolean debugMode;
+    private boolean compressNativeLibraries = true;
+    private NativeLibrarySelector pageAligned = new NativeLibrarySelector( null, null );
+    private Set< String > storedExtensions = toLowerCase( DEFAULT_STORED_EXTENSIONS );
+    private int compressionThreads = Runtime.getRuntime().availableProcessors();
+    private long memoryLimit = DEFAULT_MEMORY_LIMIT;
+    private ExecutorService compressors;
+    private final LinkedList< Future< PreparedEntry > > pending = new LinkedList< Future< PreparedEntry > >();
+    private long pendingBytes;
+
+    /**
+     * @param apkFile the APK to write.
+     * @param signer  the signer to sign the APK with, <code>null</code> to leave it unsigned.
+     * @param log     the log of the calling mojo.
+     * @throws MojoExecutionException if the APK cannot be created.
+     */
+    public ApkWriter( File apkFile, ApkSigner signer, Log log ) throws MojoExecutionException
+    {
+        this.signer = signer;
+        this.log = log;
+        try
+        {
+            this.writer = new RawZipWriter( apkFile );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not create " + apkFile, e );
+        }
+    }
+
+    /**
+     * @param debugMode whether <code>gdbserver</code> is packaged with the native libraries.
+     */
+    public void setDebugMode( boolean debugMode )
+    {
+        this.debugMode = debugMode;
+    }
+
+    /**
+     * @param compressNativeLibraries whether native libraries are deflated or stored.
+     */
+    public void setCompressNativeLibraries( boolean compressNativeLibraries )
+    {
+        this.compressNativeLibraries = compressNativeLibraries;
+    }
+
+    /**
+     * @param threads the number of threads compressing files, 0 for one per processor.
+     */
+    public void setCompressionThreads( int threads )
+    {
+        this.compressionThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @param bytes the maximum uncompressed size of the files read but not written yet. A single larger file is
+     *              still added, on its own.
+     */
+    public void setMemoryLimit( long bytes )
+    {
+        this.memoryLimit = bytes;
+    }
+
+    /**
+     * @param extensions the extensions of files that are stored instead of deflated, as they are compressed
+     *                   already.
+     */
+    public void setStoredExtensions( String[] extensions )
+    {
+        this.storedExtensions = toLowerCase( extensions != null ? extensions : new String[ 0 ] );
+    }
+
+    private static Set< String > toLowerCase( String[] values )
+    {
+        final Set< String > result = new HashSet< String >();
+        for ( String value : values )
+        {
+            result.add( value.toLowerCase( Locale.ENGLISH ) );
+        }
+        return result;
+    }
+
+    /**
+     * Selects native libraries to store uncompressed, with their data aligned on memory pages, so that they can be
+     * loaded directly from the APK. Patterns are matched against the path in the APK, e.g.
+     * <code>lib/armeabi-v7a/*.so</code>.
+     *
+     * @param includes the patterns of the libraries to page align.
+     * @param excludes the patterns of the libraries to leave out of the includes.
+     */
+    public void setPageAlignedNativeLibraries( String[] includes, String[] excludes )
+    {
+        this.pageAligned = new NativeLibrarySelector( includes, excludes );
+    }
+
+    /**
+     * Adds all entries of the resource archive created by aapt.
+     *
+     * @param resourceArchive the <code>.ap_</code> file.
+     * @throws MojoExecutionException if the archive cannot be read or contains a path already in the APK.
+     */
+    public void addResourceArchive( File resourceArchive ) throws MojoExecutionException
+    {
+        addZip( resourceArchive, false, null, false );
+    }
+
+    /**
+     * @param dexFile  the <code>classes.dex</code> file.
+     * @param compress whether the dex file is deflated or stored.
+     * @throws MojoExecutionException if the file cannot be read or written.
+     */
+    public void addDexFile( File dexFile, boolean compress ) throws MojoExecutionException
+    {
+        addFile( dexFile, "classes.dex", compress );
+    }
+
+    /**
+     * Adds the java resources of a folder, i.e. all files that are neither sources nor classes.
+     *
+     * @param sourceFolder the folder to add, skipped if it does not exist.
+     * @throws MojoExecutionException if a file cannot be read or its path is already in the APK.
+     */
+    public void addSourceFolder( File sourceFolder ) throws MojoExecutionException
+    {
+        if ( sourceFolder.isDirectory() )
+        {
+            addSourceFolder( sourceFolder, "" );
+        }
+        else
+        {
+            log.debug( "Skipping missing source folder " + sourceFolder );
+        }
+    }
+
+    private void addSourceFolder( File folder, String path ) throws MojoExecutionException
+    {
+        final File[] files = folder.listFiles();
+        if ( files == null )
+        {
+            return;
+        }
+        Arrays.sort( files );
+        for ( File file : files )
+        {
+            if ( file.isDirectory() )
+            {
+                if ( checkFolderForPackaging( file.getName() ) )
+                {
+                    addSourceFolder( file, path + file.getName() + "/" );
+                }
+            }
+            else if ( checkFileForPackaging( file.getName() ) )
+            {
+                addFile( file, path + file.getName(), true );
+            }
+        }
+    }
+
+    /**
+     * Adds the java resources of a jar, i.e. all entries that are neither sources nor classes.
+     *
+     * @param jarFile the jar.
+     * @throws MojoExecutionException if the jar cannot be read or contains a path already in the APK.
+     */
+    public void addResourcesFromJar( File jarFile ) throws MojoExecutionException
+    {
+        addZip( jarFile, true, null, false );
+    }
+
+    /**
+     * Adds the <code>META-INF</code> files of a jar that match the given patterns, e.g. service declarations. They
+     * are copied without recompressing them. Signature files are left out when the APK is signed.
+     *
+     * @param jarFile        the jar.
+     * @param metaInf        the patterns of the files to add, including the <code>META-INF/</code> folder.
+     * @param skipDuplicates whether a path already in the APK is skipped instead of failing.
+     * @throws MojoExecutionException if the jar cannot be read, or contains a path already in the APK and duplicates
+     *                                are not skipped.
+     */
+    public void addMetaInfFromJar( File jarFile, PathMatcher metaInf, boolean skipDuplicates )
+            throws MojoExecutionException
+    {
+        addZip( jarFile, false, metaInf, skipDuplicates );
+    }
+
+    /**
+     * Adds the native libraries of a folder containing one sub folder per ABI.
+     *
+     * @param nativeFolder the folder to add, skipped if it does not exist.
+     * @throws MojoExecutionException if a library cannot be read or its path is already in the APK.
+     */
+    public void addNativeLibraries( File nativeFolder ) throws MojoExecutionException
+    {
+        final File[] abiFolders = nativeFolder.listFiles();
+        if ( abiFolders == null )
+        {
+            return;
+        }
+        Arrays.sort( abiFolders );
+        for ( File abiFolder : abiFolders )
+        {
+            final File[] libraries = abiFolder.listFiles();
+            if ( libraries == null )
+            {
+                continue;
+            }
+            Arrays.sort( libraries );
+            for ( File library : libraries )
+            {
+                final String name = library.getName();
+                if ( library.isFile() && ( name.toLowerCase( Locale.ENGLISH ).endsWith( ".so" )
+                        || ( debugMode && GDBSERVER.equals( name ) ) ) )
+                {
+                    final String path = NATIVE_LIBRARIES_FOLDER + abiFolder.getName() + "/" + name;
+                    if ( pageAligned.matches( path ) )
+                    {
+                        addFile( library, path, false, ZipAligner.PAGE_ALIGNMENT );
+                    }
+                    else
+                    {
+                        addFile( library, path, compressNativeLibraries );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Signs the APK if a signer was given and finishes writing it.
+     *
+     * @throws MojoExecutionException if the APK cannot be written or signed.
+     */
+    public void seal() throws MojoExecutionException
+    {
+        flush();
+        try
+        {
+            if ( signer != null )
+            {
+                signer.writeSignature( writer, digests, System.currentTimeMillis() );
+            }
+            writer.close();
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not write " + writer.getFile(), e );
+        }
+        catch ( GeneralSecurityException e )
+        {
+            throw new MojoExecutionException( "Could not sign " + writer.getFile(), e );
+        }
+    }
+
+    /**
+     * Stops the compression threads and closes the APK, leaving it incomplete if it was not sealed, e.g. after a
+     * failure.
+     */
+    @Override
+    public void close()
+    {
+        if ( compressors != null )
+        {
+            compressors.shutdownNow();
+        }
+        IOUtils.closeQuietly( writer );
+    }
+
+    /**
+     * Copies the entries of a zip file: everything outside <code>META-INF</code> if <code>metaInf</code> is
+     * <code>null</code>, only the matching <code>META-INF</code> files otherwise.
+     */
+    private void addZip( File zipFile, boolean javaResourcesOnly, PathMatcher metaInf, boolean skipDuplicates )
+            throws MojoExecutionException
+    {
+        // the files added before must be written first
+        flush();
+        RawZipFile zip = null;
+        try
+        {
+            zip = new RawZipFile( zipFile );
+            // the digests are computed by the pool while the entries are copied
+            final List< String > names = new ArrayList< String >();
+            final List< Future< String > > pendingDigests = new ArrayList< Future< String > >();
+            for ( RawZipEntry entry : zip.getEntries() )
+            {
+                final String name = entry.getName();
+                if ( entry.isDirectory() || ! isSelected( name, javaResourcesOnly, metaInf ) )
+                {
+                    continue;
+                }
+                if ( skipDuplicates && origins.containsKey( name ) )
+                {
+                    log.debug( "Skipping duplicate " + name + " from " + zipFile );
+                    continue;
+                }
+                checkDuplicate( name, zipFile );
+                if ( signer != null )
+                {
+                    names.add( name );
+                    pendingDigests.add( getCompressors().submit( ApkSigner.digestTask( zip, entry ) ) );
+                }
+                writer.copy( zip, entry );
+            }
+            for ( int i = 0; i < names.size(); i++ )
+            {
+                digests.put( names.get( i ), ApkSigner.getDigest( pendingDigests.get( i ) ) );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not add " + zipFile + " to " + writer.getFile(), e );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( zip );
+        }
+    }
+
+    private boolean isSelected( String name, boolean javaResourcesOnly, PathMatcher metaInf )
+    {
+        if ( metaInf != null )
+        {
+            return name.startsWith( META_INF ) && metaInf.matches( name )
+                    && ! ( signer != null && ApkSigner.isSignatureFile( name ) );
+        }
+        // do not take anything inside a potential signature folder
+        return ! name.startsWith( META_INF ) && ( ! javaResourcesOnly || checkJarEntryForPackaging( name ) );
+    }
+
+    private void addFile( File file, String path, boolean compress ) throws MojoExecutionException
+    {
+        addFile( file, path, compress, 0 );
+    }
+
+    private void addFile( final File file, final String path, boolean compress, final int alignment )
+            throws MojoExecutionException
+    {
+        checkDuplicate( path, file );
+        final boolean deflate = compress && ! storedExtensions.contains( getExtension( file.getName() ) );
+        final long size = file.length();
+        while ( ! pending.isEmpty() && pendingBytes + size > memoryLimit )
+        {
+            writeNext();
+        }
+        pending.add( getCompressors().submit( new Callable< PreparedEntry >()
+        {
+            @Override
+            public PreparedEntry call() throws IOException
+            {
+                return new PreparedEntry( file, path, deflate, alignment, signer != null );
+            }
+        } ) );
+        pendingBytes += size;
+    }
+
+    private ExecutorService getCompressors()
+    {
+        if ( compressors == null )
+        {
+            compressors = Executors.newFixedThreadPool( compressionThreads );
+        }
+        return compressors;
+    }
+
+    /**
+     * Writes all files added so far.
+     */
+    private void flush() throws MojoExecutionException
+    {
+        while ( ! pending.isEmpty() )
+        {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws MojoExecutionException
+    {
+        final PreparedEntry entry;
+        try
+        {
+            entry = pending.removeFirst().get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException( "Interrupted while writing " + writer.getFile(), e );
+        }
+        catch ( ExecutionException e )
+        {
+            throw new MojoExecutionException( "Could not add a file to " + writer.getFile(), e.getCause() );
+        }
+        pendingBytes -= entry.file.length();
+        try
+        {
+            if ( entry.digest != null )
+            {
+                digests.put( entry.path, entry.digest );
+            }
+            if ( entry.deflated )
+            {
+                writer.writeDeflated( entry.path, entry.data, entry.crc, entry.size, entry.time );
+            }
+            else
+            {
+                writer.writeStored( entry.path, entry.data, entry.time, entry.alignment );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not add " + entry.file + " to " + writer.getFile(), e );
+        }
+    }
+
+    private static String getExtension( String fileName )
+    {
+        final int dot = fileName.lastIndexOf( '.' );
+        return dot > 0 ? fileName.substring( dot + 1 ).toLowerCase( Locale.ENGLISH ) : "";
+    }
+
+    private void checkDuplicate( String path, File origin ) throws MojoExecutionException
+    {
+        final File previous = origins.put( path, origin );
+        if ( previous != null )
+        {
+            throw new MojoExecutionException( "Duplicate files at the same path inside the APK: " + path
+                    + "\n\tFile 1: " + previous + "\n\tFile 2: " + origin );
+        }
+    }
+
+    /**
+     * Checks a jar entry the way ApkBuilder does: every folder of its path and its file name must be packageable.
+     */
+    static boolean checkJarEntryForPackaging( String name )
+    {
+        final String[] segments = name.split( "/" );
+        for ( int i = 0; i < segments.length - 1; i++ )
+        {
+            if ( ! checkFolderForPackaging( segments[ i ] ) )
+            {
+                return false;
+            }
+        }
+        return checkFileForPackaging( segments[ segments.length - 1 ] );
+    }
+
+    /**
+     * @return <code>false</code> for source control and signature folders, and folders starting with '_'.
+     */
+    static boolean checkFolderForPackaging( String folderName )
+    {
+        return ! folderName.equalsIgnoreCase( "CVS" )
+                && ! folderName.equalsIgnoreCase( ".svn" )
+                && ! folderName.equalsIgnoreCase( "SCCS" )
+                && ! folderName.equalsIgnoreCase( "META-INF" )
+                && ! folderName.startsWith( "_" );
+    }
+
+    /**
+     * @return <code>false</code> for hidden, backup and editor files, sources, classes and javadoc files.
+     */
+    static boolean checkFileForPackaging( String fileName )
+    {
+        if ( fileName.length() == 0 || fileName.charAt( 0 ) == '.' || fileName.endsWith( "~" ) )
+        {
+            return false;
+        }
+        final int dot = fileName.lastIndexOf( '.' );
+        final String extension = dot > 0 ? fileName.substring( dot + 1 ) : "";
+        return ! "aidl".equalsIgnoreCase( extension )
+                && ! "rs".equalsIgnoreCase( extension )
+                && ! "fs".equalsIgnoreCase( extension )
+                && ! "rsh".equalsIgnoreCase( extension )
+                && ! "d".equalsIgnoreCase( extension )
+                && ! "java".equalsIgnoreCase( extension )
+                && ! "scala".equalsIgnoreCase( extension )
+                && ! "class".equalsIgnoreCase( extension )
+                && ! "scc".equalsIgnoreCase( extension )
+                && ! "swp".equalsIgnoreCase( extension )
+                && ! "thumbs.db".equalsIgnoreCase( fileName )
+                && ! "picasa.ini".equalsIgnoreCase( fileName )
+                && ! "package.html".equalsIgnoreCase( fileName )
+                && ! "overview.html".equalsIgnoreCase( fileName );
+    }
+
+    /**
+     * A file read, and deflated if needed, ready to be written.
+     */
+    private static final class PreparedEntry
+    {
+        private final File file;
+        private final String path;
+        private final boolean deflated;
+        private final int alignment;
+        private final long time;
+        private final long size;
+        private final long crc;
+        private final byte[] data;
+        private final String digest;
+
+        private PreparedEntry( File file, String path, boolean deflate, int alignment, boolean digest )
+                throws IOException
+        {
+            this.file = file;
+            this.path = path;
+            this.deflated = deflate;
+            this.alignment = alignment;
+            this.time = file.lastModified();
+            final byte[] content = FileUtils.readFileToByteArray( file );
+            final CRC32 checksum = new CRC32();
+            checksum.update( content );
+            this.size = content.length;
+            this.crc = checksum.getValue();
+            this.data = deflate ? RawZipWriter.deflate( content, Deflater.DEFAULT_COMPRESSION ) : content;
+            this.digest = digest ? ApkSigner.digest( content ) : null;
+        }
+    }
+
+    /**
+     * Selects native libraries by include and exclude patterns on their path in the APK.
+     */
+    public static class NativeLibrarySelector
+    {
+        private final PathMatcher includes;
+        private final PathMatcher excludes;
+
+        /**
+         * @param includes the patterns of the libraries to select, <code>null</code> for none.
+         * @param excludes the patterns of the libraries to leave out of the includes, <code>null</code> for none.
+         */
+        public NativeLibrarySelector( String[] includes, String[] excludes )
+        {
+            this.includes = new PathMatcher( includes );
+            this.excludes = new PathMatcher( excludes );
+        }
+
+        /**
+         * @param path the path of a native library in the APK.
+         * @return <code>true</code> if the library matches an include and no exclude.
+         */
+        public boolean matches( String path )
+        {
+            return includes.matches( path ) && ! excludes.matches( path );
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.jayway.maven.plugins.android.phase09package;
+
+import com.jayway.maven.plugins.android.CommandExecutor;
+import com.jayway.maven.plugins.android.ExecutionException;
+import com.jayway.maven.plugins.android.common.CacheEvictor;
+import com.jayway.maven.plugins.android.common.DigestHelper;
+import com.jayway.maven.plugins.android.common.DirectorySynchronizer;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Crunches PNG images with <code>aapt singleCrunch</code> into a content addressed cache, so that every distinct
+ * image is crunched once, whatever module or branch it is built in. Used as the transformer of the resource folders
+ * given to <code>aapt package --no-crunch</code>.
+ * <p/>
+ * The cache key is the hash of the image, whether it is a nine-patch, and the aapt executable. Entries are written
+ * to a temporary file and renamed, so that several builds can share the cache. Only images of drawable and mipmap
+ * folders are crunched, like aapt does; images of other folders, e.g. <code>raw</code>, are copied as they are.
+ * <p/>
+ * The cache is kept within a maximum size by evicting the least recently used images, see {@link #evict()}.
+ */
+public class PngCruncher implements DirectorySynchronizer.Transformer
+{
+    private static final String PNG = ".png";
+    private static final String NINE_PATCH = ".9.png";
+    private static final int KEY_FOLDER_LENGTH = 2;
+    private static final String[] CRUNCHED_TYPES = { "drawable", "mipmap" };
+
+    private final String aapt;
+    private final String aaptKey;
+    private final File cacheDirectory;
+    private final long maxCacheSize;
+    private final Log log;
+
+    /**
+     * @param aapt           the path of the aapt executable.
+     * @param cacheDirectory the cache of crunched images.
+     * @param maxCacheSize   the size in bytes above which the least recently used images are evicted.
+     * @param log            the log of the calling mojo.
+     */
+    public PngCruncher( String aapt, File cacheDirectory, long maxCacheSize, Log log )
+    {
+        final File aaptFile = new File( aapt );
+        this.aapt = aapt;
+        this.aaptKey = aaptFile.getAbsolutePath() + "|" + aaptFile.length() + "|" + aaptFile.lastModified();
+        this.cacheDirectory = cacheDirectory;
+        this.maxCacheSize = maxCacheSize;
+        this.log = log;
+    }
+
+    @Override
+    public boolean accepts( String path )
+    {
+        final int slash = path.indexOf( '/' );
+        if ( slash < 0 || ! path.toLowerCase( Locale.ENGLISH ).endsWith( PNG ) )
+        {
+            return false;
+        }
+        // the resource type without its qualifiers, e.g. drawable for drawable-hdpi-v11
+        final String folder = path.substring( 0, slash );
+        final int dash = folder.indexOf( '-' );
+        final String type = dash < 0 ? folder : folder.substring( 0, dash );
+        for ( String crunchedType : CRUNCHED_TYPES )
+        {
+            if ( crunchedType.equals( type ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String transform( File source, File target ) throws IOException
+    {
+        final String hash = DigestHelper.sha256( source );
+        final boolean ninePatch = source.getName().toLowerCase( Locale.ENGLISH ).endsWith( NINE_PATCH );
+        final String key = DigestHelper.sha256( hash, String.valueOf( ninePatch ), aaptKey );
+        final File cached = new File( cacheDirectory, key.substring( 0, KEY_FOLDER_LENGTH ) + File.separator + key
+                + PNG );
+        if ( ! cached.isFile() )
+        {
+            crunch( source, cached, ninePatch );
+        }
+        else
+        {
+            log.debug( "Using crunched " + cached + " for " + source );
+            CacheEvictor.touch( cached );
+        }
+        FileUtils.copyFile( cached, target );
+        return hash;
+    }
+
+    /**
+     * Deletes the least recently used images until the cache fits in its maximum size again, along with temporary
+     * files abandoned by builds that did not finish.
+     */
+    public void evict()
+    {
+        CacheEvictor.evict( cacheDirectory, 1, maxCacheSize, log );
+    }
+
+    private void crunch( File source, File cached, boolean ninePatch ) throws IOException
+    {
+        final File folder = cached.getParentFile();
+        // another build may be creating the same folder
+        if ( ! folder.mkdirs() && ! folder.isDirectory() )
+        {
+            throw new IOException( "Could not create " + folder );
+        }
+        final File crunched = File.createTempFile( cached.getName(), CacheEvictor.TEMP_SUFFIX, folder );
+        try
+        {
+            final List< String > commands = new ArrayList< String >();
+            commands.add( "singleCrunch" );
+            commands.add( "-i" );
+            commands.add( source.getAbsolutePath() );
+            commands.add( "-o" );
+            commands.add( crunched.getAbsolutePath() );
+            final CommandExecutor executor = CommandExecutor.Factory.createDefaultCommmandExecutor();
+            executor.setLogger( log );
+            try
+            {
+                executor.executeCommand( aapt, commands, false );
+            }
+            catch ( ExecutionException e )
+            {
+                throw new IOException( "Could not crunch " + source + ": " + e.getMessage() );
+            }
+            // like aapt, keep the original if crunching did not make it smaller; nine-patches must be compiled
+            if ( ! ninePatch && crunched.length() >= source.length() )
+            {
+                FileUtils.copyFile( source, crunched );
+            }
+            if ( ! crunched.renameTo( cached ) && ! cached.isFile() )
+            {
+                throw new IOException( "Could not move " + crunched + " to " + cached );
+            }
+        }
+        finally
+        {
+            if ( crunched.exists() )
+            {
+                crunched.delete();
+            }
+        }
+    }
+}
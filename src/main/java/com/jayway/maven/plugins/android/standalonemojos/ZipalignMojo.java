@@ -3,6 +3,7 @@ package com.jayway.maven.plugins.android.standalonemojos;
 import com.jayway.maven.plugins.android.AbstractAndroidMojo;
 import com.jayway.maven.plugins.android.CommandExecutor;
 import com.jayway.maven.plugins.android.ExecutionException;
+import com.jayway.maven.plugins.android.common.ZipAligner;
 import com.jayway.maven.plugins.android.config.ConfigHandler;
 import com.jayway.maven.plugins.android.config.ConfigPojo;
 import com.jayway.maven.plugins.android.config.PullParameter;
@@ -71,6 +72,41 @@ public class ZipalignMojo extends AbstractAndroidMojo
     @PullParameter( defaultValue = "false" )
     private Boolean parsedVerbose;
 
+    /**
+     * Align the apk in Java instead of running the zipalign tool of the SDK. Entries are copied as they are, only
+     * the local headers of stored entries change, and an apk that is already aligned is not rewritten. Defaults to
+     * "true".
+     * @parameter expression="${android.zipalign.inProcess}"
+     * @see com.jayway.maven.plugins.android.configuration.Zipalign#inProcess
+     */
+    private Boolean zipalignInProcess;
+
+    @PullParameter( defaultValue = "true" )
+    private Boolean parsedInProcess;
+
+    /**
+     * Only verify that the input apk is aligned, like <code>zipalign -c</code>, and fail the build if it is not.
+     * Nothing is written or attached. Defaults to "false".
+     * @parameter expression="${android.zipalign.verifyOnly}"
+     * @see com.jayway.maven.plugins.android.configuration.Zipalign#verifyOnly
+     */
+    private Boolean zipalignVerifyOnly;
+
+    @PullParameter( defaultValue = "false" )
+    private Boolean parsedVerifyOnly;
+
+    /**
+     * Align stored native libraries on 4096 byte pages instead of 4 bytes, like <code>zipalign -p</code>, so that
+     * libraries packaged uncompressed by the apk goal can still be loaded directly from the apk. The alignment is
+     * verified afterwards. Only applies when aligning in process. Defaults to "true".
+     * @parameter expression="${android.zipalign.pageAlignNativeLibraries}"
+     * @see com.jayway.maven.plugins.android.configuration.Zipalign#pageAlignNativeLibraries
+     */
+    private Boolean zipalignPageAlignNativeLibraries;
+
+    @PullParameter( defaultValue = "true" )
+    private Boolean parsedPageAlignNativeLibraries;
+
     /**
      * The apk file to be zipaligned. Per default the file is taken from build directory (target normally) using the
      * build final name as file name and apk as extension.
@@ -127,6 +163,9 @@ public class ZipalignMojo extends AbstractAndroidMojo
 
         getLog().debug( "skip:" + parsedSkip );
         getLog().debug( "verbose:" + parsedVerbose );
+        getLog().debug( "inProcess:" + parsedInProcess );
+        getLog().debug( "verifyOnly:" + parsedVerifyOnly );
+        getLog().debug( "pageAlignNativeLibraries:" + parsedPageAlignNativeLibraries );
         getLog().debug( "inputApk:" + parsedInputApk );
         getLog().debug( "outputApk:" + parsedOutputApk );
 
@@ -134,6 +173,14 @@ public class ZipalignMojo extends AbstractAndroidMojo
         {
             getLog().info( "Skipping zipalign" );
         }
+        else if ( parsedVerifyOnly )
+        {
+            verifyAlignment();
+        }
+        else if ( parsedInProcess )
+        {
+            alignInProcess();
+        }
         else
         {
             boolean outputToSameFile = sameOutputAsInput();
@@ -196,6 +243,83 @@ public class ZipalignMojo extends AbstractAndroidMojo
         }
     }
 
+    private void verifyAlignment() throws MojoExecutionException, MojoFailureException
+    {
+        verifyAlignment( parsedInputApk );
+    }
+
+    private void verifyAlignment( String apk ) throws MojoExecutionException, MojoFailureException
+    {
+        final List<String> misaligned = getMisalignedEntries( new File( apk ) );
+        if ( ! misaligned.isEmpty() )
+        {
+            throw new MojoFailureException( apk + " is not aligned, " + misaligned.size()
+                    + " stored entries are misaligned: " + misaligned );
+        }
+        getLog().info( "Verified alignment of " + apk );
+    }
+
+    private void alignInProcess() throws MojoExecutionException, MojoFailureException
+    {
+        final boolean outputToSameFile = sameOutputAsInput();
+        final File inputApk = new File( parsedInputApk );
+        final File outputApk = new File( parsedOutputApk );
+
+        final List<String> misaligned = getMisalignedEntries( inputApk );
+        try
+        {
+            if ( misaligned.isEmpty() )
+            {
+                getLog().info( parsedInputApk + " is already aligned" );
+                if ( ! outputToSameFile )
+                {
+                    org.apache.commons.io.FileUtils.copyFile( inputApk, outputApk );
+                }
+            }
+            else
+            {
+                if ( parsedVerbose )
+                {
+                    getLog().info( "Aligning " + misaligned.size() + " stored entries: " + misaligned );
+                }
+                final File alignedApk = outputToSameFile ? new File( getTemporaryOutputApkFilename() ) : outputApk;
+                ZipAligner.align( inputApk, alignedApk, ZipAligner.DEFAULT_ALIGNMENT, parsedPageAlignNativeLibraries );
+                if ( outputToSameFile )
+                {
+                    FileUtils.rename( alignedApk, inputApk );
+                }
+                getLog().info( "Aligned " + parsedInputApk );
+                if ( parsedPageAlignNativeLibraries )
+                {
+                    verifyAlignment( parsedOutputApk );
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not align " + parsedInputApk, e );
+        }
+
+        if ( ! outputToSameFile )
+        {
+            projectHelper.attachArtifact( project, APK, "aligned", outputApk );
+            getLog().info( "Attach " + getFullPathWithName( parsedOutputApk ) + " to the project" );
+        }
+    }
+
+    private List<String> getMisalignedEntries( File apk ) throws MojoExecutionException
+    {
+        try
+        {
+            return ZipAligner.getMisalignedEntries( apk, ZipAligner.DEFAULT_ALIGNMENT,
+                    parsedPageAlignNativeLibraries );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not read " + apk, e );
+        }
+    }
+
     private String getFullPathWithName( String filename )
     {
         return FilenameUtils.getFullPath( filename ) + FilenameUtils.getName( filename );
@@ -0,0 +1,41 @@
+package com.jayway.maven.plugins.android;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AndroidSignerTest
+{
+    @Test
+    public void testAutoSignsWithDebugKeyStoreByDefault()
+    {
+        final AndroidSigner signer = new AndroidSigner( "auto" );
+        assertTrue( signer.isSignWithDebugKeyStore() );
+        assertFalse( signer.isSignWithReleaseKeyStore() );
+    }
+
+    @Test
+    public void testAutoSignsWithReleaseKeyStoreWhenConfigured()
+    {
+        final AndroidSigner signer = new AndroidSigner( "auto", true );
+        assertFalse( signer.isSignWithDebugKeyStore() );
+        assertTrue( signer.isSignWithReleaseKeyStore() );
+    }
+
+    @Test
+    public void testDebugTrueIgnoresReleaseKeyStore()
+    {
+        final AndroidSigner signer = new AndroidSigner( "true", true );
+        assertTrue( signer.isSignWithDebugKeyStore() );
+        assertFalse( signer.isSignWithReleaseKeyStore() );
+    }
+
+    @Test
+    public void testDebugFalseSignsOnlyWithReleaseKeyStore()
+    {
+        assertFalse( new AndroidSigner( "false" ).isSignWithDebugKeyStore() );
+        assertFalse( new AndroidSigner( "false" ).isSignWithReleaseKeyStore() );
+        assertTrue( new AndroidSigner( "false", true ).isSignWithReleaseKeyStore() );
+    }
+}
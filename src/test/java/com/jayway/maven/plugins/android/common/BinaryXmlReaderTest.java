@@ -0,0 +1,131 @@
+package com.jayway.maven.plugins.android.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class BinaryXmlReaderTest
+{
+    private static final String ANDROID = ManifestMetadata.ANDROID_NAMESPACE;
+
+    private static final String[] STRINGS = {
+            "manifest", "package", "com.example.binary", ANDROID, "versionCode", "application", "debuggable" };
+
+    @Test
+    public void testReadsElementsAndTypedAttributes() throws Exception
+    {
+        final BinaryXmlReader reader = new BinaryXmlReader( createManifest() );
+
+        assertTrue( reader.next() );
+        assertEquals( "manifest", reader.getName() );
+        assertEquals( 1, reader.getDepth() );
+        assertEquals( "com.example.binary", reader.getAttributeValue( null, "package" ) );
+        assertEquals( "42", reader.getAttributeValue( ANDROID, "versionCode" ) );
+        assertNull( reader.getAttributeValue( null, "versionCode" ) );
+
+        assertTrue( reader.next() );
+        assertEquals( "application", reader.getName() );
+        assertEquals( 2, reader.getDepth() );
+        assertEquals( "true", reader.getAttributeValue( ANDROID, "debuggable" ) );
+
+        assertFalse( reader.next() );
+    }
+
+    @Test( expected = IOException.class )
+    public void testRejectsTextXml() throws Exception
+    {
+        new BinaryXmlReader( "<manifest package=\"com.example\"/>".getBytes( "UTF-8" ) );
+    }
+
+    @Test
+    public void testReadsManifestOfApks() throws Exception
+    {
+        final ManifestMetadata apidemos = ManifestMetadata.getFromApk( getResource(
+                "apidemos-0.1.0-SNAPSHOT.apk" ) );
+        assertEquals( "com.example.android.apis", apidemos.getPackageName() );
+
+        final ManifestMetadata tests = ManifestMetadata.getFromApk( getResource(
+                "apidemos-platformtests-0.1.0-SNAPSHOT.apk" ) );
+        assertEquals( "com.example.android.apis.tests", tests.getPackageName() );
+        assertEquals( "android.test.InstrumentationTestRunner", tests.getInstrumentationRunner() );
+        assertEquals( "com.example.android.apis", tests.getInstrumentationTargetPackage() );
+    }
+
+    private File getResource( String name ) throws Exception
+    {
+        return new File( getClass().getResource( "/com/jayway/maven/plugins/android/" + name ).toURI() );
+    }
+
+    /**
+     * Compiles <code>&lt;manifest package="com.example.binary" android:versionCode="42"&gt;&lt;application
+     * android:debuggable="true"/&gt;&lt;/manifest&gt;</code> like aapt does, with a UTF-8 string pool.
+     */
+    private byte[] createManifest() throws Exception
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate( 1024 ).order( ByteOrder.LITTLE_ENDIAN );
+        buffer.putShort( ( short ) 0x0003 ).putShort( ( short ) 8 ).putInt( 0 );
+
+        final int pool = buffer.position();
+        final int poolHeader = 28;
+        buffer.putShort( ( short ) 0x0001 ).putShort( ( short ) poolHeader ).putInt( 0 );
+        buffer.putInt( STRINGS.length ).putInt( 0 ).putInt( 1 << 8 )
+              .putInt( poolHeader + 4 * STRINGS.length ).putInt( 0 );
+        final int offsets = buffer.position();
+        buffer.position( offsets + 4 * STRINGS.length );
+        final int strings = buffer.position();
+        for ( int i = 0; i < STRINGS.length; i++ )
+        {
+            buffer.putInt( offsets + 4 * i, buffer.position() - strings );
+            final byte[] bytes = STRINGS[ i ].getBytes( "UTF-8" );
+            buffer.put( ( byte ) STRINGS[ i ].length() ).put( ( byte ) bytes.length ).put( bytes ).put( ( byte ) 0 );
+        }
+        while ( buffer.position() % 4 != 0 )
+        {
+            buffer.put( ( byte ) 0 );
+        }
+        buffer.putInt( pool + 4, buffer.position() - pool );
+
+        startElement( buffer, 0, 2 );
+        attribute( buffer, -1, 1, 2, 0x03, 2 );
+        attribute( buffer, 3, 4, -1, 0x10, 42 );
+        startElement( buffer, 5, 1 );
+        attribute( buffer, 3, 6, -1, 0x12, -1 );
+        endElement( buffer, 5 );
+        endElement( buffer, 0 );
+
+        buffer.putInt( 4, buffer.position() );
+        final byte[] data = new byte[ buffer.position() ];
+        buffer.rewind();
+        buffer.get( data );
+        return data;
+    }
+
+    private void startElement( ByteBuffer buffer, int name, int attributeCount )
+    {
+        buffer.putShort( ( short ) 0x0102 ).putShort( ( short ) 16 ).putInt( 36 + 20 * attributeCount );
+        buffer.putInt( 1 ).putInt( -1 );
+        buffer.putInt( -1 ).putInt( name ).putShort( ( short ) 20 ).putShort( ( short ) 20 )
+              .putShort( ( short ) attributeCount ).putShort( ( short ) 0 ).putShort( ( short ) 0 )
+              .putShort( ( short ) 0 );
+    }
+
+    private void attribute( ByteBuffer buffer, int namespace, int name, int rawValue, int type, int data )
+    {
+        buffer.putInt( namespace ).putInt( name ).putInt( rawValue );
+        buffer.putShort( ( short ) 8 ).put( ( byte ) 0 ).put( ( byte ) type ).putInt( data );
+    }
+
+    private void endElement( ByteBuffer buffer, int name )
+    {
+        buffer.putShort( ( short ) 0x0103 ).putShort( ( short ) 16 ).putInt( 24 );
+        buffer.putInt( 1 ).putInt( -1 ).putInt( -1 ).putInt( name );
+    }
+}
@@ -0,0 +1,113 @@
+package com.jayway.maven.plugins.android.common;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CacheEvictorTest
+{
+    private static final long A_MINUTE = 60 * 1000L;
+    private static final long TWO_HOURS = 120 * A_MINUTE;
+    private static final String CONTENT = StringUtils.repeat( "x", 100 );
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File cache;
+    private long now;
+
+    @Before
+    public void setUp()
+    {
+        cache = new File( folder.getRoot(), "cache" );
+        now = System.currentTimeMillis();
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedEntries() throws Exception
+    {
+        final File oldest = entry( "a.jar", 4 );
+        final File old = entry( "b.jar", 3 );
+        final File recent = entry( "c.jar", 2 );
+        final File newest = entry( "d.jar", 1 );
+        CacheEvictor.touch( oldest );
+
+        CacheEvictor.evict( cache, 0, 250, new SystemStreamLog() );
+
+        assertTrue( oldest.isFile() );
+        assertFalse( old.exists() );
+        assertFalse( recent.exists() );
+        assertTrue( newest.isFile() );
+    }
+
+    @Test
+    public void testKeepsCacheWithinMaximumSize() throws Exception
+    {
+        final File first = entry( "a.jar", 2 );
+        final File second = entry( "b.jar", 1 );
+
+        CacheEvictor.evict( cache, 0, 200, new SystemStreamLog() );
+
+        assertTrue( first.isFile() );
+        assertTrue( second.isFile() );
+    }
+
+    @Test
+    public void testEvictsFoldersBelowPrefixFolders() throws Exception
+    {
+        final File old = entry( "ab/abc/res/values/strings.xml", 2 ).getParentFile().getParentFile().getParentFile();
+        old.setLastModified( now - 2 * A_MINUTE );
+        final File recent = entry( "cd/cde/res/values/strings.xml", 1 ).getParentFile().getParentFile()
+                .getParentFile();
+        recent.setLastModified( now - A_MINUTE );
+
+        CacheEvictor.evict( cache, 1, 150, new SystemStreamLog() );
+
+        assertFalse( old.exists() );
+        assertTrue( new File( recent, "res/values/strings.xml" ).isFile() );
+        assertTrue( new File( cache, "ab" ).isDirectory() );
+    }
+
+    @Test
+    public void testDeletesOnlyStaleTemporaryFiles() throws Exception
+    {
+        final File staleFile = write( "ab/abc.123.tmp", TWO_HOURS );
+        final File staleFolder = write( "def456.tmp/res/values/strings.xml", 0 ).getParentFile().getParentFile()
+                .getParentFile();
+        staleFolder.setLastModified( now - TWO_HOURS );
+        final File running = write( "ab/abd.456.tmp", 0 );
+        final File entry = entry( "ab/abe", 1 );
+
+        CacheEvictor.evict( cache, 1, Long.MAX_VALUE, new SystemStreamLog() );
+
+        assertFalse( staleFile.exists() );
+        assertFalse( staleFolder.exists() );
+        assertTrue( running.isFile() );
+        assertTrue( entry.isFile() );
+    }
+
+    /**
+     * Writes a cache entry of 100 bytes last used the given number of minutes ago.
+     */
+    private File entry( String path, int minutesAgo ) throws Exception
+    {
+        return write( path, minutesAgo * A_MINUTE );
+    }
+
+    private File write( String path, long age ) throws Exception
+    {
+        final File file = new File( cache, path );
+        FileUtils.writeStringToFile( file, CONTENT );
+        file.setLastModified( now - age );
+        return file;
+    }
+}
@@ -0,0 +1,66 @@
+package com.jayway.maven.plugins.android.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DigestHelperTest
+{
+    private static final long A_MINUTE = 60000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testHashesContent() throws Exception
+    {
+        final File first = write( "first.jar", "content" );
+        final File second = write( "second.jar", "content" );
+
+        assertEquals( DigestHelper.sha256( first ), DigestHelper.sha256( second ) );
+        assertEquals( 64, DigestHelper.sha256( first ).length() );
+    }
+
+    @Test
+    public void testMemoizesUntilSizeOrTimeChanges() throws Exception
+    {
+        final File file = write( "library.jar", "aaaa" );
+        final long modified = file.lastModified() - A_MINUTE;
+        file.setLastModified( modified );
+        final String hash = DigestHelper.sha256( file );
+
+        // same size and time stamp: the memoized hash is used without reading the file
+        FileUtils.writeStringToFile( file, "bbbb" );
+        file.setLastModified( modified );
+        assertEquals( hash, DigestHelper.sha256( file ) );
+
+        file.setLastModified( modified + A_MINUTE );
+        final String touched = DigestHelper.sha256( file );
+        assertNotEquals( hash, touched );
+        assertEquals( DigestHelper.sha256( write( "copy.jar", "bbbb" ) ), touched );
+
+        FileUtils.writeStringToFile( file, "bbbbb" );
+        file.setLastModified( modified + A_MINUTE );
+        assertNotEquals( touched, DigestHelper.sha256( file ) );
+    }
+
+    @Test
+    public void testSeparatesValues()
+    {
+        assertNotEquals( DigestHelper.sha256( "ab", "c" ), DigestHelper.sha256( "a", "bc" ) );
+        assertEquals( DigestHelper.sha256( "a", "bc" ), DigestHelper.sha256( "a", "bc" ) );
+    }
+
+    private File write( String path, String content ) throws Exception
+    {
+        final File file = new File( folder.getRoot(), path );
+        FileUtils.writeStringToFile( file, content );
+        return file;
+    }
+}
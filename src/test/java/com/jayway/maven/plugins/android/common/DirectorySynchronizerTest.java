@@ -0,0 +1,101 @@
+package com.jayway.maven.plugins.android.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DirectorySynchronizerTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dependency;
+    private File local;
+    private File target;
+    private File state;
+
+    @Before
+    public void createSources() throws Exception
+    {
+        dependency = folder.newFolder( "dependency" );
+        local = folder.newFolder( "local" );
+        target = new File( folder.getRoot(), "combined/assets" );
+        state = new File( folder.getRoot(), "combined/assets.state" );
+        FileUtils.writeStringToFile( new File( dependency, "shared.txt" ), "dependency" );
+        FileUtils.writeStringToFile( new File( dependency, "sounds/beep.ogg" ), "beep" );
+        FileUtils.writeStringToFile( new File( dependency, ".svn/entries" ), "svn" );
+        FileUtils.writeStringToFile( new File( local, "shared.txt" ), "local" );
+        FileUtils.writeStringToFile( new File( local, "backup.txt~" ), "backup" );
+    }
+
+    @Test
+    public void testLaterSourcesTakePrecedence() throws Exception
+    {
+        assertEquals( 2, synchronize( true ) );
+
+        assertEquals( "local", FileUtils.readFileToString( new File( target, "shared.txt" ) ) );
+        assertEquals( "beep", FileUtils.readFileToString( new File( target, "sounds/beep.ogg" ) ) );
+        assertFalse( new File( target, ".svn" ).exists() );
+        assertFalse( new File( target, "backup.txt~" ).exists() );
+    }
+
+    @Test
+    public void testOnlyCopiesChanges() throws Exception
+    {
+        synchronize( false );
+        assertEquals( 0, synchronize( false ) );
+
+        final File changed = new File( local, "shared.txt" );
+        FileUtils.writeStringToFile( changed, "changed" );
+        changed.setLastModified( changed.lastModified() + 2000 );
+        assertEquals( 1, synchronize( false ) );
+        assertEquals( "changed", FileUtils.readFileToString( new File( target, "shared.txt" ) ) );
+
+        // same content, new time stamp
+        final File touched = new File( dependency, "sounds/beep.ogg" );
+        touched.setLastModified( touched.lastModified() + 2000 );
+        assertEquals( 0, synchronize( false ) );
+    }
+
+    @Test
+    public void testDeletesRemovedFiles() throws Exception
+    {
+        synchronize( true );
+        assertTrue( new File( dependency, "sounds/beep.ogg" ).delete() );
+
+        assertEquals( 1, synchronize( true ) );
+        assertFalse( new File( target, "sounds" ).exists() );
+        assertTrue( new File( target, "shared.txt" ).exists() );
+    }
+
+    @Test
+    public void testReplacingLinkedFileKeepsSource() throws Exception
+    {
+        synchronize( true );
+        final File source = new File( local, "shared.txt" );
+        assertTrue( source.delete() );
+
+        synchronize( true );
+        assertEquals( "dependency", FileUtils.readFileToString( new File( target, "shared.txt" ) ) );
+        assertEquals( "dependency", FileUtils.readFileToString( new File( dependency, "shared.txt" ) ) );
+    }
+
+    private int synchronize( boolean hardLinks ) throws Exception
+    {
+        final DirectorySynchronizer synchronizer = new DirectorySynchronizer( target, state,
+                new SystemStreamLog() );
+        synchronizer.setHardLinks( hardLinks );
+        synchronizer.addSource( dependency );
+        synchronizer.addSource( local );
+        return synchronizer.synchronize();
+    }
+}
@@ -0,0 +1,62 @@
+package com.jayway.maven.plugins.android.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ManifestMetadataTest
+{
+    private static final String MANIFEST = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<manifest xmlns:android=\"http://schemas.android.com/apk/res/android\"\n"
+            + "    package=\"com.example.app\" android:versionCode=\"7\" android:versionName=\"1.2\">\n"
+            + "  <uses-sdk android:minSdkVersion=\"8\" android:targetSdkVersion=\"16\"/>\n"
+            + "  <application android:debuggable=\"true\">\n"
+            + "    <activity android:name=\".Main\"/>\n"
+            + "  </application>\n"
+            + "  <instrumentation android:name=\"android.test.InstrumentationTestRunner\"\n"
+            + "      android:targetPackage=\"com.example.app\"/>\n"
+            + "</manifest>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadsManifestValues() throws Exception
+    {
+        final File manifest = folder.newFile( "AndroidManifest.xml" );
+        FileUtils.writeStringToFile( manifest, MANIFEST );
+
+        final ManifestMetadata metadata = ManifestMetadata.get( manifest );
+
+        assertEquals( "com.example.app", metadata.getPackageName() );
+        assertEquals( "7", metadata.getVersionCode() );
+        assertEquals( "1.2", metadata.getVersionName() );
+        assertEquals( "8", metadata.getMinSdkVersion() );
+        assertEquals( "16", metadata.getTargetSdkVersion() );
+        assertEquals( "true", metadata.getDebuggable() );
+        assertEquals( "android.test.InstrumentationTestRunner", metadata.getInstrumentationRunner() );
+    }
+
+    @Test
+    public void testMemoizesUntilFileChanges() throws Exception
+    {
+        final File manifest = folder.newFile( "AndroidManifest.xml" );
+        FileUtils.writeStringToFile( manifest, MANIFEST );
+
+        final ManifestMetadata first = ManifestMetadata.get( manifest );
+        assertSame( first, ManifestMetadata.get( manifest ) );
+
+        FileUtils.writeStringToFile( manifest, "<manifest package=\"com.example.other\"/>" );
+        final ManifestMetadata changed = ManifestMetadata.get( manifest );
+        assertEquals( "com.example.other", changed.getPackageName() );
+        assertNull( changed.getInstrumentationRunner() );
+        assertNull( changed.getMinSdkVersion() );
+    }
+}
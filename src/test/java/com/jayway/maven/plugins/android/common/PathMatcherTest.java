@@ -0,0 +1,50 @@
+package com.jayway.maven.plugins.android.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.codehaus.plexus.util.SelectorUtils;
+import org.junit.Test;
+
+public class PathMatcherTest
+{
+    private static final String[] PATTERNS = { "services/**", "LICENSE*", "*/notice.txt", "a?c.txt" };
+
+    private static final String[] PATHS = { "META-INF/services/javax.script.ScriptEngineFactory",
+            "META-INF/services/nested/file", "META-INF/LICENSE", "META-INF/LICENSE.txt", "META-INF/legal/LICENSE",
+            "META-INF/legal/notice.txt", "META-INF/notice.txt", "META-INF/abc.txt", "META-INF/abbc.txt",
+            "META-INF/a.c.txt", "META-INF/MANIFEST.MF", "services/file" };
+
+    @Test
+    public void testMatchesLikeSelectorUtils()
+    {
+        final PathMatcher matcher = new PathMatcher( "META-INF/", PATTERNS );
+        for ( String path : PATHS )
+        {
+            boolean expected = false;
+            for ( String pattern : PATTERNS )
+            {
+                expected |= SelectorUtils.matchPath( "META-INF/" + pattern, path );
+            }
+            assertEquals( path, expected, matcher.matches( path ) );
+        }
+    }
+
+    @Test
+    public void testAnyFolders()
+    {
+        final PathMatcher matcher = new PathMatcher( new String[] { "lib/**/*.so" } );
+        assertTrue( matcher.matches( "lib/armeabi/libfoo.so" ) );
+        assertTrue( matcher.matches( "lib/libfoo.so" ) );
+        assertFalse( matcher.matches( "lib/armeabi/gdbserver" ) );
+        assertFalse( matcher.matches( "assets/lib/armeabi/libfoo.so" ) );
+    }
+
+    @Test
+    public void testEmptyMatchesNothing()
+    {
+        assertFalse( new PathMatcher( null ).matches( "anything" ) );
+        assertFalse( new PathMatcher( new String[ 0 ] ).matches( "" ) );
+    }
+}
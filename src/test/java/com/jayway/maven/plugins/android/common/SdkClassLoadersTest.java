@@ -0,0 +1,35 @@
+package com.jayway.maven.plugins.android.common;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.net.URLClassLoader;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SdkClassLoadersTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSharesClassLoaderUntilJarChanges() throws Exception
+    {
+        final File jar = folder.newFile( "manifmerger.jar" );
+        final ClassLoader parent = getClass().getClassLoader();
+
+        final URLClassLoader loader = SdkClassLoaders.get( jar, parent );
+        assertSame( loader, SdkClassLoaders.get( jar, parent ) );
+        assertSame( parent, loader.getParent() );
+
+        final URLClassLoader child = SdkClassLoaders.get( folder.newFile( "common.jar" ), loader );
+        assertSame( loader, child.getParent() );
+
+        FileUtils.writeStringToFile( jar, "updated" );
+        assertNotSame( loader, SdkClassLoaders.get( jar, parent ) );
+    }
+}
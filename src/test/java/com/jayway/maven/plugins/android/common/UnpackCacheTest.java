@@ -0,0 +1,140 @@
+package com.jayway.maven.plugins.android.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UnpackCacheTest
+{
+    private static final long A_MINUTE = 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testUnpacksEachArchiveOnceIntoCache() throws Exception
+    {
+        final File apklib = zip( "library.apklib", "res/values/strings.xml", "src/com/example/Library.java" );
+        final File cacheDirectory = new File( folder.getRoot(), "cache" );
+        final UnpackCache cache = new UnpackCache( cacheDirectory, Long.MAX_VALUE, new SystemStreamLog() );
+
+        final File first = new File( folder.getRoot(), "first/library" );
+        final File second = new File( folder.getRoot(), "second/library" );
+        cache.unpack( Collections.singletonList( apklib ), first );
+        cache.unpack( Collections.singletonList( apklib ), second );
+
+        assertEquals( 1, cacheDirectory.list().length );
+        assertEquals( "res/values/strings.xml",
+                FileUtils.readFileToString( new File( second, "res/values/strings.xml" ) ) );
+        assertTrue( new File( first, "src/com/example/Library.java" ).isFile() );
+    }
+
+    @Test
+    public void testUpdatesWhenArchivesChange() throws Exception
+    {
+        final File sources = zip( "sources.apksources", "res/layout/old.xml", "assets/data.txt" );
+        final File overlay = zip( "overlay.apksources", "assets/data.txt" );
+        final UnpackCache cache = new UnpackCache( new File( folder.getRoot(), "cache" ), Long.MAX_VALUE,
+                new SystemStreamLog() );
+        final File target = new File( folder.getRoot(), "extracted" );
+        cache.unpack( Arrays.asList( sources, overlay ), target );
+
+        zip( "sources.apksources", "res/layout/newer.xml", "assets/data.txt" );
+        cache.unpack( Arrays.asList( sources, overlay ), target );
+
+        assertTrue( new File( target, "res/layout/newer.xml" ).isFile() );
+        assertFalse( new File( target, "res/layout/old.xml" ).exists() );
+        assertTrue( new File( target, "assets/data.txt" ).isFile() );
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedTrees() throws Exception
+    {
+        final File first = zip( "first.apklib", "res/values/first.xml" );
+        final File second = zip( "second.apklib", "res/values/second.xml" );
+        final File cacheDirectory = new File( folder.getRoot(), "cache" );
+        final UnpackCache cache = new UnpackCache( cacheDirectory, "res/values/second.xml".length(),
+                new SystemStreamLog() );
+        cache.unpack( Collections.singletonList( first ), new File( folder.getRoot(), "first" ) );
+        cache.unpack( Collections.singletonList( second ), new File( folder.getRoot(), "second" ) );
+        final File[] trees = cacheDirectory.listFiles();
+        for ( File tree : trees )
+        {
+            tree.setLastModified( System.currentTimeMillis() - A_MINUTE );
+        }
+
+        // unpacking again marks the tree as recently used
+        cache.unpack( Collections.singletonList( first ), new File( folder.getRoot(), "again" ) );
+        cache.evict();
+
+        assertEquals( 1, cacheDirectory.list().length );
+        assertTrue( new File( cacheDirectory.listFiles()[ 0 ], "res/values/first.xml" ).isFile() );
+        assertTrue( new File( folder.getRoot(), "second/res/values/second.xml" ).isFile() );
+    }
+
+    @Test
+    public void testUnpacksAgainWhenTreeWasEvicted() throws Exception
+    {
+        final File apklib = zip( "library.apklib", "res/values/strings.xml" );
+        final File overlay = zip( "overlay.apklib", "assets/data.txt" );
+        final File cacheDirectory = new File( folder.getRoot(), "cache" );
+        final UnpackCache cache = new UnpackCache( cacheDirectory, Long.MAX_VALUE, new SystemStreamLog() );
+        final File target = new File( folder.getRoot(), "library" );
+        cache.unpack( Collections.singletonList( apklib ), target );
+
+        // another build evicted the whole cache
+        FileUtils.deleteDirectory( cacheDirectory );
+        cache.unpack( Arrays.asList( apklib, overlay ), target );
+
+        assertTrue( new File( target, "res/values/strings.xml" ).isFile() );
+        assertTrue( new File( target, "assets/data.txt" ).isFile() );
+        assertEquals( 2, cacheDirectory.list().length );
+        assertTrue( new File( folder.getRoot(), "library.unpacked" ).isFile() );
+    }
+
+    @Test
+    public void testEvictsOnlyWhenSomethingWasUnpacked() throws Exception
+    {
+        final File apklib = zip( "library.apklib", "res/values/strings.xml" );
+        final File cacheDirectory = new File( folder.getRoot(), "cache" );
+        new UnpackCache( cacheDirectory, Long.MAX_VALUE, new SystemStreamLog() )
+                .unpack( Collections.singletonList( apklib ), new File( folder.getRoot(), "first" ) );
+
+        // the tree is already cached, so the next build leaves the oversized cache alone
+        final UnpackCache cache = new UnpackCache( cacheDirectory, 0, new SystemStreamLog() );
+        cache.unpack( Collections.singletonList( apklib ), new File( folder.getRoot(), "second" ) );
+        cache.evict();
+        assertEquals( 1, cacheDirectory.list().length );
+
+        cache.unpack( Collections.singletonList( zip( "other.apklib", "assets/data.txt" ) ),
+                new File( folder.getRoot(), "other" ) );
+        cache.evict();
+        assertEquals( 0, cacheDirectory.list().length );
+    }
+
+    private File zip( String name, String... entries ) throws Exception
+    {
+        final File file = new File( folder.getRoot(), name );
+        final ZipOutputStream out = new ZipOutputStream( new FileOutputStream( file ) );
+        for ( String entry : entries )
+        {
+            out.putNextEntry( new ZipEntry( entry ) );
+            out.write( entry.getBytes( "UTF-8" ) );
+        }
+        out.close();
+        return file;
+    }
+}
@@ -0,0 +1,126 @@
+package com.jayway.maven.plugins.android.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZipAlignerTest
+{
+    private static final String[] NAMES = { "a", "res/raw/bb.ogg", "classes.dex", "res/raw/c.png",
+            "lib/armeabi/libexample.so" };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAlignsStoredEntries() throws Exception
+    {
+        final File unaligned = createZip();
+        final File aligned = new File( folder.getRoot(), "aligned.zip" );
+
+        assertFalse( ZipAligner.isAligned( unaligned, ZipAligner.DEFAULT_ALIGNMENT ) );
+        ZipAligner.align( unaligned, aligned, ZipAligner.DEFAULT_ALIGNMENT );
+        assertTrue( ZipAligner.isAligned( aligned, ZipAligner.DEFAULT_ALIGNMENT ) );
+
+        final ZipFile expected = new ZipFile( unaligned );
+        final ZipFile actual = new ZipFile( aligned );
+        try
+        {
+            assertEquals( expected.size(), actual.size() );
+            for ( String name : NAMES )
+            {
+                assertArrayEquals( name, IOUtils.toByteArray( expected.getInputStream( expected.getEntry( name ) ) ),
+                        IOUtils.toByteArray( actual.getInputStream( actual.getEntry( name ) ) ) );
+            }
+        }
+        finally
+        {
+            expected.close();
+            actual.close();
+        }
+    }
+
+    @Test
+    public void testReportsMisalignedEntries() throws Exception
+    {
+        final File unaligned = createZip();
+
+        for ( String name : ZipAligner.getMisalignedEntries( unaligned, ZipAligner.DEFAULT_ALIGNMENT ) )
+        {
+            assertFalse( name, name.equals( "classes.dex" ) );
+        }
+        assertTrue( ZipAligner.isAligned( unaligned, 1 ) );
+    }
+
+    @Test
+    public void testPageAlignsNativeLibraries() throws Exception
+    {
+        final File unaligned = createZip();
+        final File aligned = new File( folder.getRoot(), "aligned.zip" );
+
+        ZipAligner.align( unaligned, aligned, ZipAligner.DEFAULT_ALIGNMENT, true );
+
+        assertTrue( ZipAligner.getMisalignedEntries( aligned, ZipAligner.DEFAULT_ALIGNMENT, true ).isEmpty() );
+        final RawZipFile zip = new RawZipFile( aligned );
+        try
+        {
+            final RawZipEntry library = zip.getEntry( "lib/armeabi/libexample.so" );
+            assertEquals( 0, zip.getDataOffset( library ) % ZipAligner.PAGE_ALIGNMENT );
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        // aligning again on 4 bytes only loses the page alignment
+        final File realigned = new File( folder.getRoot(), "realigned.zip" );
+        ZipAligner.align( aligned, realigned, ZipAligner.DEFAULT_ALIGNMENT );
+        assertEquals( 1, ZipAligner.getMisalignedEntries( realigned, ZipAligner.DEFAULT_ALIGNMENT, true ).size() );
+    }
+
+    /**
+     * Creates a zip file where every entry but the deflated <code>classes.dex</code> is stored.
+     */
+    private File createZip() throws Exception
+    {
+        final File file = new File( folder.getRoot(), "unaligned.zip" );
+        final ZipOutputStream out = new ZipOutputStream( new FileOutputStream( file ) );
+        try
+        {
+            for ( String name : NAMES )
+            {
+                final byte[] data = ( "content of " + name ).getBytes( "UTF-8" );
+                final ZipEntry entry = new ZipEntry( name );
+                if ( ! name.endsWith( ".dex" ) )
+                {
+                    final CRC32 crc = new CRC32();
+                    crc.update( data );
+                    entry.setMethod( ZipEntry.STORED );
+                    entry.setSize( data.length );
+                    entry.setCrc( crc.getValue() );
+                }
+                out.putNextEntry( entry );
+                out.write( data );
+                out.closeEntry();
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,83 @@
+package com.jayway.maven.plugins.android.phase01generatesources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AidlDependenciesTest
+{
+    private static final long AN_HOUR = 3600000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFindsImportedAidlFiles() throws Exception
+    {
+        final File src = folder.newFolder( "src" );
+        final File library = folder.newFolder( "library" );
+        final File service = write( src, "com/example/IService.aidl", "package com.example;\n"
+                + "import com.example.data.Item;\n"
+                + "import android.os.Bundle;\n"
+                + "interface IService { void put( in Item item ); }\n" );
+        final File item = write( library, "com/example/data/Item.aidl", "parcelable Item;\n" );
+
+        assertEquals( Arrays.asList( service, item ),
+                AidlDependencies.getDependencies( service, Arrays.asList( src, library ) ) );
+    }
+
+    @Test
+    public void testOutputIsUpToDateUntilDependencyChanges() throws Exception
+    {
+        final File stateFile = new File( folder.getRoot(), "aidl-dependencies" );
+        final File aidl = write( folder.getRoot(), "IService.aidl", "interface IService {}" );
+        final File imported = write( folder.getRoot(), "Item.aidl", "parcelable Item;" );
+        final File output = write( folder.getRoot(), "IService.java", "interface IService {}" );
+        final List< File > dependencies = Arrays.asList( aidl, imported );
+        final long compiled = System.currentTimeMillis();
+        aidl.setLastModified( compiled - AN_HOUR );
+        imported.setLastModified( compiled - AN_HOUR );
+
+        final AidlDependencies first = new AidlDependencies( stateFile, "-pframework.aidl" );
+        assertFalse( first.isUpToDate( output ) );
+        first.record( output, compiled, dependencies );
+        first.save();
+
+        assertTrue( new AidlDependencies( stateFile, "-pframework.aidl" ).isUpToDate( output ) );
+        assertFalse( new AidlDependencies( stateFile, "-pother.aidl" ).isUpToDate( output ) );
+        imported.setLastModified( compiled + AN_HOUR );
+        assertFalse( new AidlDependencies( stateFile, "-pframework.aidl" ).isUpToDate( output ) );
+    }
+
+    @Test
+    public void testForgetsRemovedOutputs() throws Exception
+    {
+        final AidlDependencies dependencies = new AidlDependencies( new File( folder.getRoot(), "state" ), "" );
+        final File kept = new File( folder.getRoot(), "IKept.java" );
+        final File removed = new File( folder.getRoot(), "IRemoved.java" );
+        dependencies.record( kept, 0, Collections.< File >emptyList() );
+        dependencies.record( removed, 0, Collections.< File >emptyList() );
+
+        assertEquals( Collections.singletonList( removed ),
+                dependencies.retain( Collections.singleton( kept.getAbsoluteFile() ) ) );
+        assertTrue( dependencies.isUpToDate( kept ) );
+        assertFalse( dependencies.isUpToDate( removed ) );
+    }
+
+    private File write( File directory, String path, String content ) throws Exception
+    {
+        final File file = new File( directory, path );
+        FileUtils.writeStringToFile( file, content );
+        return file;
+    }
+}
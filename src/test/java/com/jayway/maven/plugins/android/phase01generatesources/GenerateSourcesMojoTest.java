@@ -0,0 +1,50 @@
+package com.jayway.maven.plugins.android.phase01generatesources;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.junit.Test;
+
+public class GenerateSourcesMojoTest
+{
+    private final Map<Artifact, String> packageNames = new HashMap<Artifact, String>();
+    private final Map<Artifact, Set<String>> declaredSymbols = new HashMap<Artifact, Set<String>>();
+
+    @Test
+    public void testMergesSymbolsOfApklibsSharingAPackage() throws Exception
+    {
+        final Artifact first = apklib( "first", "com.example.shared", "string/first" );
+        final Artifact second = apklib( "second", "com.example.shared", "string/second" );
+        final Artifact base = apklib( "base", "com.example.base", "string/base" );
+        base.setDependencyTrail( Arrays.asList( "com.example:app:apk:1.0", second.getId(), base.getId() ) );
+        final Artifact project = apklib( "project", "com.example.app", "string/project" );
+        final List<Artifact> apklibs = Arrays.asList( first, second, base, project );
+
+        final Map<String, Set<String>> included = GenerateSourcesMojo.getIncludedSymbolsByPackage( apklibs,
+                packageNames, declaredSymbols, "com.example.app" );
+
+        assertEquals( 2, included.size() );
+        assertEquals( new HashSet<String>( Arrays.asList( "string/first", "string/second", "string/base" ) ),
+                included.get( "com.example.shared" ) );
+        assertEquals( new HashSet<String>( Arrays.asList( "string/base" ) ), included.get( "com.example.base" ) );
+    }
+
+    private Artifact apklib( String artifactId, String packageName, String... symbols )
+    {
+        final Artifact artifact = new DefaultArtifact( "com.example", artifactId, VersionRange.createFromVersion(
+                "1.0" ), Artifact.SCOPE_COMPILE, "apklib", null, new DefaultArtifactHandler( "apklib" ) );
+        packageNames.put( artifact, packageName );
+        declaredSymbols.put( artifact, new HashSet<String>( Arrays.asList( symbols ) ) );
+        return artifact;
+    }
+}
@@ -0,0 +1,109 @@
+package com.jayway.maven.plugins.android.phase01generatesources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SymbolTableTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFindsDeclaredSymbols() throws Exception
+    {
+        final File res = folder.newFolder( "res" );
+        write( res, "values/strings.xml", "<resources>\n"
+                + "  <string name=\"library_name\">Library</string>\n"
+                + "  <string-array name=\"planets\"><item>Mars</item></string-array>\n"
+                + "  <style name=\"Theme.Library\" parent=\"android:Theme\"><item name=\"android:x\">1</item></style>\n"
+                + "  <item name=\"toggle\" type=\"id\"/>\n"
+                + "  <declare-styleable name=\"Gauge\">\n"
+                + "    <attr name=\"needle\" format=\"color\"/>\n"
+                + "    <attr name=\"android:textColor\"/>\n"
+                + "  </declare-styleable>\n"
+                + "  <attr name=\"mode\"><enum name=\"fast\" value=\"1\"/></attr>\n"
+                + "</resources>" );
+        write( res, "layout-land/gauge.xml", "<FrameLayout android:id=\"@+id/gauge_frame\" "
+                + "xmlns:android=\"http://schemas.android.com/apk/res/android\"/>" );
+        write( res, "drawable-hdpi/needle.9.png", "png" );
+
+        final Set< String > symbols = SymbolTable.getDeclaredSymbols( res );
+
+        assertTrue( symbols.contains( "string/library_name" ) );
+        assertTrue( symbols.contains( "array/planets" ) );
+        assertTrue( symbols.contains( "style/Theme_Library" ) );
+        assertTrue( symbols.contains( "id/toggle" ) );
+        assertTrue( symbols.contains( "styleable/Gauge" ) );
+        assertTrue( symbols.contains( "styleable/Gauge_needle" ) );
+        assertTrue( symbols.contains( "styleable/Gauge_android_textColor" ) );
+        assertTrue( symbols.contains( "attr/needle" ) );
+        assertFalse( symbols.contains( "attr/android_textColor" ) );
+        assertTrue( symbols.contains( "attr/mode" ) );
+        assertTrue( symbols.contains( "id/fast" ) );
+        assertTrue( symbols.contains( "layout/gauge" ) );
+        assertTrue( symbols.contains( "id/gauge_frame" ) );
+        assertTrue( symbols.contains( "drawable/needle" ) );
+        assertFalse( symbols.contains( "item/x" ) );
+    }
+
+    @Test
+    public void testWritesIncludedSymbols() throws Exception
+    {
+        final File symbolFile = write( folder.getRoot(), "R.txt", "int attr needle 0x7f010000\n"
+                + "int string app_name 0x7f050000\n"
+                + "int string library_name 0x7f050001\n"
+                + "int[] styleable Gauge { 0x01010098, 0x7f010000 }\n"
+                + "int styleable Gauge_android_textColor 0\n"
+                + "int styleable Gauge_needle 1\n" );
+        final SymbolTable table = SymbolTable.load( symbolFile );
+        final File gen = new File( folder.getRoot(), "gen" );
+
+        final File rClass = table.writeRClass( "com.example.library",
+                SymbolTable.getSymbols( write( folder.getRoot(), "library.txt", "int string library_name 0\n"
+                        + "int[] styleable Gauge { }\n"
+                        + "int styleable Gauge_needle 0\n" ) ), gen );
+
+        assertEquals( new File( gen, "com/example/library/R.java" ), rClass );
+        final String source = FileUtils.readFileToString( rClass );
+        assertTrue( source.contains( "package com.example.library;" ) );
+        assertTrue( source.contains( "public static int library_name = 0x7f050001;" ) );
+        assertTrue( source.contains( "public static final int[] Gauge = { 0x01010098, 0x7f010000 };" ) );
+        assertTrue( source.contains( "public static int Gauge_needle = 1;" ) );
+        assertFalse( source.contains( "app_name" ) );
+        assertFalse( source.contains( "Gauge_android_textColor" ) );
+        assertFalse( source.contains( "class attr" ) );
+    }
+
+    @Test
+    public void testKeepsUnchangedRClass() throws Exception
+    {
+        final File symbolFile = write( folder.getRoot(), "R.txt", "int string library_name 0x7f050001\n" );
+        final File gen = new File( folder.getRoot(), "gen" );
+        final File rClass = SymbolTable.load( symbolFile ).writeRClass( "com.example.library", null, gen );
+        final long written = System.currentTimeMillis() - 60 * 1000L;
+        rClass.setLastModified( written );
+
+        SymbolTable.load( symbolFile ).writeRClass( "com.example.library", null, gen );
+        assertEquals( written / 1000, rClass.lastModified() / 1000 );
+
+        write( folder.getRoot(), "R.txt", "int string library_name 0x7f050002\n" );
+        SymbolTable.load( symbolFile ).writeRClass( "com.example.library", null, gen );
+        assertTrue( FileUtils.readFileToString( rClass ).contains( "library_name = 0x7f050002;" ) );
+    }
+
+    private File write( File directory, String path, String content ) throws Exception
+    {
+        final File file = new File( directory, path );
+        FileUtils.writeStringToFile( file, content );
+        return file;
+    }
+}
@@ -0,0 +1,92 @@
+package com.jayway.maven.plugins.android.phase08preparepackage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DexMojoTest
+{
+    private static final long KILOBYTE = 1024L;
+    private static final long MEGABYTE = 1024L * KILOBYTE;
+    private static final long GIGABYTE = 1024L * MEGABYTE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testParsesMemorySizeUnits()
+    {
+        assertEquals( 512 * KILOBYTE, DexMojo.parseMemorySize( "512k" ) );
+        assertEquals( 512 * KILOBYTE, DexMojo.parseMemorySize( "512K" ) );
+        assertEquals( 1024 * MEGABYTE, DexMojo.parseMemorySize( "1024m" ) );
+        assertEquals( 2 * GIGABYTE, DexMojo.parseMemorySize( "2G" ) );
+        assertEquals( 3 * GIGABYTE, DexMojo.parseMemorySize( " 3g " ) );
+    }
+
+    @Test
+    public void testParsesMemorySizeInBytes()
+    {
+        assertEquals( 67108864L, DexMojo.parseMemorySize( "67108864" ) );
+    }
+
+    @Test
+    public void testRejectsInvalidMemorySize()
+    {
+        assertEquals( -1, DexMojo.parseMemorySize( null ) );
+        assertEquals( -1, DexMojo.parseMemorySize( "" ) );
+        assertEquals( -1, DexMojo.parseMemorySize( "  " ) );
+        assertEquals( -1, DexMojo.parseMemorySize( "m" ) );
+        assertEquals( -1, DexMojo.parseMemorySize( "lots" ) );
+        assertEquals( -1, DexMojo.parseMemorySize( "512mb" ) );
+        assertEquals( -1, DexMojo.parseMemorySize( "1.5g" ) );
+    }
+
+    @Test
+    public void testRedexesOnlyChangedShards() throws Exception
+    {
+        final File classes = folder.newFolder( "classes" );
+        final File shards = folder.newFolder( "dexShards" );
+        FileUtils.writeStringToFile( new File( classes, "com/example/a/A.class" ), "a" );
+        FileUtils.writeStringToFile( new File( classes, "com/example/b/B.class" ), "b" );
+        FileUtils.writeStringToFile( new File( classes, "com/example/c/C.class" ), "c" );
+
+        final Properties first = new Properties();
+        final Set< File > shardJars = new LinkedHashSet< File >();
+        final Map< File, File > allShards = DexMojo.planShards( classes, shards, new Properties(), first, "dx",
+                shardJars );
+        assertEquals( 3, allShards.size() );
+        assertEquals( shardJars, new LinkedHashSet< File >( allShards.values() ) );
+        for ( File shardJar : shardJars )
+        {
+            FileUtils.writeStringToFile( shardJar, "dexed" );
+        }
+
+        FileUtils.writeStringToFile( new File( classes, "com/example/a/A.class" ), "changed" );
+        FileUtils.deleteDirectory( new File( classes, "com/example/c" ) );
+
+        final Properties second = new Properties();
+        final Map< File, File > dirtyShards = DexMojo.planShards( classes, shards, first, second, "dx",
+                new LinkedHashSet< File >() );
+
+        final File shardA = new File( shards, "com.example.a.jar" );
+        assertEquals( Collections.singletonMap( new File( shards, "com.example.a" ), shardA ), dirtyShards );
+        assertTrue( new File( shards, "com.example.a/com/example/a/A.class" ).isFile() );
+        assertFalse( shardA.exists() );
+        assertTrue( new File( shards, "com.example.b.jar" ).isFile() );
+        assertFalse( new File( shards, "com.example.c.jar" ).exists() );
+        assertEquals( first.getProperty( "com.example.b" ), second.getProperty( "com.example.b" ) );
+        assertFalse( second.containsKey( "com.example.c" ) );
+    }
+}
@@ -0,0 +1,81 @@
+package com.jayway.maven.plugins.android.phase08preparepackage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DexShardsTest
+{
+    private static final File SOURCE = new File( "classes" );
+
+    @Test
+    public void testPlanBalancesBySize()
+    {
+        final List< DexShards.ClassEntry > entries = new ArrayList< DexShards.ClassEntry >();
+        entries.add( new DexShards.ClassEntry( SOURCE, "a/A.class", 700 ) );
+        entries.add( new DexShards.ClassEntry( SOURCE, "a/B.class", 400 ) );
+        entries.add( new DexShards.ClassEntry( SOURCE, "a/C.class", 300 ) );
+        entries.add( new DexShards.ClassEntry( SOURCE, "b/D.class", 200 ) );
+        entries.add( new DexShards.ClassEntry( SOURCE, "b/E.class", 100 ) );
+
+        final List< List< DexShards.ClassEntry > > shards = DexShards.plan( entries, 2 );
+
+        assertEquals( 2, shards.size() );
+        final List< Long > sizes = new ArrayList< Long >();
+        for ( List< DexShards.ClassEntry > shard : shards )
+        {
+            sizes.add( size( shard ) );
+        }
+        Collections.sort( sizes );
+        assertEquals( Long.valueOf( 800 ), sizes.get( 0 ) );
+        assertEquals( Long.valueOf( 900 ), sizes.get( 1 ) );
+    }
+
+    @Test
+    public void testPlanKeepsEveryClassOnce()
+    {
+        final List< DexShards.ClassEntry > entries = new ArrayList< DexShards.ClassEntry >();
+        for ( int i = 0; i < 100; i++ )
+        {
+            entries.add( new DexShards.ClassEntry( SOURCE, "C" + i + ".class", i % 7 ) );
+        }
+
+        final List< List< DexShards.ClassEntry > > shards = DexShards.plan( entries, 6 );
+
+        assertEquals( 6, shards.size() );
+        int count = 0;
+        for ( List< DexShards.ClassEntry > shard : shards )
+        {
+            assertTrue( shard.size() > 0 );
+            count += shard.size();
+        }
+        assertEquals( entries.size(), count );
+    }
+
+    @Test
+    public void testPlanNeverCreatesEmptyShards()
+    {
+        final List< DexShards.ClassEntry > entries = new ArrayList< DexShards.ClassEntry >();
+        entries.add( new DexShards.ClassEntry( SOURCE, "A.class", 10 ) );
+        entries.add( new DexShards.ClassEntry( SOURCE, "B.class", 10 ) );
+
+        assertEquals( 2, DexShards.plan( entries, 8 ).size() );
+        assertEquals( 0, DexShards.plan( new ArrayList< DexShards.ClassEntry >(), 8 ).size() );
+    }
+
+    private static long size( List< DexShards.ClassEntry > shard )
+    {
+        long size = 0;
+        for ( DexShards.ClassEntry entry : shard )
+        {
+            size += entry.getSize();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,92 @@
+package com.jayway.maven.plugins.android.phase08preparepackage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PreDexCacheTest
+{
+    private static final long A_MINUTE = 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File cacheDirectory;
+
+    @Before
+    public void setUp()
+    {
+        cacheDirectory = new File( folder.getRoot(), "cache" );
+    }
+
+    @Test
+    public void testFetchesStoredEntry() throws Exception
+    {
+        final PreDexCache cache = new PreDexCache( cacheDirectory, Long.MAX_VALUE, new SystemStreamLog() );
+        final File dexed = write( "library-dexed.jar", "dexed classes" );
+        final File target = new File( folder.getRoot(), "target/library.jar" );
+        target.getParentFile().mkdirs();
+
+        assertFalse( cache.fetch( "key", target ) );
+        cache.store( "key", dexed );
+
+        assertTrue( cache.fetch( "key", target ) );
+        assertEquals( "dexed classes", FileUtils.readFileToString( target ) );
+        assertFalse( cache.fetch( "other", new File( folder.getRoot(), "target/other.jar" ) ) );
+    }
+
+    @Test
+    public void testKeySeparatesDxFlagsAndDxJar() throws Exception
+    {
+        final File jar = write( "library.jar", "classes" );
+        final File dx = write( "dx.jar", "dx" );
+        final File otherDx = write( "other/dx.jar", "newer dx" );
+
+        final String key = DexMojo.preDexKey( jar, dx, "[--no-locals]" );
+
+        assertEquals( key, DexMojo.preDexKey( jar, dx, "[--no-locals]" ) );
+        assertNotEquals( key, DexMojo.preDexKey( jar, dx, "[]" ) );
+        assertNotEquals( key, DexMojo.preDexKey( jar, otherDx, "[--no-locals]" ) );
+        assertNotEquals( key, DexMojo.preDexKey( write( "other.jar", "other classes" ), dx, "[--no-locals]" ) );
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedEntries() throws Exception
+    {
+        final PreDexCache cache = new PreDexCache( cacheDirectory, 250, new SystemStreamLog() );
+        final String content = StringUtils.repeat( "x", 100 );
+        final long now = System.currentTimeMillis();
+        cache.store( "aaa", write( "aaa.jar", content ) );
+        cache.store( "bbb", write( "bbb.jar", content ) );
+        cache.store( "ccc", write( "ccc.jar", content ) );
+        new File( cacheDirectory, "aaa.jar" ).setLastModified( now - 3 * A_MINUTE );
+        new File( cacheDirectory, "bbb.jar" ).setLastModified( now - 2 * A_MINUTE );
+        new File( cacheDirectory, "ccc.jar" ).setLastModified( now - A_MINUTE );
+
+        // a hit makes the oldest entry the most recently used one
+        assertTrue( cache.fetch( "aaa", new File( folder.getRoot(), "aaa-fetched.jar" ) ) );
+        cache.evict();
+
+        assertTrue( new File( cacheDirectory, "aaa.jar" ).isFile() );
+        assertFalse( new File( cacheDirectory, "bbb.jar" ).exists() );
+        assertTrue( new File( cacheDirectory, "ccc.jar" ).isFile() );
+    }
+
+    private File write( String path, String content ) throws Exception
+    {
+        final File file = new File( folder.getRoot(), path );
+        FileUtils.writeStringToFile( file, content );
+        return file;
+    }
+}
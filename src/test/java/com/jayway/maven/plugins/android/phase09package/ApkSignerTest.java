@@ -0,0 +1,196 @@
+package com.jayway.maven.plugins.android.phase09package;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.security.Security;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.jayway.maven.plugins.android.common.RawZipFile;
+import com.jayway.maven.plugins.android.common.ZipAligner;
+
+public class ApkSignerTest
+{
+    private static final String RESOURCES = "src/test/resources/com/jayway/maven/plugins/android/";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Recent JDKs reject SHA1 jar signatures, which Android still needs for devices before API level 18.
+     */
+    @BeforeClass
+    public static void allowSha1JarSignatures()
+    {
+        Security.setProperty( "jdk.jar.disabledAlgorithms", "" );
+    }
+
+    @Test
+    public void testSignedApkVerifies() throws Exception
+    {
+        final File unsigned = new File( RESOURCES + "apidemos-0.1.0-SNAPSHOT.apk" );
+        final File signed = folder.newFile( "signed.apk" );
+
+        signer().sign( unsigned, signed );
+
+        assertSigned( signed );
+    }
+
+    @Test
+    public void testApkWriterSignsWhileWriting() throws Exception
+    {
+        final File sources = folder.newFolder( "sources" );
+        for ( int i = 0; i < 20; i++ )
+        {
+            FileUtils.writeStringToFile( new File( sources, "com/example/file" + i + ".txt" ), "content " + i );
+        }
+        final File signed = new File( folder.getRoot(), "written.apk" );
+
+        final ApkWriter writer = new ApkWriter( signed, signer(), new SystemStreamLog() );
+        try
+        {
+            writer.setCompressionThreads( 4 );
+            writer.addResourceArchive( new File( RESOURCES + "apidemos-0.1.0-SNAPSHOT.apk" ) );
+            writer.addSourceFolder( sources );
+            writer.seal();
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        assertSigned( signed );
+    }
+
+    @Test
+    public void testCreatesMissingDebugKeystore() throws Exception
+    {
+        final File keystore = new File( folder.getRoot(), ".android/debug.keystore" );
+        final File signed = folder.newFile( "signed.apk" );
+
+        ApkSigner.fromDebugKeystore( keystore ).sign( new File( RESOURCES + "apidemos-0.1.0-SNAPSHOT.apk" ), signed );
+
+        assertTrue( keystore.isFile() );
+        assertSigned( signed );
+        final long created = keystore.lastModified();
+        ApkSigner.fromDebugKeystore( keystore );
+        assertEquals( created, keystore.lastModified() );
+        assertEquals( 1, keystore.getParentFile().list().length );
+    }
+
+    @Test
+    public void testResigningReplacesSignature() throws Exception
+    {
+        final File unsigned = new File( RESOURCES + "apidemos-0.1.0-SNAPSHOT.apk" );
+        final File signed = folder.newFile( "signed.apk" );
+        final File resigned = folder.newFile( "resigned.apk" );
+
+        signer().sign( unsigned, signed );
+        signer().sign( signed, resigned );
+
+        final RawZipFile signedZip = new RawZipFile( signed );
+        final RawZipFile resignedZip = new RawZipFile( resigned );
+        try
+        {
+            assertEquals( signedZip.getEntries().size(), resignedZip.getEntries().size() );
+            assertFalse( resignedZip.getEntry( "META-INF/CERT.RSA" ) == null );
+        }
+        finally
+        {
+            signedZip.close();
+            resignedZip.close();
+        }
+    }
+
+    @Test
+    public void testSigningKeepsAlignment() throws Exception
+    {
+        final File unaligned = new File( folder.getRoot(), "unaligned.apk" );
+        final ZipOutputStream out = new ZipOutputStream( new FileOutputStream( unaligned ) );
+        try
+        {
+            for ( String name : new String[] { "classes.dex", "res/raw/a.ogg", "lib/armeabi/libexample.so" } )
+            {
+                final byte[] data = ( "content of " + name ).getBytes( "UTF-8" );
+                final ZipEntry entry = new ZipEntry( name );
+                final CRC32 crc = new CRC32();
+                crc.update( data );
+                entry.setMethod( ZipEntry.STORED );
+                entry.setSize( data.length );
+                entry.setCrc( crc.getValue() );
+                out.putNextEntry( entry );
+                out.write( data );
+                out.closeEntry();
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        final File aligned = new File( folder.getRoot(), "aligned.apk" );
+        ZipAligner.align( unaligned, aligned, ZipAligner.DEFAULT_ALIGNMENT, true );
+        final File signed = new File( folder.getRoot(), "signed.apk" );
+
+        signer().sign( aligned, signed );
+
+        assertSigned( signed );
+        assertTrue( ZipAligner.getMisalignedEntries( signed, ZipAligner.DEFAULT_ALIGNMENT, true ).isEmpty() );
+    }
+
+    private static void assertSigned( File signed ) throws Exception
+    {
+        final JarFile jar = new JarFile( signed, true );
+        int verified = 0;
+        try
+        {
+            final Enumeration< JarEntry > entries = jar.entries();
+            while ( entries.hasMoreElements() )
+            {
+                final JarEntry entry = entries.nextElement();
+                final InputStream in = jar.getInputStream( entry );
+                try
+                {
+                    IOUtils.toByteArray( in );
+                }
+                finally
+                {
+                    IOUtils.closeQuietly( in );
+                }
+                if ( !entry.isDirectory() && !entry.getName().startsWith( "META-INF/" ) )
+                {
+                    assertNotNull( entry.getName() + " is not signed", entry.getCodeSigners() );
+                    verified++;
+                }
+            }
+        }
+        finally
+        {
+            jar.close();
+        }
+        assertTrue( verified > 0 );
+    }
+
+    private static ApkSigner signer() throws Exception
+    {
+        return ApkSigner.fromKeystore( new File( RESOURCES + "phase09package/debug.keystore" ),
+                ApkSigner.DEBUG_PASSWORD, ApkSigner.DEBUG_ALIAS, ApkSigner.DEBUG_PASSWORD );
+    }
+}
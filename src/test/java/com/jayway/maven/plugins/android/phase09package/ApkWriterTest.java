@@ -0,0 +1,258 @@
+package com.jayway.maven.plugins.android.phase09package;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.jayway.maven.plugins.android.common.PathMatcher;
+import com.jayway.maven.plugins.android.common.RawZipEntry;
+import com.jayway.maven.plugins.android.common.RawZipFile;
+import com.jayway.maven.plugins.android.common.ZipAligner;
+
+public class ApkWriterTest
+{
+    private static final File RESOURCE_ARCHIVE = new File(
+            "src/test/resources/com/jayway/maven/plugins/android/apidemos-0.1.0-SNAPSHOT.apk" );
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPackagingRules()
+    {
+        assertTrue( ApkWriter.checkJarEntryForPackaging( "com/example/config.properties" ) );
+        assertFalse( ApkWriter.checkJarEntryForPackaging( "com/example/Example.class" ) );
+        assertFalse( ApkWriter.checkJarEntryForPackaging( "com/example/Example.java" ) );
+        assertFalse( ApkWriter.checkJarEntryForPackaging( "com/.svn/entries" ) );
+        assertFalse( ApkWriter.checkJarEntryForPackaging( "_private/data.txt" ) );
+        assertFalse( ApkWriter.checkJarEntryForPackaging( "com/example/package.html" ) );
+        assertFalse( ApkWriter.checkJarEntryForPackaging( "com/example/.hidden" ) );
+        assertFalse( ApkWriter.checkJarEntryForPackaging( "com/example/backup~" ) );
+    }
+
+    @Test
+    public void testWritesApk() throws Exception
+    {
+        final File dex = folder.newFile( "classes.dex" );
+        FileUtils.writeStringToFile( dex, "dex\n035" );
+        final File sources = folder.newFolder( "sources" );
+        FileUtils.writeStringToFile( new File( sources, "com/example/config.properties" ), "a=b" );
+        FileUtils.writeStringToFile( new File( sources, "com/example/Example.java" ), "class Example {}" );
+        FileUtils.writeStringToFile( new File( sources, "CVS/Entries" ), "" );
+        final File natives = folder.newFolder( "libs" );
+        FileUtils.writeStringToFile( new File( natives, "armeabi/libexample.so" ), "ELF" );
+        FileUtils.writeStringToFile( new File( natives, "armeabi/gdbserver" ), "ELF" );
+        FileUtils.writeStringToFile( new File( natives, "armeabi/readme.txt" ), "" );
+
+        final File resources = new File( folder.getRoot(), "example.ap_" );
+        final ZipOutputStream out = new ZipOutputStream( new FileOutputStream( resources ) );
+        for ( String name : new String[] { "AndroidManifest.xml", "res/layout/main.xml", "META-INF/MANIFEST.MF" } )
+        {
+            out.putNextEntry( new ZipEntry( name ) );
+            out.write( name.getBytes( "UTF-8" ) );
+        }
+        out.close();
+
+        final File apk = new File( folder.getRoot(), "example.apk" );
+        final ApkWriter writer = new ApkWriter( apk, null, new SystemStreamLog() );
+        writer.setCompressNativeLibraries( false );
+        writer.addResourceArchive( resources );
+        writer.addDexFile( dex, true );
+        writer.addSourceFolder( sources );
+        writer.addNativeLibraries( natives );
+        writer.seal();
+
+        final RawZipFile zip = new RawZipFile( apk );
+        try
+        {
+            final List< String > names = new ArrayList< String >();
+            for ( RawZipEntry entry : zip.getEntries() )
+            {
+                names.add( entry.getName() );
+                assertFalse( entry.getName(), entry.getName().startsWith( "META-INF/" ) );
+            }
+            assertTrue( names.contains( "AndroidManifest.xml" ) );
+            assertTrue( names.contains( "res/layout/main.xml" ) );
+            assertEquals( RawZipEntry.DEFLATED, zip.getEntry( "classes.dex" ).getMethod() );
+            assertNotNull( zip.getEntry( "com/example/config.properties" ) );
+            assertNull( zip.getEntry( "com/example/Example.java" ) );
+            assertNull( zip.getEntry( "CVS/Entries" ) );
+            assertEquals( RawZipEntry.STORED, zip.getEntry( "lib/armeabi/libexample.so" ).getMethod() );
+            assertNull( zip.getEntry( "lib/armeabi/gdbserver" ) );
+            assertNull( zip.getEntry( "lib/armeabi/readme.txt" ) );
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+
+    @Test
+    public void testAddsMatchingMetaInfFromJars() throws Exception
+    {
+        final File first = new File( folder.getRoot(), "first.jar" );
+        final File second = new File( folder.getRoot(), "second.jar" );
+        writeZip( first, "META-INF/MANIFEST.MF", "META-INF/services/example.Service", "META-INF/other.txt",
+                "com/example/data.txt" );
+        writeZip( second, "META-INF/services/example.Service" );
+
+        final File apk = new File( folder.getRoot(), "metainf.apk" );
+        final ApkWriter writer = new ApkWriter( apk, null, new SystemStreamLog() );
+        final PathMatcher metaInf = new PathMatcher( "META-INF/", new String[] { "services/**", "MANIFEST.MF" } );
+        writer.addMetaInfFromJar( first, metaInf, true );
+        writer.addMetaInfFromJar( second, metaInf, true );
+        writer.seal();
+        writer.close();
+
+        final RawZipFile zip = new RawZipFile( apk );
+        try
+        {
+            assertEquals( 2, zip.getEntries().size() );
+            assertNotNull( zip.getEntry( "META-INF/services/example.Service" ) );
+            assertNotNull( zip.getEntry( "META-INF/MANIFEST.MF" ) );
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        final ApkWriter failing = new ApkWriter( new File( folder.getRoot(), "failing.apk" ), null,
+                new SystemStreamLog() );
+        try
+        {
+            failing.addMetaInfFromJar( first, metaInf, false );
+            failing.addMetaInfFromJar( second, metaInf, false );
+            fail( "Duplicate META-INF file not detected" );
+        }
+        catch ( MojoExecutionException e )
+        {
+            assertTrue( e.getMessage().contains( "META-INF/services/example.Service" ) );
+        }
+        finally
+        {
+            failing.close();
+        }
+    }
+
+    private static void writeZip( File file, String... names ) throws Exception
+    {
+        final ZipOutputStream out = new ZipOutputStream( new FileOutputStream( file ) );
+        for ( String name : names )
+        {
+            out.putNextEntry( new ZipEntry( name ) );
+            out.write( name.getBytes( "UTF-8" ) );
+        }
+        out.close();
+    }
+
+    @Test
+    public void testPageAlignsSelectedNativeLibraries() throws Exception
+    {
+        final File natives = folder.newFolder( "libs" );
+        FileUtils.writeStringToFile( new File( natives, "armeabi/libexample.so" ), "ELF armeabi" );
+        FileUtils.writeStringToFile( new File( natives, "armeabi-v7a/libexample.so" ), "ELF armeabi-v7a" );
+        FileUtils.writeStringToFile( new File( natives, "x86/libexample.so" ), "ELF x86" );
+        final File source = folder.newFile( "odd.txt" );
+        FileUtils.writeStringToFile( source, "shifts the following entries" );
+
+        final File apk = new File( folder.getRoot(), "native.apk" );
+        final ApkWriter writer = new ApkWriter( apk, null, new SystemStreamLog() );
+        writer.setPageAlignedNativeLibraries( new String[] { "lib/**/*.so" }, new String[] { "lib/armeabi/*" } );
+        writer.addSourceFolder( source.getParentFile() );
+        writer.addNativeLibraries( natives );
+        writer.seal();
+
+        final RawZipFile zip = new RawZipFile( apk );
+        try
+        {
+            assertEquals( RawZipEntry.DEFLATED, zip.getEntry( "lib/armeabi/libexample.so" ).getMethod() );
+            for ( String name : new String[] { "lib/armeabi-v7a/libexample.so", "lib/x86/libexample.so" } )
+            {
+                final RawZipEntry entry = zip.getEntry( name );
+                assertEquals( name, RawZipEntry.STORED, entry.getMethod() );
+                assertEquals( name, 0, zip.getDataOffset( entry ) % ZipAligner.PAGE_ALIGNMENT );
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+        assertTrue( ZipAligner.isAligned( apk, ZipAligner.PAGE_ALIGNMENT ) );
+    }
+
+    @Test
+    public void testParallelCompressionKeepsOrder() throws Exception
+    {
+        final File sources = folder.newFolder( "sources" );
+        final List< String > expected = new ArrayList< String >();
+        for ( int i = 0; i < 50; i++ )
+        {
+            final String name = "res" + ( char ) ( 'a' + i / 10 ) + i % 10 + ( i % 5 == 0 ? ".png" : ".txt" );
+            FileUtils.writeStringToFile( new File( sources, name ), "content " + i + " of " + name );
+            expected.add( name );
+        }
+
+        final File apk = new File( folder.getRoot(), "parallel.apk" );
+        final ApkWriter writer = new ApkWriter( apk, null, new SystemStreamLog() );
+        writer.setCompressionThreads( 4 );
+        writer.setMemoryLimit( 64 );
+        writer.addSourceFolder( sources );
+        writer.seal();
+        writer.close();
+
+        final RawZipFile zip = new RawZipFile( apk );
+        try
+        {
+            final List< String > names = new ArrayList< String >();
+            for ( RawZipEntry entry : zip.getEntries() )
+            {
+                names.add( entry.getName() );
+                final int method = entry.getName().endsWith( ".png" ) ? RawZipEntry.STORED : RawZipEntry.DEFLATED;
+                assertEquals( entry.getName(), method, entry.getMethod() );
+            }
+            assertEquals( expected, names );
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+
+    @Test
+    public void testDuplicatePathFails() throws Exception
+    {
+        final File apk = new File( folder.getRoot(), "duplicate.apk" );
+        final ApkWriter writer = new ApkWriter( apk, null, new SystemStreamLog() );
+        try
+        {
+            writer.addResourceArchive( RESOURCE_ARCHIVE );
+            writer.addResourceArchive( RESOURCE_ARCHIVE );
+            fail( "Adding the same resource archive twice should fail" );
+        }
+        catch ( MojoExecutionException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().startsWith( "Duplicate files at the same path" ) );
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.jayway.maven.plugins.android.phase09package;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.jayway.maven.plugins.android.common.DirectorySynchronizer;
+
+public class PngCruncherTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File aapt;
+    private File calls;
+    private File cache;
+
+    /**
+     * Stands in for aapt singleCrunch: writes "crunched" to the output file and counts its calls.
+     */
+    @Before
+    public void createAapt() throws Exception
+    {
+        assumeTrue( File.separatorChar == '/' );
+        calls = new File( folder.getRoot(), "calls" );
+        aapt = new File( folder.getRoot(), "aapt" );
+        FileUtils.writeStringToFile( aapt, "#!/bin/sh\necho x >> " + calls.getAbsolutePath()
+                + "\nprintf crunched > \"$5\"\n" );
+        assumeTrue( aapt.setExecutable( true ) );
+        cache = new File( folder.getRoot(), "cache" );
+    }
+
+    @Test
+    public void testCrunchesEachImageOnce() throws Exception
+    {
+        final File first = folder.newFolder( "first" );
+        final File second = folder.newFolder( "second" );
+        for ( File res : new File[] { first, second } )
+        {
+            FileUtils.writeStringToFile( new File( res, "drawable/icon.png" ), "a large uncrunched image" );
+            FileUtils.writeStringToFile( new File( res, "values/strings.xml" ), "<resources/>" );
+        }
+
+        final File firstMirror = crunch( first );
+        final File secondMirror = crunch( second );
+
+        assertEquals( 1, countCalls() );
+        assertEquals( "crunched", FileUtils.readFileToString( new File( firstMirror, "drawable/icon.png" ) ) );
+        assertEquals( "crunched", FileUtils.readFileToString( new File( secondMirror, "drawable/icon.png" ) ) );
+        assertEquals( "<resources/>", FileUtils.readFileToString( new File( secondMirror, "values/strings.xml" ) ) );
+    }
+
+    @Test
+    public void testKeepsOriginalUnlessSmaller() throws Exception
+    {
+        final File res = folder.newFolder( "res" );
+        FileUtils.writeStringToFile( new File( res, "drawable/small.png" ), "tiny" );
+        FileUtils.writeStringToFile( new File( res, "drawable/button.9.png" ), "tiny" );
+
+        final File mirror = crunch( res );
+
+        assertEquals( 2, countCalls() );
+        assertEquals( "tiny", FileUtils.readFileToString( new File( mirror, "drawable/small.png" ) ) );
+        assertEquals( "crunched", FileUtils.readFileToString( new File( mirror, "drawable/button.9.png" ) ) );
+    }
+
+    @Test
+    public void testCrunchesOnlyDrawablesAndMipmaps() throws Exception
+    {
+        final PngCruncher cruncher = cruncher();
+        assertTrue( cruncher.accepts( "drawable/icon.png" ) );
+        assertTrue( cruncher.accepts( "drawable-hdpi-v11/icon.PNG" ) );
+        assertTrue( cruncher.accepts( "mipmap-xxhdpi/ic_launcher.png" ) );
+        assertFalse( cruncher.accepts( "raw/x.png" ) );
+        assertFalse( cruncher.accepts( "raw-hdpi/drawable.png" ) );
+        assertFalse( cruncher.accepts( "drawables/icon.png" ) );
+        assertFalse( cruncher.accepts( "icon.png" ) );
+        assertFalse( cruncher.accepts( "drawable/icon.xml" ) );
+
+        final File res = folder.newFolder( "res" );
+        FileUtils.writeStringToFile( new File( res, "raw/x.png" ), "a large uncrunched image" );
+
+        final File mirror = crunch( res );
+
+        assertEquals( 0, countCalls() );
+        assertEquals( "a large uncrunched image", FileUtils.readFileToString( new File( mirror, "raw/x.png" ) ) );
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedImages() throws Exception
+    {
+        final File res = folder.newFolder( "res" );
+        FileUtils.writeStringToFile( new File( res, "drawable/a.png" ), "a large uncrunched image" );
+        FileUtils.writeStringToFile( new File( res, "drawable/b.png" ), "another large uncrunched image" );
+        crunch( res );
+
+        new PngCruncher( aapt.getAbsolutePath(), cache, "crunched".length(), new SystemStreamLog() ).evict();
+
+        // the images are evicted from their key prefix folders
+        assertEquals( 1, FileUtils.listFiles( cache, null, true ).size() );
+    }
+
+    private PngCruncher cruncher()
+    {
+        return new PngCruncher( aapt.getAbsolutePath(), cache, Long.MAX_VALUE, new SystemStreamLog() );
+    }
+
+    private File crunch( File res ) throws Exception
+    {
+        final File mirror = new File( folder.getRoot(), "mirror-" + res.getName() );
+        final DirectorySynchronizer synchronizer = new DirectorySynchronizer( mirror,
+                new File( folder.getRoot(), res.getName() + ".state" ), new SystemStreamLog() );
+        synchronizer.setTransformer( cruncher() );
+        synchronizer.addSource( res );
+        synchronizer.synchronize();
+        return mirror;
+    }
+
+    private int countCalls() throws Exception
+    {
+        return calls.isFile() ? FileUtils.readLines( calls ).size() : 0;
+    }
+}
@@ -3,7 +3,9 @@ package com.jayway.maven.plugins.android.standalonemojos;
 import com.jayway.maven.plugins.android.AbstractAndroidMojoTestCase;
 import com.jayway.maven.plugins.android.CommandExecutor;
 import com.jayway.maven.plugins.android.common.AndroidExtension;
+import com.jayway.maven.plugins.android.common.ZipAligner;
 import com.jayway.maven.plugins.android.config.ConfigHandler;
+import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectHelper;
@@ -17,10 +19,14 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import org.powermock.reflect.Whitebox;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * User: Eugen
@@ -207,5 +213,126 @@ public class ZipalignMojoTest extends AbstractAndroidMojoTestCase<ZipalignMojo>
         // verify that all method were invoked
         PowerMock.verify( FileUtils.class );
     }
-}
 
+    /**
+     * Tests the default in process alignment of a misaligned apk and attaching the aligned apk
+     *
+     * @throws Exception
+     */
+    public void testInProcessRun () throws Exception
+    {
+        final File inputApk = createUnalignedApk();
+        final File outputApk = new File( inputApk.getParentFile(), "app-aligned.apk" );
+        final ZipalignMojo mojo = createInProcessMojo( inputApk, outputApk );
+        final MavenProject project = Whitebox.getInternalState( mojo, "project" );
+
+        final MavenProjectHelper projectHelper = EasyMock.createMock( MavenProjectHelper.class );
+        projectHelper.attachArtifact( project, AndroidExtension.APK, "aligned", outputApk );
+        Whitebox.setInternalState( mojo, "projectHelper", projectHelper );
+        EasyMock.replay( projectHelper );
+
+        mojo.execute();
+
+        EasyMock.verify( projectHelper );
+        assertFalse( "input apk should be left as it is",
+                ZipAligner.isAligned( inputApk, ZipAligner.DEFAULT_ALIGNMENT ) );
+        assertTrue( "output apk should be aligned",
+                ZipAligner.getMisalignedEntries( outputApk, ZipAligner.DEFAULT_ALIGNMENT, true ).isEmpty() );
+    }
+
+    /**
+     * Tests that an apk which is already aligned is copied as it is instead of being aligned again
+     *
+     * @throws Exception
+     */
+    public void testInProcessRunCopiesAlignedApk () throws Exception
+    {
+        final File unalignedApk = createUnalignedApk();
+        final File inputApk = new File( unalignedApk.getParentFile(), "app.apk" );
+        ZipAligner.align( unalignedApk, inputApk, ZipAligner.DEFAULT_ALIGNMENT, true );
+        final File outputApk = new File( inputApk.getParentFile(), "app-aligned.apk" );
+        final ZipalignMojo mojo = createInProcessMojo( inputApk, outputApk );
+        Whitebox.setInternalState( mojo, "projectHelper", EasyMock.createNiceMock( MavenProjectHelper.class ) );
+
+        mojo.execute();
+
+        assertTrue( "aligned apk should be copied",
+                org.apache.commons.io.FileUtils.contentEquals( inputApk, outputApk ) );
+    }
+
+    /**
+     * Tests that verifying a misaligned apk fails the build without writing anything
+     *
+     * @throws Exception
+     */
+    public void testVerifyOnlyFailsOnMisalignedApk () throws Exception
+    {
+        final File inputApk = createUnalignedApk();
+        final File outputApk = new File( inputApk.getParentFile(), "app-aligned.apk" );
+        final ZipalignMojo mojo = createInProcessMojo( inputApk, outputApk );
+        Whitebox.setInternalState( mojo, "zipalignVerifyOnly", Boolean.TRUE );
+        final MavenProjectHelper projectHelper = EasyMock.createMock( MavenProjectHelper.class );
+        Whitebox.setInternalState( mojo, "projectHelper", projectHelper );
+        EasyMock.replay( projectHelper );
+
+        try
+        {
+            mojo.execute();
+            fail( "verifying a misaligned apk should fail the build" );
+        }
+        catch ( MojoFailureException e )
+        {
+            // expected
+        }
+
+        EasyMock.verify( projectHelper );
+        assertFalse( "nothing should be written", outputApk.exists() );
+    }
+
+    private ZipalignMojo createInProcessMojo( File inputApk, File outputApk ) throws Exception
+    {
+        final ZipalignMojo mojo = createMojo( "zipalign-config-project4" );
+        final MavenProject project = Whitebox.getInternalState( mojo, "project" );
+        project.setPackaging( AndroidExtension.APK );
+        Whitebox.setInternalState( mojo, "zipalignInputApk", inputApk.getAbsolutePath() );
+        Whitebox.setInternalState( mojo, "zipalignOutputApk", outputApk.getAbsolutePath() );
+        return mojo;
+    }
+
+    /**
+     * Creates an apk in a new directory where the stored entries are not aligned
+     */
+    private File createUnalignedApk () throws Exception
+    {
+        final File directory = File.createTempFile( "zipalign", "" );
+        directory.delete();
+        directory.mkdirs();
+        directory.deleteOnExit();
+        final File apk = new File( directory, "app-unaligned.apk" );
+        final ZipOutputStream out = new ZipOutputStream( new FileOutputStream( apk ) );
+        try
+        {
+            for ( String name : new String[] { "a", "res/raw/bb.ogg", "classes.dex", "lib/armeabi/libexample.so" } )
+            {
+                final byte[] data = ( "content of " + name ).getBytes( "UTF-8" );
+                final ZipEntry entry = new ZipEntry( name );
+                if ( ! name.endsWith( ".dex" ) )
+                {
+                    final CRC32 crc = new CRC32();
+                    crc.update( data );
+                    entry.setMethod( ZipEntry.STORED );
+                    entry.setSize( data.length );
+                    entry.setCrc( crc.getValue() );
+                }
+                out.putNextEntry( entry );
+                out.write( data );
+                out.closeEntry();
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        return apk;
+    }
+}